@@ -0,0 +1,155 @@
+package org.metaborg.mbt.core.model;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.project.IProject;
+import org.metaborg.core.source.ISourceRegion;
+import org.metaborg.core.source.SourceRegion;
+
+/**
+ * An immutable IFragment that takes as little memory as possible, for test suites with very many tests.
+ *
+ * Rather than a string per piece of text, it keeps the start offset and length of each piece in the text of the test
+ * suite, which is shared by all fragments of the test suite. Its region and selections are packed into a single array
+ * of ints. The pieces and regions are only turned into objects when they are asked for.
+ *
+ * Use {@link #of} to create a compact fragment.
+ */
+public final class CompactFragment implements IFragment {
+
+    // start offset, start row, start column, end offset, end row, end column
+    private static final int REGION_SIZE = 6;
+
+    private final String source;
+    // the start offset and length of each piece in the source
+    private final int[] pieces;
+    // the region of the fragment, followed by its selections
+    private final int[] regions;
+    private final FileObject resource;
+    private final IProject project;
+    private volatile FragmentOffsetIndex offsetIndex;
+
+
+    private CompactFragment(String source, int[] pieces, int[] regions, FileObject resource, IProject project) {
+        this.source = source;
+        this.pieces = pieces;
+        this.regions = regions;
+        this.resource = resource;
+        this.project = project;
+    }
+
+    /**
+     * Create a compact fragment with the given region, selections, and pieces of text.
+     *
+     * @param source
+     *            the text of the test suite that contains the fragment. Should be the same String instance for all
+     *            fragments of the test suite, to share it.
+     * @return the compact fragment, or null if the text of a piece is not the text of the source at the offset of the
+     *         piece, or if a region is missing. Use a {@link Fragment} in that case.
+     */
+    public static @Nullable CompactFragment of(String source, @Nullable ISourceRegion region,
+        List<ISourceRegion> selections, Iterable<FragmentPiece> text, FileObject resource, IProject project) {
+        if(region == null || selections.contains(null)) {
+            return null;
+        }
+        int count = 0;
+        for(@SuppressWarnings("unused") FragmentPiece piece : text) {
+            count++;
+        }
+        final int[] pieces = new int[2 * count];
+        int i = 0;
+        for(FragmentPiece piece : text) {
+            if(piece.startOffset < 0 || !source.startsWith(piece.text, piece.startOffset)) {
+                return null;
+            }
+            pieces[i++] = piece.startOffset;
+            pieces[i++] = piece.text.length();
+        }
+
+        final int[] regions = new int[REGION_SIZE * (1 + selections.size())];
+        pack(region, regions, 0);
+        for(int s = 0; s < selections.size(); s++) {
+            pack(selections.get(s), regions, 1 + s);
+        }
+        return new CompactFragment(source, pieces, regions, resource, project);
+    }
+
+
+    @Override public ISourceRegion getRegion() {
+        return unpack(0);
+    }
+
+    @Override public List<ISourceRegion> getSelections() {
+        return new AbstractList<ISourceRegion>() {
+            @Override public ISourceRegion get(int index) {
+                if(index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException("No selection " + index + ", there are " + size());
+                }
+                return unpack(1 + index);
+            }
+
+            @Override public int size() {
+                return regions.length / REGION_SIZE - 1;
+            }
+        };
+    }
+
+    @Override public FileObject getResource() {
+        return resource;
+    }
+
+    @Override public IProject getProject() {
+        return project;
+    }
+
+    @Override public Iterable<FragmentPiece> getText() {
+        return () -> new Iterator<FragmentPiece>() {
+            private int next = 0;
+
+            @Override public boolean hasNext() {
+                return next < pieces.length;
+            }
+
+            @Override public FragmentPiece next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final int start = pieces[next];
+                final int length = pieces[next + 1];
+                next += 2;
+                return new FragmentPiece(start, source.substring(start, start + length));
+            }
+        };
+    }
+
+    @Override public FragmentOffsetIndex getOffsetIndex() {
+        // the index is immutable, so it doesn't matter if two threads build it at the same time
+        if(offsetIndex == null) {
+            offsetIndex = new FragmentOffsetIndex(getText());
+        }
+        return offsetIndex;
+    }
+
+
+    private static void pack(ISourceRegion region, int[] regions, int index) {
+        final int i = REGION_SIZE * index;
+        regions[i] = region.startOffset();
+        regions[i + 1] = region.startRow();
+        regions[i + 2] = region.startColumn();
+        regions[i + 3] = region.endOffset();
+        regions[i + 4] = region.endRow();
+        regions[i + 5] = region.endColumn();
+    }
+
+    private ISourceRegion unpack(int index) {
+        final int i = REGION_SIZE * index;
+        return new SourceRegion(regions[i], regions[i + 1], regions[i + 2], regions[i + 3], regions[i + 4],
+            regions[i + 5]);
+    }
+}
@@ -16,6 +16,7 @@ public class Fragment implements IFragment {
 
     private final List<ISourceRegion> selections = new ArrayList<>();
     private final List<FragmentPiece> text = new LinkedList<>();
+    private volatile FragmentOffsetIndex offsetIndex;
 
     public Fragment(ISourceRegion region, List<ISourceRegion> selections, List<FragmentPiece> text, FileObject resource,
         IProject project) {
@@ -45,4 +46,12 @@ public class Fragment implements IFragment {
     @Override public Iterable<FragmentPiece> getText() {
         return text;
     }
+
+    @Override public FragmentOffsetIndex getOffsetIndex() {
+        // the index is immutable, so it doesn't matter if two threads build it at the same time
+        if(offsetIndex == null) {
+            offsetIndex = new FragmentOffsetIndex(text);
+        }
+        return offsetIndex;
+    }
 }
@@ -0,0 +1,174 @@
+package org.metaborg.mbt.core.model;
+
+import org.metaborg.core.source.ISourceRegion;
+import org.metaborg.core.source.SourceRegion;
+import org.metaborg.mbt.core.model.IFragment.FragmentPiece;
+
+/**
+ * Translates offsets between the text of a fragment and the test suite that contains it.
+ *
+ * The text of a fragment (its 'local' text) is the concatenation of its {@link IFragment#getText() pieces}. Within a
+ * piece, local and test suite ('global') offsets differ by a constant, so the translation is piecewise linear. The
+ * pieces are kept in arrays, and offsets are translated with a binary search.
+ *
+ * Instances are immutable. Use {@link IFragment#getOffsetIndex()} to get the index of a fragment, rather than
+ * building a new one.
+ */
+public final class FragmentOffsetIndex {
+
+    private final String text;
+    // start offset of each piece in the local text
+    private final int[] localStarts;
+    private final int[] lengths;
+    // start offset of each piece in the test suite, which are ascending as well
+    private final int[] globalStarts;
+
+
+    public FragmentOffsetIndex(Iterable<FragmentPiece> pieces) {
+        int count = 0;
+        for(@SuppressWarnings("unused") FragmentPiece piece : pieces) {
+            count++;
+        }
+        this.localStarts = new int[count];
+        this.lengths = new int[count];
+        this.globalStarts = new int[count];
+
+        final StringBuilder textBuilder = new StringBuilder();
+        int i = 0;
+        for(FragmentPiece piece : pieces) {
+            localStarts[i] = textBuilder.length();
+            lengths[i] = piece.text.length();
+            globalStarts[i] = piece.startOffset;
+            textBuilder.append(piece.text);
+            i++;
+        }
+        this.text = textBuilder.toString();
+    }
+
+
+    /**
+     * The text of the fragment, i.e. the concatenation of the text of its pieces.
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * The number of pieces of the fragment.
+     */
+    public int pieceCount() {
+        return localStarts.length;
+    }
+
+    public int localStart(int piece) {
+        return localStarts[piece];
+    }
+
+    public int globalStart(int piece) {
+        return globalStarts[piece];
+    }
+
+    public int length(int piece) {
+        return lengths[piece];
+    }
+
+    /**
+     * What to add to a local offset in the given piece to get its global offset.
+     */
+    public int adjustment(int piece) {
+        return globalStarts[piece] - localStarts[piece];
+    }
+
+
+    /**
+     * The piece that contains the given local offset, or -1 if it is outside of the text.
+     */
+    public int pieceAtLocal(int localOffset) {
+        final int piece = lastStartingAtOrBefore(localStarts, localOffset);
+        return piece >= 0 && localOffset < localStarts[piece] + lengths[piece] ? piece : -1;
+    }
+
+    /**
+     * The piece that contains the given local offset, or -1 if it is outside of the text.
+     *
+     * Starts looking at the given piece, and only falls back to a binary search when the offset lies before it. So
+     * translating ascending offsets, passing the previous result (or 0) as the hint, takes linear time overall.
+     */
+    public int pieceAtLocal(int localOffset, int hint) {
+        if(localStarts.length == 0) {
+            return -1;
+        }
+        int piece = hint < 0 || hint >= localStarts.length ? 0 : hint;
+        if(localStarts[piece] > localOffset) {
+            return pieceAtLocal(localOffset);
+        }
+        while(piece + 1 < localStarts.length && localStarts[piece + 1] <= localOffset) {
+            piece++;
+        }
+        return localOffset < localStarts[piece] + lengths[piece] ? piece : -1;
+    }
+
+    /**
+     * The piece that contains the given global offset, or -1 if it is not part of the text of the fragment.
+     */
+    public int pieceAtGlobal(int globalOffset) {
+        final int piece = lastStartingAtOrBefore(globalStarts, globalOffset);
+        return piece >= 0 && globalOffset < globalStarts[piece] + lengths[piece] ? piece : -1;
+    }
+
+
+    /**
+     * The global offset of the given local offset, or the local offset itself if it is outside of the text.
+     */
+    public int toGlobal(int localOffset) {
+        final int piece = pieceAtLocal(localOffset);
+        return piece < 0 ? localOffset : localOffset + adjustment(piece);
+    }
+
+    /**
+     * The local offset of the given global offset, or -1 if it is not part of the text of the fragment.
+     */
+    public int toLocal(int globalOffset) {
+        final int piece = pieceAtGlobal(globalOffset);
+        return piece < 0 ? -1 : globalOffset - adjustment(piece);
+    }
+
+    /**
+     * The global region of the given local region. Offsets outside of the text are left alone, as with
+     * {@link #toGlobal(int)}.
+     *
+     * @return the given region if it did not change.
+     */
+    public ISourceRegion toGlobal(ISourceRegion localRegion) {
+        final int start = toGlobal(localRegion.startOffset());
+        final int end = toGlobal(localRegion.endOffset());
+        if(start == localRegion.startOffset() && end == localRegion.endOffset()) {
+            return localRegion;
+        }
+        return new SourceRegion(start, end);
+    }
+
+    /**
+     * Whether the given global offset is part of the text of the fragment.
+     */
+    public boolean containsGlobal(int globalOffset) {
+        return pieceAtGlobal(globalOffset) >= 0;
+    }
+
+
+    private static int lastStartingAtOrBefore(int[] starts, int offset) {
+        int low = 0;
+        int high = starts.length - 1;
+        int found = -1;
+        while(low <= high) {
+            final int mid = (low + high) >>> 1;
+            if(starts[mid] <= offset) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+}
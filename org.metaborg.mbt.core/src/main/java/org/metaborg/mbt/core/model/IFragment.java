@@ -55,6 +55,16 @@ public interface IFragment {
      */
     Iterable<FragmentPiece> getText();
 
+    /**
+     * The index to translate offsets between the text of this fragment and its surrounding source.
+     * 
+     * Implementations should build the index only once, as it is used by the parser, the evaluators, and everything in
+     * between.
+     */
+    default FragmentOffsetIndex getOffsetIndex() {
+        return new FragmentOffsetIndex(getText());
+    }
+
     class FragmentPiece {
         public final int startOffset;
         public final String text;
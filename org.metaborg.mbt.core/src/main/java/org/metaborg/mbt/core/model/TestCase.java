@@ -1,6 +1,7 @@
 package org.metaborg.mbt.core.model;
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import javax.annotation.Nullable;
@@ -17,7 +18,8 @@ public class TestCase implements ITestCase {
     private final IFragment fragment;
     private final FileObject resource;
     private final IProject project;
-    private final List<ITestExpectation> expectations = new LinkedList<>();
+    // an immutable array-backed list, as test suites can have very many tests
+    private final List<ITestExpectation> expectations;
 
     public TestCase(String description, ISourceRegion descriptionRegion, IFragment fragment, FileObject resource,
         IProject project, List<ITestExpectation> expectations) {
@@ -26,7 +28,8 @@ public class TestCase implements ITestCase {
         this.fragment = fragment;
         this.resource = resource;
         this.project = project;
-        this.expectations.addAll(expectations);
+        this.expectations = Collections
+            .unmodifiableList(Arrays.asList(expectations.toArray(new ITestExpectation[expectations.size()])));
     }
 
     @Override public String getDescription() {
@@ -4,6 +4,7 @@ import java.util.Collection;
 
 import javax.annotation.Nullable;
 
+import org.apache.commons.vfs2.FileObject;
 import org.metaborg.core.messages.IMessage;
 import org.metaborg.core.messages.MessageBuilder;
 import org.metaborg.core.source.ISourceRegion;
@@ -63,6 +64,30 @@ public class MessageUtil {
         return b.build();
     }
 
+    /**
+     * Create a new message with the same information, but the given source.
+     * 
+     * @param m
+     *            the message to copy.
+     * @param source
+     *            the resource to set as the source of the new message.
+     * @return the new message with the new source.
+     */
+    public static IMessage setSource(IMessage m, FileObject source) {
+        MessageBuilder b = MessageBuilder.create();
+        b.withMessage(m.message());
+        b.withSeverity(m.severity());
+        b.withType(m.type());
+        if(m.region() != null) {
+            b.withRegion(m.region());
+        }
+        b.withSource(source);
+        if(m.exception() != null) {
+            b.withException(m.exception());
+        }
+        return b.build();
+    }
+
     /**
      * Adds all messages in toPropagate to the given collection.
      * 
@@ -1,5 +1,7 @@
 package org.metaborg.mbt.core.run;
 
+import java.util.List;
+
 import javax.annotation.Nullable;
 
 import org.metaborg.core.analysis.IAnalyzeUnit;
@@ -32,4 +34,51 @@ public interface ITestCaseRunner<P extends IParseUnit, A extends IAnalyzeUnit> {
     ITestResult<P, A> run(IProject project, ITestCase test, ILanguageImpl languageUnderTest,
                           @Nullable ILanguageImpl dialectUnderTest, @Nullable IFragmentParserConfig fragmentParseConfig);
 
+    /**
+     * Parse the fragment of the given test.
+     * 
+     * This is the first step of {@link #run(IProject, ITestCase, ILanguageImpl, ILanguageImpl, IFragmentParserConfig)}.
+     * Together with {@link #run(IProject, ITestCase, IParseUnit, ILanguageImpl, ILanguageImpl, IFragmentParserConfig)}
+     * it allows parsing and evaluating a test in separate steps, e.g. on different threads.
+     * 
+     * @return the parse result of the test's fragment.
+     */
+    P parse(ITestCase test, ILanguageImpl languageUnderTest, @Nullable ILanguageImpl dialectUnderTest,
+        @Nullable IFragmentParserConfig fragmentParseConfig);
+
+    /**
+     * Run the given test, using the given parse result of its fragment.
+     * 
+     * @param parseResult
+     *            the result of calling {@link #parse} with the same test and arguments.
+     * @see #run(IProject, ITestCase, ILanguageImpl, ILanguageImpl, IFragmentParserConfig)
+     */
+    ITestResult<P, A> run(IProject project, ITestCase test, P parseResult, ILanguageImpl languageUnderTest,
+        @Nullable ILanguageImpl dialectUnderTest, @Nullable IFragmentParserConfig fragmentParseConfig);
+
+    /**
+     * Run the given tests, possibly concurrently.
+     * 
+     * Each test is run in isolation, just like with {@link #run(IProject, ITestCase, ILanguageImpl, ILanguageImpl,
+     * IFragmentParserConfig)}, so the results don't depend on the amount of parallelism.
+     * 
+     * @param project
+     *            the project containing these tests.
+     * @param tests
+     *            the tests to run (usually the tests of a single test suite).
+     * @param languageUnderTest
+     *            the language under test to run these tests with.
+     * @param dialectUnderTest
+     *            see {@link #run(IProject, ITestCase, ILanguageImpl, ILanguageImpl, IFragmentParserConfig)}.
+     * @param fragmentParseConfig
+     *            a configuration parameter for the {@link IFragmentParser} that will be used throughout the test runs.
+     * @param parallelism
+     *            the maximum number of tests to run concurrently. With 1 or less, the tests are run one after the other
+     *            on the calling thread.
+     * @return the test results, in the same order as the given tests.
+     */
+    List<? extends ITestResult<P, A>> run(IProject project, Iterable<ITestCase> tests, ILanguageImpl languageUnderTest,
+        @Nullable ILanguageImpl dialectUnderTest, @Nullable IFragmentParserConfig fragmentParseConfig,
+        int parallelism);
+
 }
@@ -0,0 +1,284 @@
+package org.metaborg.mbt.core.run;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.context.ContextException;
+import org.metaborg.core.context.IContextService;
+import org.metaborg.core.context.ITemporaryContext;
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.core.project.IProject;
+import org.metaborg.util.concurrent.IClosableLock;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+
+/**
+ * Hands out temporary contexts, and keeps the ones that are released for the next test, so contexts don't have to be
+ * created and deleted for every test.
+ *
+ * A released context is reset before it is kept, and is only handed out again for the same resource, project, and
+ * language, so a test never sees the state of an earlier test. At most {@link #configure size} contexts are kept;
+ * when another one is released, the one that was released the longest ago is closed. Optionally, contexts that were
+ * not used for a while are closed as well.
+ *
+ * The pool is disabled until it is configured with a positive size, in which case every context is created when it is
+ * acquired and closed when it is released. Call {@link #clear} when done, to close the contexts that are kept.
+ */
+public class TemporaryContextPool {
+    private static final ILogger logger = LoggerUtils.logger(TemporaryContextPool.class);
+
+    private final IContextService contextService;
+
+    // guarded by this
+    private int size = 0;
+    private long maxIdleMillis = 0;
+    private final Deque<Idle> idle = new ArrayDeque<>();
+    private final Map<ITemporaryContext, Key> leased = new IdentityHashMap<>();
+    private long hits = 0;
+    private long creations = 0;
+    private long evictions = 0;
+    private long resetFailures = 0;
+
+
+    @Inject public TemporaryContextPool(IContextService contextService) {
+        this.contextService = contextService;
+    }
+
+
+    /**
+     * Set the number of contexts to keep, and how long to keep them without being used.
+     *
+     * @param size
+     *            the maximum number of released contexts to keep, or 0 to disable the pool.
+     * @param maxIdleMillis
+     *            the time after which a released context that was not used again is closed, or 0 to keep it until it
+     *            is evicted by newer contexts.
+     */
+    public void configure(int size, long maxIdleMillis) {
+        if(size < 0 || maxIdleMillis < 0) {
+            throw new IllegalArgumentException("The size and idle time of a context pool should not be negative");
+        }
+        final List<ITemporaryContext> evicted = Lists.newArrayList();
+        synchronized(this) {
+            this.size = size;
+            this.maxIdleMillis = maxIdleMillis;
+            while(idle.size() > size) {
+                evicted.add(idle.removeLast().context);
+                evictions++;
+            }
+        }
+        close(evicted);
+    }
+
+    public synchronized boolean isEnabled() {
+        return size > 0;
+    }
+
+
+    /**
+     * A temporary context for the given resource, project, and language. Hand it back with {@link #release} instead of
+     * closing it.
+     */
+    public ITemporaryContext acquire(FileObject resource, IProject project, ILanguageImpl language)
+        throws ContextException {
+        final Key key = new Key(resource, project, language);
+        final List<ITemporaryContext> expired;
+        ITemporaryContext kept = null;
+        synchronized(this) {
+            expired = expire();
+            if(size > 0) {
+                for(Iterator<Idle> it = idle.iterator(); it.hasNext();) {
+                    final Idle candidate = it.next();
+                    if(candidate.key.equals(key)) {
+                        it.remove();
+                        leased.put(candidate.context, key);
+                        hits++;
+                        kept = candidate.context;
+                        break;
+                    }
+                }
+            }
+            if(kept == null) {
+                creations++;
+            }
+        }
+        // closing can be slow, so don't hold up other threads
+        close(expired);
+        if(kept != null) {
+            return kept;
+        }
+
+        final ITemporaryContext context = contextService.getTemporary(resource, project, language);
+        synchronized(this) {
+            if(size > 0) {
+                leased.put(context, key);
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Hand back a context that was acquired from this pool. The context is reset and kept for a next test, or closed.
+     *
+     * @param context
+     *            the context, or null to do nothing.
+     */
+    public void release(@Nullable ITemporaryContext context) {
+        if(context == null) {
+            return;
+        }
+        final Key key;
+        synchronized(this) {
+            key = leased.remove(context);
+        }
+        if(key == null) {
+            context.close();
+            return;
+        }
+
+        try(IClosableLock lock = context.write()) {
+            context.reset();
+        } catch(IOException e) {
+            logger.warn("Unable to reset temporary context {}, closing it instead", e, context);
+            synchronized(this) {
+                resetFailures++;
+            }
+            context.close();
+            return;
+        }
+
+        final List<ITemporaryContext> evicted;
+        synchronized(this) {
+            evicted = expire();
+            if(size > 0) {
+                idle.addFirst(new Idle(key, context, System.currentTimeMillis()));
+            } else {
+                evicted.add(context);
+            }
+            while(idle.size() > size) {
+                evicted.add(idle.removeLast().context);
+                evictions++;
+            }
+        }
+        close(evicted);
+    }
+
+    /**
+     * Close all contexts that are kept. Contexts that are in use are closed when they are released.
+     */
+    public void clear() {
+        final List<ITemporaryContext> contexts = Lists.newArrayList();
+        synchronized(this) {
+            for(Idle context : idle) {
+                contexts.add(context.context);
+            }
+            idle.clear();
+            leased.clear();
+        }
+        close(contexts);
+    }
+
+
+    /**
+     * The number of times a kept context was handed out.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * The number of contexts that were created.
+     */
+    public synchronized long creations() {
+        return creations;
+    }
+
+    /**
+     * The number of kept contexts that were closed to make room for other contexts, or because they were not used.
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * The number of contexts that were closed because they could not be reset.
+     */
+    public synchronized long resetFailures() {
+        return resetFailures;
+    }
+
+    @Override public synchronized String toString() {
+        return "TemporaryContextPool(size " + size + ", idle " + idle.size() + ", hits " + hits + ", creations "
+            + creations + ", evictions " + evictions + ", reset failures " + resetFailures + ")";
+    }
+
+
+    // must hold the lock of this pool
+    private List<ITemporaryContext> expire() {
+        if(maxIdleMillis <= 0 || idle.isEmpty()) {
+            return Lists.newArrayList();
+        }
+        final List<ITemporaryContext> expired = Lists.newArrayList();
+        final long oldest = System.currentTimeMillis() - maxIdleMillis;
+        while(!idle.isEmpty() && idle.peekLast().released < oldest) {
+            expired.add(idle.removeLast().context);
+            evictions++;
+        }
+        return expired;
+    }
+
+    private static void close(Iterable<ITemporaryContext> contexts) {
+        for(ITemporaryContext context : contexts) {
+            context.close();
+        }
+    }
+
+
+    private static final class Key {
+        private final String resource;
+        private final String project;
+        private final ILanguageImpl language;
+
+        private Key(FileObject resource, IProject project, ILanguageImpl language) {
+            this.resource = resource.getName().getURI();
+            this.project = project.location().getName().getURI();
+            this.language = language;
+        }
+
+        @Override public boolean equals(Object obj) {
+            if(!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            // languages are compared by identity, so a reloaded language does not get contexts of the old one
+            return resource.equals(other.resource) && project.equals(other.project) && language == other.language;
+        }
+
+        @Override public int hashCode() {
+            return 31 * (31 * resource.hashCode() + project.hashCode()) + System.identityHashCode(language);
+        }
+    }
+
+    private static final class Idle {
+        private final Key key;
+        private final ITemporaryContext context;
+        private final long released;
+
+        private Idle(Key key, ITemporaryContext context, long released) {
+            this.key = key;
+            this.context = context;
+            this.released = released;
+        }
+    }
+}
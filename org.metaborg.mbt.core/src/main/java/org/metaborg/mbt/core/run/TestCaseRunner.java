@@ -1,6 +1,8 @@
 package org.metaborg.mbt.core.run;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.annotation.Nullable;
 
@@ -10,7 +12,6 @@ import org.metaborg.core.analysis.IAnalyzeUnit;
 import org.metaborg.core.analysis.IAnalyzeUnitUpdate;
 import org.metaborg.core.context.ContextException;
 import org.metaborg.core.context.IContext;
-import org.metaborg.core.context.IContextService;
 import org.metaborg.core.context.ITemporaryContext;
 import org.metaborg.core.language.ILanguageImpl;
 import org.metaborg.core.messages.IMessage;
@@ -33,15 +34,17 @@ public abstract class TestCaseRunner<P extends IParseUnit, A extends IAnalyzeUni
     private static final ILogger logger = LoggerUtils.logger(TestCaseRunner.class);
 
     private final IAnalysisService<P, A, AU> analysisService;
-    private final IContextService contextService;
+    private final TemporaryContextPool contextPool;
     private final IFragmentParser<P> fragmentParser;
+    private final TestExecutor executor;
 
 
-    @Inject public TestCaseRunner(IAnalysisService<P, A, AU> analysisService, IContextService contextService,
-        IFragmentParser<P> fragmentParser) {
+    @Inject public TestCaseRunner(IAnalysisService<P, A, AU> analysisService, TemporaryContextPool contextPool,
+        IFragmentParser<P> fragmentParser, TestExecutor executor) {
         this.analysisService = analysisService;
-        this.contextService = contextService;
+        this.contextPool = contextPool;
         this.fragmentParser = fragmentParser;
+        this.executor = executor;
     }
 
     /**
@@ -50,25 +53,36 @@ public abstract class TestCaseRunner<P extends IParseUnit, A extends IAnalyzeUni
      */
     @Override public ITestResult<P, A> run(IProject project, ITestCase test, ILanguageImpl languageUnderTest,
         @Nullable ILanguageImpl dialectUnderTest, @Nullable IFragmentParserConfig fragmentParseConfig) {
-        logger.debug("About to run test case '{}' with language {}", test.getDescription(), languageUnderTest.id());
-
-        List<IMessage> messages = Lists.newLinkedList();
+        final P parseRes = parse(test, languageUnderTest, dialectUnderTest, fragmentParseConfig);
+        return run(project, test, parseRes, languageUnderTest, dialectUnderTest, fragmentParseConfig);
+    }
 
-        // parse the fragment
-        final P parseRes;
+    @Override public P parse(ITestCase test, ILanguageImpl languageUnderTest, @Nullable ILanguageImpl dialectUnderTest,
+        @Nullable IFragmentParserConfig fragmentParseConfig) {
         try {
-            parseRes =
-                fragmentParser.parse(test.getFragment(), languageUnderTest, dialectUnderTest, fragmentParseConfig);
+            return fragmentParser.parse(test.getFragment(), languageUnderTest, dialectUnderTest, fragmentParseConfig);
         } catch(ParseException e) {
             // TODO: is this ok? or should we fail the test and gracefully return a message?
             throw new RuntimeException(e);
         }
+    }
+
+    /**
+     * Guaranteed to return the result provided by the subclass' implementation of
+     * {@link #evaluateExpectations}.
+     */
+    @Override public ITestResult<P, A> run(IProject project, ITestCase test, P parseRes,
+        ILanguageImpl languageUnderTest, @Nullable ILanguageImpl dialectUnderTest,
+        @Nullable IFragmentParserConfig fragmentParseConfig) {
+        logger.debug("About to run test case '{}' with language {}", test.getDescription(), languageUnderTest.id());
+
+        List<IMessage> messages = Lists.newLinkedList();
 
         // analyze the fragment if any expectation requires analysis
         A analysisRes = null;
         ITemporaryContext context = null;
         try {
-            context = contextService.getTemporary(test.getResource(), project, languageUnderTest);
+            context = contextPool.acquire(test.getResource(), project, languageUnderTest);
             TestPhase phase = requiredPhase(test, context);
             if(phase.ordinal() > TestPhase.PARSING.ordinal()) {
                 try(IClosableLock lock = context.read()) {
@@ -76,9 +90,8 @@ public abstract class TestCaseRunner<P extends IParseUnit, A extends IAnalyzeUni
                 }
             }
         } catch(ContextException | AnalysisException e) {
-            if(context != null) {
-                context.close();
-            }
+            contextPool.release(context);
+            context = null;
             messages.add(MessageFactory.newAnalysisError(test.getResource(), test.getDescriptionRegion(),
                 "Failed to analyze the input fragment, which is required to evaluate some of the test expectations.",
                 e));
@@ -88,14 +101,29 @@ public abstract class TestCaseRunner<P extends IParseUnit, A extends IAnalyzeUni
         final ITestResult<P, A> result =
             evaluateExpectations(test, parseRes, analysisRes, languageUnderTest, messages, fragmentParseConfig);
 
-        // close the analysis context for this test run
-        if(context != null) {
-            context.close();
-        }
+        // hand back the analysis context for this test run
+        contextPool.release(context);
 
         return result;
     }
 
+    /**
+     * Runs the tests on the shared {@link TestExecutor}, at most {@code parallelism} at a time.
+     * 
+     * This relies on {@link #run(IProject, ITestCase, ILanguageImpl, ILanguageImpl, IFragmentParserConfig)} being safe
+     * to call concurrently. Each test gets its own temporary context, so subclasses only need to make sure that their
+     * own state (and that of the evaluators they use) is thread safe.
+     */
+    @Override public List<? extends ITestResult<P, A>> run(IProject project, Iterable<ITestCase> tests,
+        ILanguageImpl languageUnderTest, @Nullable ILanguageImpl dialectUnderTest,
+        @Nullable IFragmentParserConfig fragmentParseConfig, int parallelism) {
+        final List<Callable<ITestResult<P, A>>> runs = new ArrayList<>();
+        for(final ITestCase test : tests) {
+            runs.add(() -> run(project, test, languageUnderTest, dialectUnderTest, fragmentParseConfig));
+        }
+        return executor.invokeAll(runs, parallelism);
+    }
+
     /**
      * Evaluate the expectations of the test.
      */
@@ -0,0 +1,97 @@
+package org.metaborg.mbt.core.run;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs tasks, such as the tests of a test suite, on threads that are shared by all test suites, so a test run does not
+ * have to start and stop a pool of threads for every test suite.
+ *
+ * Threads are created when they are needed, and stop when they have not been used for a while. They are daemon
+ * threads, so they never keep the JVM alive.
+ */
+public class TestExecutor {
+
+    private final ExecutorService threads = Executors
+        .newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("spt-test-%d").setDaemon(true).build());
+
+
+    /**
+     * Runs the given tasks, at most {@code parallelism} at a time, and waits until they are done.
+     *
+     * With a parallelism of 1 or less, or a single task, the tasks are run one after the other on the calling thread.
+     * Otherwise, the tasks are started in the given order. When a task fails, the tasks that were not started yet are
+     * skipped.
+     *
+     * @return the results of the tasks, in the same order as the tasks.
+     * @throws RuntimeException
+     *             the exception thrown by the first failing task, or one wrapping it if it is not unchecked.
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<? extends T>> tasks, int parallelism) {
+        final List<T> results = new ArrayList<>(Collections.<T>nCopies(tasks.size(), null));
+        if(parallelism <= 1 || tasks.size() <= 1) {
+            for(int i = 0; i < tasks.size(); i++) {
+                results.set(i, call(tasks.get(i)));
+            }
+            return results;
+        }
+
+        // each worker takes the next task that was not started yet, so at most parallelism tasks run at a time
+        final AtomicInteger next = new AtomicInteger();
+        final List<Future<?>> workers = new ArrayList<>();
+        for(int w = 0; w < Math.min(parallelism, tasks.size()); w++) {
+            workers.add(threads.submit(() -> {
+                for(int i = next.getAndIncrement(); i < tasks.size(); i = next.getAndIncrement()) {
+                    try {
+                        results.set(i, tasks.get(i).call());
+                    } catch(Throwable e) {
+                        next.set(tasks.size());
+                        throw e;
+                    }
+                }
+                return null;
+            }));
+        }
+        try {
+            for(Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch(InterruptedException e) {
+            next.set(tasks.size());
+            for(Future<?> worker : workers) {
+                worker.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while running tests", e);
+        } catch(ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        // the results were set by the workers, which are done, so reading them here is safe
+        return results;
+    }
+
+    private static <T> T call(Callable<? extends T> task) {
+        try {
+            return task.call();
+        } catch(RuntimeException e) {
+            throw e;
+        } catch(Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
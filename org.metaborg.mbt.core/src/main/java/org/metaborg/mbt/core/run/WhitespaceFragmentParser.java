@@ -1,5 +1,7 @@
 package org.metaborg.mbt.core.run;
 
+import java.util.Arrays;
+
 import javax.annotation.Nullable;
 
 import org.metaborg.core.language.ILanguageImpl;
@@ -8,8 +10,8 @@ import org.metaborg.core.syntax.IParseUnit;
 import org.metaborg.core.syntax.ISyntaxService;
 import org.metaborg.core.syntax.ParseException;
 import org.metaborg.core.unit.IInputUnitService;
+import org.metaborg.mbt.core.model.FragmentOffsetIndex;
 import org.metaborg.mbt.core.model.IFragment;
-import org.metaborg.mbt.core.model.IFragment.FragmentPiece;
 
 import com.google.inject.Inject;
 
@@ -40,16 +42,41 @@ public class WhitespaceFragmentParser<I extends IInputUnit, P extends IParseUnit
     }
 
     protected String getWhitespacedFragmentText(IFragment fragment) {
-        StringBuilder fragmentTextBuilder = new StringBuilder();
-        for(FragmentPiece piece : fragment.getText()) {
-            // add whitespace to get the character offset of this piece right
-            for(int i = fragmentTextBuilder.length(); i < piece.startOffset; i++) {
-                fragmentTextBuilder.append(" ");
+        return getWhitespacedFragmentText(fragment, 0);
+    }
+
+    /**
+     * The text of the fragment, with whitespace in place of the SPT specific characters, such that each piece of text
+     * is at its offset in the test suite minus the given base offset.
+     * 
+     * Passing the start offset of the first piece as the base offset keeps the text as small as the fragment, instead
+     * of as large as the part of the test suite before it. The offsets of the parse result then have to be moved by the
+     * base offset afterwards.
+     */
+    protected String getWhitespacedFragmentText(IFragment fragment, int baseOffset) {
+        final FragmentOffsetIndex offsets = fragment.getOffsetIndex();
+        final int pieces = offsets.pieceCount();
+        if(pieces == 0) {
+            return "";
+        }
+        int length = 0;
+        for(int i = 0; i < pieces; i++) {
+            length = Math.max(length, offsets.globalStart(i) - baseOffset + offsets.length(i));
+        }
+
+        // fill the gaps with whitespace, and copy each piece of program text from the fragment to its own offset
+        final char[] chars = new char[length];
+        Arrays.fill(chars, ' ');
+        final String text = offsets.text();
+        for(int i = 0; i < pieces; i++) {
+            final int start = offsets.globalStart(i) - baseOffset;
+            if(start < 0) {
+                throw new IllegalArgumentException(
+                    "The base offset " + baseOffset + " lies beyond the start of a piece of the fragment");
             }
-            // add the actual piece of program text from the fragment
-            fragmentTextBuilder.append(piece.text);
+            text.getChars(offsets.localStart(i), offsets.localStart(i) + offsets.length(i), chars, start);
         }
-        return fragmentTextBuilder.toString();
+        return new String(chars);
     }
 
     protected P parse(I input) throws ParseException {
@@ -12,14 +12,15 @@ public class Arguments {
         help = true) public boolean help;
 
 
-    @Parameter(names = { "--lut", "-l" }, description = "Location of the language under test",
-        required = true) public String lutLocation;
+    // required for running tests, but not for starting or stopping a daemon (see Main.missingLocations)
+    @Parameter(names = { "--lut", "-l" }, description = "Location of the language under test (required)",
+        required = false) public String lutLocation;
 
-    @Parameter(names = { "--spt", "-s" }, description = "Location of the SPT language",
-        required = true) public String sptLocation;
+    @Parameter(names = { "--spt", "-s" }, description = "Location of the SPT language (required)",
+        required = false) public String sptLocation;
 
-    @Parameter(names = { "--tests", "-t" }, description = "Location of test files",
-        required = true) public String testsLocation;
+    @Parameter(names = { "--tests", "-t" }, description = "Location of test files (required)",
+        required = false) public String testsLocation;
 
 
     @Parameter(names = { "--start-symbol", "-start" }, description = "Start Symbol for these tests",
@@ -28,9 +29,90 @@ public class Arguments {
     @Parameter(names = { "--lang", "-ol" }, description = "Location of any other language that should be loaded",
         required = false) public List<String> targetLanguageLocation = Lists.newLinkedList();
 
+    @Parameter(names = { "--eager-lang" },
+        description = "Load the languages given by --lang before running any test, instead of only when a test refers "
+            + "to a language that is not loaded yet", required = false) public boolean eagerLanguages;
+
     @Parameter(names = { "--reporter", "-C" }, description = "Class name of custom reporter to use",
             required = false) public String customReporter;
 
+    @Parameter(names = { "--jobs", "-j" }, description = "Maximum number of test suites to run concurrently",
+        required = false) public int jobs = 1;
+
+    @Parameter(names = { "--test-jobs", "-tj" },
+        description = "Maximum number of tests of a single test suite to run concurrently",
+        required = false) public int testJobs = 1;
+
+    @Parameter(names = { "--stages" },
+        description = "Threads for reading, extracting, parsing, and evaluating, and the queue capacity between them, "
+            + "e.g. 1,2,8,8,4. Overrides --jobs and --test-jobs",
+        required = false) public String stages;
+
+    @Parameter(names = { "--result-store" },
+        description = "Directory in which to remember passing test suites, which are then only run again when they or "
+            + "the languages change",
+        required = false) public String resultStore;
+
+    @Parameter(names = { "--force" }, description = "Run all test suites, even those that passed before according to "
+        + "--result-store", required = false) public boolean force;
+
+    @Parameter(names = { "--test-cache" },
+        description = "Directory in which to cache the results of single tests, which are then only run again when "
+            + "they or the parts of the language under test they depend on change",
+        required = false) public String testCache;
+
+    @Parameter(names = { "--test-cache-size" }, description = "Maximum number of test results in --test-cache",
+        required = false) public int testCacheSize = 10000;
+
+    @Parameter(names = { "--extraction-cache" },
+        description = "Directory in which to cache the tests extracted from test suites, so unchanged test suites "
+            + "don't have to be parsed and analyzed again", required = false) public String extractionCache;
+
+    @Parameter(names = { "--parse-cache" },
+        description = "Maximum total number of tokens of the parse results to keep in memory, so fragments with the "
+            + "same text are only parsed once, or 0 to parse every fragment", required = false) public long parseCache;
+
+    @Parameter(names = { "--incremental-fixtures" },
+        description = "Parse the tests of a test suite one at a time, so languages with an incremental parser only "
+            + "parse the shared fixture once", required = false) public boolean incrementalFixtures;
+
+    @Parameter(names = { "--prefetch" },
+        description = "Number of threads that parse the fragments of tests ahead of time, including the fragments "
+            + "their expectations compare to, or 0 to parse each fragment when it is needed",
+        required = false) public int prefetch = 0;
+
+    @Parameter(names = { "--shared-analysis" },
+        description = "Analyze all fragments of the test suites whose module name matches this regular expression "
+            + "together in one context. Only for languages whose analysis keeps files apart",
+        required = false) public String sharedAnalysis;
+
+    @Parameter(names = { "--context-pool" },
+        description = "Number of analysis contexts to reset and reuse for later tests of the same test suite, instead "
+            + "of creating a new context for each test", required = false) public int contextPool = 0;
+
+    @Parameter(names = { "--context-pool-idle" },
+        description = "Seconds after which an unused context of --context-pool is closed, or 0 to keep it until "
+            + "newer contexts take its place", required = false) public int contextPoolIdle = 0;
+
+    @Parameter(names = { "--filter" },
+        description = "Only run the tests whose description matches this regular expression. Test suites without any "
+            + "matching tests are not parsed at all", required = false) public String filter;
+
+    @Parameter(names = { "--index" },
+        description = "Directory in which to keep the index of the tests in each test suite that --filter uses, so "
+            + "unchanged test suites don't have to be read again", required = false) public String index;
+
+
+    @Parameter(names = { "--daemon" },
+        description = "Start a daemon that keeps languages loaded, and runs tests for clients connecting to this local port",
+        required = false) public Integer daemonPort;
+
+    @Parameter(names = { "--connect" }, description = "Run the tests on the daemon listening on this local port",
+        required = false) public Integer connectPort;
+
+    @Parameter(names = { "--stop-daemon" }, description = "Stop the daemon given by --connect",
+        required = false) public boolean stopDaemon;
+
 
     @Parameter(names = { "--exit" }, description = "Immediately exit, used for testing purposes",
         hidden = true) public boolean exit;
@@ -0,0 +1,390 @@
+package org.metaborg.spt.cmd;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.metaborg.core.testing.ITestReporterService;
+import org.metaborg.core.testing.LoggingTestReporterService;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+import com.google.inject.AbstractModule;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+
+/**
+ * Keeps Spoofax and the loaded languages resident, and runs tests for clients that connect to a local port.
+ *
+ * A request consists of a token, followed by the command line arguments, one per line, and an empty line. The daemon
+ * runs the request like {@link Main} would, with a reporter of its own, and sends everything that is logged while it
+ * runs back to the client. The response ends with a line that starts with {@link #EXIT_PREFIX}, followed by the exit
+ * code. Requests are handled one at a time. Languages are only reloaded when their artifact changes (see
+ * {@link Runner}).
+ *
+ * As any local user can connect to the port, the daemon only handles requests with the token that it writes to its
+ * {@link #tokenFile token file} when it starts. Only the user that started the daemon can read that file.
+ */
+public class Daemon {
+    private static final ILogger logger = LoggerUtils.logger(Daemon.class);
+
+    public static final String EXIT_PREFIX = "#spt-daemon-exit ";
+    public static final String STOP_REQUEST = "--stop-daemon";
+
+    // how long to wait for the token and the arguments of a request
+    private static final int REQUEST_TIMEOUT_MILLIS = 10000;
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+    // the pattern of the console appender in logback.xml
+    private static final String LOG_PATTERN = "%d{HH:mm:ss.SSS} %-5level %logger{36} - %msg%n";
+
+    // the options of Arguments by their names, and the fields of the options that are forwarded differently
+    private static final Map<String, Field> OPTIONS = options();
+    private static final String CONNECT_FIELD = "connectPort";
+    private static final Set<String> LOCATION_FIELDS =
+        ImmutableSet.of("lutLocation", "sptLocation", "testsLocation", "targetLanguageLocation");
+    private static final Set<String> DIRECTORY_FIELDS =
+        ImmutableSet.of("resultStore", "testCache", "extractionCache", "index");
+
+    private final Injector injector;
+    private final Runner runner;
+    private final Class<? extends ITestReporterService> defaultReporterClass;
+
+
+    /**
+     * @param injector
+     *            an injector without a binding for {@link ITestReporterService}, see
+     *            {@link Module#Module(Class, boolean)}.
+     * @param reporterClass
+     *            the reporter for requests that don't give one, or null to use the {@link LoggingTestReporterService}.
+     */
+    public Daemon(Injector injector, @Nullable Class<? extends ITestReporterService> reporterClass) {
+        this.injector = injector;
+        this.runner = injector.getInstance(Runner.class);
+        this.defaultReporterClass = reporterClass == null ? LoggingTestReporterService.class : reporterClass;
+    }
+
+
+    /**
+     * Serve requests on the given port of the loopback interface, until a client asks the daemon to stop.
+     */
+    public void serve(int port) throws IOException {
+        try(final ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            final Path tokenFile = tokenFile(server.getLocalPort());
+            final byte[] token = writeToken(tokenFile);
+            logger.info("SPT daemon listening on port {}", server.getLocalPort());
+            try {
+                boolean stop = false;
+                // one request at a time, as the logs of a run are sent to its client by an appender of the root logger
+                while(!stop) {
+                    try(final Socket socket = server.accept()) {
+                        stop = handle(socket, token);
+                    } catch(IOException e) {
+                        logger.error("Failed to handle a request", e);
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(tokenFile);
+            }
+            logger.info("SPT daemon stopped");
+        }
+    }
+
+    private boolean handle(Socket socket, byte[] token) throws IOException {
+        socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+        final BufferedReader in =
+            new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        final PrintStream out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8.name());
+
+        // check the token before looking at the rest of the request
+        final String requestToken = in.readLine();
+        if(requestToken == null || !MessageDigest.isEqual(token, requestToken.getBytes(StandardCharsets.UTF_8))) {
+            logger.warn("Rejected a request without the token of this daemon");
+            out.println("The request does not have the token of the SPT daemon");
+            out.println(EXIT_PREFIX + 1);
+            return false;
+        }
+        final List<String> args = Lists.newArrayList();
+        for(String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+            args.add(line);
+        }
+        socket.setSoTimeout(0);
+
+        if(args.contains(STOP_REQUEST)) {
+            out.println(EXIT_PREFIX + 0);
+            return true;
+        }
+
+        // send the logs of this run, including those of the reporter, to the client
+        final int exitCode;
+        final Appender<ILoggingEvent> appender = attach(socket.getOutputStream());
+        try {
+            exitCode = run(args.toArray(new String[args.size()]));
+        } finally {
+            detach(appender);
+        }
+        out.println(EXIT_PREFIX + exitCode);
+        return false;
+    }
+
+    /**
+     * Add an appender to the root logger that writes to the given stream, in the same format as the console.
+     *
+     * @return the appender, or null if Logback is not the logging backend.
+     */
+    private static @Nullable Appender<ILoggingEvent> attach(OutputStream stream) {
+        if(!(LoggerFactory.getILoggerFactory() instanceof LoggerContext)) {
+            logger.warn("Logback is not used for logging, so the output of requests is not sent to clients");
+            return null;
+        }
+        final LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        final PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(LOG_PATTERN);
+        encoder.start();
+
+        final OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+        appender.setContext(context);
+        appender.setName("spt-daemon-request");
+        appender.setEncoder(encoder);
+        // the appender closes its stream when it stops, but the socket is still needed for the exit code
+        appender.setOutputStream(new FilterOutputStream(stream) {
+            @Override public void close() throws IOException {
+                flush();
+            }
+        });
+        appender.start();
+        context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME).addAppender(appender);
+        return appender;
+    }
+
+    private static void detach(@Nullable Appender<ILoggingEvent> appender) {
+        if(appender == null) {
+            return;
+        }
+        final LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME).detachAppender(appender);
+        appender.stop();
+    }
+
+    private int run(String[] args) {
+        final Arguments arguments = new Arguments();
+        final JCommander jc = new JCommander(arguments);
+        final RunOptions options;
+        try {
+            jc.parse(args);
+            if(Main.missingLocations(arguments)) {
+                return 1;
+            }
+            final Class<? extends ITestReporterService> reporterClass =
+                Main.getClassByName("test reporter", arguments.customReporter);
+            options = new RunOptions(arguments, reporter(reporterClass));
+        } catch(ParameterException e) {
+            logger.error("Could not parse parameters", e);
+            return 1;
+        }
+
+        try {
+            runner.run(options);
+            return 0;
+        } catch(Exception e) {
+            logger.error("Error while running tests", e);
+            return 1;
+        }
+    }
+
+
+    /**
+     * A new reporter for a request, from a child injector that binds the reporter for this request only, so no state
+     * of the reporter carries over from an earlier request.
+     *
+     * @param reporterClass
+     *            the reporter given with the request, or null to use the one the daemon was started with.
+     */
+    private ITestReporterService reporter(@Nullable Class<? extends ITestReporterService> reporterClass) {
+        final Class<? extends ITestReporterService> boundClass =
+            reporterClass == null ? defaultReporterClass : reporterClass;
+        final Injector requestInjector = injector.createChildInjector(new AbstractModule() {
+            @Override protected void configure() {
+                bind(ITestReporterService.class).to(boundClass).in(Singleton.class);
+            }
+        });
+        return requestInjector.getInstance(ITestReporterService.class);
+    }
+
+
+    /**
+     * The file with the token of the daemon on the given port, in the home directory of the user.
+     */
+    static Path tokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), ".spt", "daemon-" + port + ".token");
+    }
+
+    /**
+     * Write a new random token to the given file, which only the current user can read.
+     */
+    private static byte[] writeToken(Path tokenFile) throws IOException {
+        final byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        final byte[] token = BaseEncoding.base16().lowerCase().encode(random).getBytes(StandardCharsets.UTF_8);
+
+        final Path dir = tokenFile.getParent();
+        final Path tmp;
+        if(FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+            tmp = Files.createTempFile(dir, "daemon-", ".tmp", PosixFilePermissions.asFileAttribute(OWNER_ONLY_FILE));
+        } else {
+            // e.g. on Windows, where the home directory is only accessible by its user
+            Files.createDirectories(dir);
+            tmp = Files.createTempFile(dir, "daemon-", ".tmp");
+        }
+        Files.write(tmp, token);
+        Files.move(tmp, tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return token;
+    }
+
+    /**
+     * Send the given command line arguments to the daemon listening on the given port, and print its output.
+     *
+     * @return the exit code of the run on the daemon.
+     */
+    public static int connect(int port, String[] args) throws IOException {
+        final List<String> request = forward(args);
+
+        final Path tokenFile = tokenFile(port);
+        if(!Files.isRegularFile(tokenFile)) {
+            throw new IOException("No token of an SPT daemon on port " + port + " at " + tokenFile);
+        }
+        final String token = new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8).trim();
+
+        try(final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            final Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            out.write(token);
+            out.write('\n');
+            for(String arg : request) {
+                out.write(arg);
+                out.write('\n');
+            }
+            out.write('\n');
+            out.flush();
+
+            final BufferedReader in =
+                new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for(String line = in.readLine(); line != null; line = in.readLine()) {
+                if(line.startsWith(EXIT_PREFIX)) {
+                    return Integer.parseInt(line.substring(EXIT_PREFIX.length()).trim());
+                }
+                System.out.println(line);
+            }
+        }
+        logger.error("The SPT daemon on port {} closed the connection unexpectedly", port);
+        return 1;
+    }
+
+    /**
+     * The given command line arguments without --connect, with the locations made absolute, as the daemon may run in
+     * a different working directory. Options are forwarded in the form in which they were given.
+     */
+    static List<String> forward(String[] args) {
+        final List<String> request = Lists.newArrayList();
+        for(int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            final int separator = arg.indexOf('=');
+            final String name = separator < 0 ? arg : arg.substring(0, separator);
+            final Field option = OPTIONS.get(name);
+            if(option == null) {
+                request.add(arg);
+                continue;
+            }
+            final String value;
+            if(separator >= 0) {
+                value = arg.substring(separator + 1);
+            } else if(takesValue(option) && i + 1 < args.length) {
+                value = args[++i];
+            } else {
+                value = null;
+            }
+            if(option.getName().equals(CONNECT_FIELD)) {
+                continue;
+            }
+            if(value == null) {
+                request.add(name);
+            } else if(separator >= 0) {
+                request.add(name + "=" + absolute(option, value));
+            } else {
+                request.add(name);
+                request.add(absolute(option, value));
+            }
+        }
+        return request;
+    }
+
+    private static Map<String, Field> options() {
+        final Map<String, Field> options = Maps.newHashMap();
+        for(Field field : Arguments.class.getFields()) {
+            final Parameter parameter = field.getAnnotation(Parameter.class);
+            if(parameter != null) {
+                for(String name : parameter.names()) {
+                    options.put(name, field);
+                }
+            }
+        }
+        return options;
+    }
+
+    private static boolean takesValue(Field option) {
+        return option.getType() != boolean.class && option.getType() != Boolean.class;
+    }
+
+    private static String absolute(Field option, String value) {
+        if(LOCATION_FIELDS.contains(option.getName())) {
+            // only rewrite locations that are files relative to our working directory, leave URIs alone
+            final File file = new File(value);
+            return file.exists() ? file.getAbsolutePath() : value;
+        }
+        if(DIRECTORY_FIELDS.contains(option.getName())) {
+            // these may not exist yet, so always resolve them against our working directory
+            return new File(value).getAbsolutePath();
+        }
+        return value;
+    }
+}
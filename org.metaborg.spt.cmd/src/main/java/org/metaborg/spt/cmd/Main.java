@@ -1,5 +1,7 @@
 package org.metaborg.spt.cmd;
 
+import java.io.IOException;
+
 import org.metaborg.spoofax.core.Spoofax;
 import org.metaborg.spt.core.SPTModule;
 import org.metaborg.util.log.ILogger;
@@ -32,21 +34,55 @@ public class Main {
             System.exit(0);
         }
 
+        final RunOptions options;
+        try {
+            options = new RunOptions(arguments, null);
+        } catch(ParameterException e) {
+            logger.error("Could not parse parameters", e);
+            jc.usage();
+            System.exit(1);
+            return;
+        }
+
         if(arguments.exit) {
             logger.info("Exiting immediately for testing purposes");
             System.exit(0);
         }
 
+        if(arguments.connectPort != null) {
+            // let a running daemon do the work
+            if(!arguments.stopDaemon && missingLocations(arguments)) {
+                jc.usage();
+                System.exit(1);
+            }
+            try {
+                System.exit(Daemon.connect(arguments.connectPort, args));
+            } catch(IOException e) {
+                logger.error("Could not connect to the SPT daemon on port {}", e, arguments.connectPort);
+                System.exit(1);
+            }
+        }
+
+        if(arguments.daemonPort == null && missingLocations(arguments)) {
+            jc.usage();
+            System.exit(1);
+        }
+
         Class<? extends ITestReporterService> customReporterClass = getClassByName("test reporter", arguments.customReporter);
-        final Module module = new Module(customReporterClass);
+        // a daemon binds the reporter for each request in a child injector
+        final Module module = new Module(customReporterClass, arguments.daemonPort == null);
         try(final Spoofax spoofax = new Spoofax(module, new SPTModule())) {
 
             final Injector injector = spoofax.injector;
 
+            if(arguments.daemonPort != null) {
+                new Daemon(injector, customReporterClass).serve(arguments.daemonPort);
+                System.exit(0);
+            }
+
             final Runner runner = injector.getInstance(Runner.class);
 
-            runner.run(arguments.sptLocation, arguments.lutLocation, arguments.targetLanguageLocation,
-                arguments.testsLocation, arguments.startSymbol);
+            runner.run(options);
 
             System.exit(0);
 
@@ -56,9 +92,20 @@ public class Main {
         }
     }
 
+    /**
+     * Checks that the locations required for running tests are given, and logs an error if they aren't.
+     */
+    static boolean missingLocations(Arguments arguments) {
+        if(arguments.lutLocation == null || arguments.sptLocation == null || arguments.testsLocation == null) {
+            logger.error("The options --lut, --spt, and --tests are required to run tests");
+            return true;
+        }
+        return false;
+    }
+
     @SuppressWarnings("unchecked")
     @Nullable
-    private static <T> Class<? extends T> getClassByName(String subject, @Nullable String className) {
+    static <T> Class<? extends T> getClassByName(String subject, @Nullable String className) {
         if (className == null)
             return null;
 
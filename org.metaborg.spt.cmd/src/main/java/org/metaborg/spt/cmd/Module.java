@@ -16,9 +16,20 @@ public class Module extends SpoofaxModule {
 
     @Nullable
     private final Class<? extends ITestReporterService> customReporterClass;
+    private final boolean bindReporter;
 
     public Module(@Nullable Class<? extends ITestReporterService> customReporterClass) {
+        this(customReporterClass, true);
+    }
+
+    /**
+     * @param bindReporter
+     *            whether to bind the test reporter, or leave that to a child injector, e.g. one for each request to a
+     *            {@link Daemon}.
+     */
+    public Module(@Nullable Class<? extends ITestReporterService> customReporterClass, boolean bindReporter) {
         this.customReporterClass = customReporterClass;
+        this.bindReporter = bindReporter;
     }
 
     @Override protected void configure() {
@@ -39,6 +50,9 @@ public class Module extends SpoofaxModule {
 
     @Override
     protected void bindTestReporter() {
+        if (!this.bindReporter) {
+            return;
+        }
         if (this.customReporterClass != null) {
             // Bind the custom reporter.
             bind(ITestReporterService.class).to(this.customReporterClass).in(Singleton.class);
@@ -0,0 +1,267 @@
+package org.metaborg.spt.cmd;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.Nullable;
+
+import org.metaborg.core.testing.ITestReporterService;
+import org.metaborg.spt.core.index.TestFilter;
+import org.metaborg.spt.core.pipeline.SPTPipelineConfig;
+
+import com.beust.jcommander.ParameterException;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The options of a single run of the {@link Runner}, built from the command line {@link Arguments}.
+ *
+ * Malformed options, such as --stages or a regular expression that does not compile, are rejected when the options are
+ * built, before any language is loaded.
+ */
+public class RunOptions {
+
+    private final String sptPath;
+    private final String lutPath;
+    private final List<String> languagePaths;
+    private final String testsPath;
+    private final @Nullable String startSymbol;
+    private final boolean eagerLanguages;
+
+    private final SPTPipelineConfig pipelineConfig;
+    private final @Nullable String resultStorePath;
+    private final boolean force;
+    private final @Nullable TestFilter filter;
+
+    private final @Nullable Path testCache;
+    private final int testCacheSize;
+    private final @Nullable Path extractionCache;
+    private final @Nullable Path index;
+    private final long parseCacheTokens;
+
+    private final boolean incrementalFixtures;
+    private final int prefetchThreads;
+    private final @Nullable Pattern sharedAnalysis;
+    private final int contextPoolSize;
+    private final long contextPoolIdleMillis;
+
+    private final @Nullable ITestReporterService reporter;
+
+
+    /**
+     * @param reporter
+     *            the reporter of this run, or null to use the one that is bound in the injector of the runner.
+     * @throws ParameterException
+     *             when an option is malformed.
+     */
+    public RunOptions(Arguments arguments, @Nullable ITestReporterService reporter) {
+        this.sptPath = arguments.sptLocation;
+        this.lutPath = arguments.lutLocation;
+        this.languagePaths = ImmutableList.copyOf(arguments.targetLanguageLocation);
+        this.testsPath = arguments.testsLocation;
+        this.startSymbol = arguments.startSymbol;
+        this.eagerLanguages = arguments.eagerLanguages;
+
+        this.pipelineConfig = pipelineConfig(arguments);
+        this.resultStorePath = arguments.resultStore;
+        this.force = arguments.force;
+        this.filter = arguments.filter == null ? null : TestFilter.of(compile("--filter", arguments.filter).pattern());
+
+        this.testCache = absolute(arguments.testCache);
+        this.testCacheSize = arguments.testCacheSize;
+        this.extractionCache = absolute(arguments.extractionCache);
+        this.index = absolute(arguments.index);
+        this.parseCacheTokens = Math.max(0, arguments.parseCache);
+
+        this.incrementalFixtures = arguments.incrementalFixtures;
+        this.prefetchThreads = arguments.prefetch;
+        this.sharedAnalysis =
+            arguments.sharedAnalysis == null ? null : compile("--shared-analysis", arguments.sharedAnalysis);
+        this.contextPoolSize = arguments.contextPool;
+        this.contextPoolIdleMillis = TimeUnit.SECONDS.toMillis(arguments.contextPoolIdle);
+
+        this.reporter = reporter;
+    }
+
+    /**
+     * Options that run the tests at the given location with the given languages, without any of the optional features.
+     */
+    public static RunOptions of(String sptPath, String lutPath, List<String> languagePaths, String testsPath,
+        @Nullable String startSymbol, @Nullable ITestReporterService reporter) {
+        final Arguments arguments = new Arguments();
+        arguments.sptLocation = sptPath;
+        arguments.lutLocation = lutPath;
+        arguments.targetLanguageLocation = languagePaths;
+        arguments.testsLocation = testsPath;
+        arguments.startSymbol = startSymbol;
+        return new RunOptions(arguments, reporter);
+    }
+
+
+    public String sptPath() {
+        return sptPath;
+    }
+
+    public String lutPath() {
+        return lutPath;
+    }
+
+    /**
+     * The locations of the extra languages, given by --lang.
+     */
+    public List<String> languagePaths() {
+        return languagePaths;
+    }
+
+    public String testsPath() {
+        return testsPath;
+    }
+
+    public @Nullable String startSymbol() {
+        return startSymbol;
+    }
+
+    /**
+     * Whether to load the extra languages before running any test, instead of only when a test refers to a language
+     * that is not loaded yet.
+     */
+    public boolean eagerLanguages() {
+        return eagerLanguages;
+    }
+
+    /**
+     * The configuration given by --stages, or else the one derived from --jobs and --test-jobs.
+     */
+    public SPTPipelineConfig pipelineConfig() {
+        return pipelineConfig;
+    }
+
+    /**
+     * The directory of the {@link org.metaborg.spt.core.pipeline.SuiteResultStore}, or null to not use one.
+     */
+    public @Nullable String resultStorePath() {
+        return resultStorePath;
+    }
+
+    /**
+     * Whether to run all test suites, even if they passed before according to the result store.
+     */
+    public boolean force() {
+        return force;
+    }
+
+    /**
+     * Selects the tests to run by their description, or null to run all tests.
+     */
+    public @Nullable TestFilter filter() {
+        return filter;
+    }
+
+    /**
+     * The directory of the test result cache, or null to disable it.
+     */
+    public @Nullable Path testCache() {
+        return testCache;
+    }
+
+    public int testCacheSize() {
+        return testCacheSize;
+    }
+
+    /**
+     * The directory of the extraction cache, or null to disable it.
+     */
+    public @Nullable Path extractionCache() {
+        return extractionCache;
+    }
+
+    /**
+     * The directory of the on-disk test index, or null to disable it.
+     */
+    public @Nullable Path index() {
+        return index;
+    }
+
+    /**
+     * The maximum total number of tokens of the parse results to keep in memory, or 0 to disable the parse cache.
+     */
+    public long parseCacheTokens() {
+        return parseCacheTokens;
+    }
+
+    public boolean incrementalFixtures() {
+        return incrementalFixtures;
+    }
+
+    /**
+     * The number of threads that parse fragments ahead of time, or 0 to disable prefetching.
+     */
+    public int prefetchThreads() {
+        return prefetchThreads;
+    }
+
+    /**
+     * Matches the module names of the test suites that analyze their fragments together, or null for none.
+     */
+    public @Nullable Pattern sharedAnalysis() {
+        return sharedAnalysis;
+    }
+
+    public int contextPoolSize() {
+        return contextPoolSize;
+    }
+
+    public long contextPoolIdleMillis() {
+        return contextPoolIdleMillis;
+    }
+
+    public @Nullable ITestReporterService reporter() {
+        return reporter;
+    }
+
+
+    /**
+     * The pipeline configuration given by --stages, or else the one derived from --jobs and --test-jobs.
+     *
+     * @throws ParameterException
+     *             when --stages is malformed.
+     */
+    static SPTPipelineConfig pipelineConfig(Arguments arguments) {
+        if(arguments.stages == null) {
+            return SPTPipelineConfig.forJobs(arguments.jobs, arguments.testJobs);
+        }
+        final String[] parts = arguments.stages.split(",");
+        if(parts.length != 5) {
+            throw new ParameterException(
+                "Expected five comma separated numbers for --stages, got: " + arguments.stages);
+        }
+        final int[] values = new int[parts.length];
+        for(int i = 0; i < parts.length; i++) {
+            try {
+                values[i] = Integer.parseInt(parts[i].trim());
+            } catch(NumberFormatException e) {
+                throw new ParameterException("Expected a number in --stages, got: " + parts[i]);
+            }
+        }
+        try {
+            return new SPTPipelineConfig(values[0], values[1], values[2], values[3], values[4]);
+        } catch(IllegalArgumentException e) {
+            throw new ParameterException(e.getMessage());
+        }
+    }
+
+    private static Pattern compile(String option, String regex) {
+        try {
+            return Pattern.compile(regex);
+        } catch(PatternSyntaxException e) {
+            throw new ParameterException("Expected a regular expression for " + option + ", got: " + regex);
+        }
+    }
+
+    private static @Nullable Path absolute(@Nullable String directory) {
+        return directory == null ? null : Paths.get(directory).toAbsolutePath();
+    }
+}
@@ -1,14 +1,15 @@
 package org.metaborg.spt.cmd;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import org.apache.commons.io.IOUtils;
+import javax.annotation.Nullable;
+
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.metaborg.core.MetaborgException;
@@ -19,22 +20,35 @@ import org.metaborg.core.project.IProject;
 import org.metaborg.core.project.ISimpleProjectService;
 import org.metaborg.core.resource.IResourceService;
 import org.metaborg.mbt.core.model.ITestCase;
+import org.metaborg.mbt.core.run.TemporaryContextPool;
 import org.metaborg.spoofax.core.syntax.JSGLRParserConfiguration;
-import org.metaborg.spoofax.core.unit.ISpoofaxInputUnit;
-import org.metaborg.spoofax.core.unit.ISpoofaxInputUnitService;
+import org.metaborg.spt.core.cache.ContentHash;
+import org.metaborg.spt.core.cache.ExtractionCache;
+import org.metaborg.spt.core.cache.ParseResultCache;
+import org.metaborg.spt.core.cache.SuiteIndexCache;
+import org.metaborg.spt.core.cache.TestResultCache;
 import org.metaborg.spt.core.extract.ISpoofaxTestCaseExtractionResult;
-import org.metaborg.spt.core.extract.ISpoofaxTestCaseExtractor;
+import org.metaborg.spt.core.pipeline.ISuiteRunHandler;
+import org.metaborg.spt.core.pipeline.SPTPipeline;
+import org.metaborg.spt.core.pipeline.StoredSuite;
+import org.metaborg.spt.core.pipeline.SuiteResultStore;
+import org.metaborg.spt.core.pipeline.SuiteRun;
 import org.metaborg.spt.core.run.ISpoofaxFragmentParserConfig;
-import org.metaborg.spt.core.run.ISpoofaxTestCaseRunner;
 import org.metaborg.spt.core.run.ISpoofaxTestResult;
+import org.metaborg.spt.core.run.LanguageResolver;
+import org.metaborg.spt.core.run.PrefetchingFragmentParser;
+import org.metaborg.spt.core.run.SpoofaxOriginFragmentParser;
 import org.metaborg.spt.core.run.SpoofaxFragmentParserConfig;
 import org.metaborg.util.log.ILogger;
 import org.metaborg.util.log.Level;
 import org.metaborg.util.log.LoggerUtils;
 import org.metaborg.util.resource.FileSelectorUtils;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
+import com.google.inject.Injector;
 
 public class Runner {
     private static final ILogger logger = LoggerUtils.logger(Runner.class);
@@ -43,34 +57,74 @@ public class Runner {
     private final ISimpleProjectService projectService;
     private final ILanguageService languageService;
     private final ILanguageComponentFactory languageComponentFactory;
-    private final ISpoofaxInputUnitService inputService;
-    private final ISpoofaxTestCaseExtractor extractor;
-    private final ISpoofaxTestCaseRunner executor;
-    private final ITestReporterService testReporter;
+    private final SPTPipeline pipeline;
+    private final Injector injector;
+    private final LanguageResolver languageResolver;
+    private final TemporaryContextPool contextPool;
+    private final ParseResultCache parseCache;
+    private final TestResultCache resultCache;
+    private final ExtractionCache extractionCache;
+    private final SuiteIndexCache indexCache;
+    private final SpoofaxOriginFragmentParser originParser;
+    private final PrefetchingFragmentParser prefetcher;
+
+    // languages loaded by earlier runs, keyed by the URI of their location
+    private final Map<String, LoadedLanguages> loadedLanguages = Maps.newConcurrentMap();
 
 
     @Inject
     public Runner(IResourceService resourceService, ISimpleProjectService projectService,
-                  ISpoofaxInputUnitService inputService, ITestReporterService testReporter,
-                  ILanguageService languageService,
-                  ISpoofaxTestCaseExtractor extractor, ISpoofaxTestCaseRunner executor,
-                  ILanguageComponentFactory languageComponentFactory) {
+                  Injector injector, ILanguageService languageService, SPTPipeline pipeline,
+                  ILanguageComponentFactory languageComponentFactory, LanguageResolver languageResolver,
+                  TemporaryContextPool contextPool, ParseResultCache parseCache, TestResultCache resultCache,
+                  ExtractionCache extractionCache, SuiteIndexCache indexCache,
+                  SpoofaxOriginFragmentParser originParser, PrefetchingFragmentParser prefetcher) {
         this.resourceService = resourceService;
         this.projectService = projectService;
 
         this.languageComponentFactory = languageComponentFactory;
         this.languageService = languageService;
-        this.inputService = inputService;
-        this.extractor = extractor;
-        this.executor = executor;
-        this.testReporter = testReporter;
+        this.pipeline = pipeline;
+        this.injector = injector;
+        this.languageResolver = languageResolver;
+        this.contextPool = contextPool;
+        this.parseCache = parseCache;
+        this.resultCache = resultCache;
+        this.extractionCache = extractionCache;
+        this.indexCache = indexCache;
+        this.originParser = originParser;
+        this.prefetcher = prefetcher;
+    }
+
+
+    /**
+     * The test reporter that is bound in the injector, for runs that are not given a reporter. A {@link Daemon} does
+     * not bind one, as it creates a reporter for each request.
+     */
+    private ITestReporterService testReporter() {
+        return injector.getInstance(ITestReporterService.class);
     }
 
 
     public void run(String sptPath, String lutPath, List<String> languagePaths, String testsPath, String startSymbol)
             throws MetaborgException, FileSystemException {
+        run(RunOptions.of(sptPath, lutPath, languagePaths, testsPath, startSymbol, null));
+    }
 
-        testReporter.sessionStarted();
+    /**
+     * Run the tests in the location given by the options. The caches, the fragment parser, and the analysis are
+     * configured for this run, and the options that are not given disable the corresponding features.
+     */
+    public void run(RunOptions options) throws MetaborgException, FileSystemException {
+        final ITestReporterService reporter = options.reporter() == null ? testReporter() : options.reporter();
+        final String sptPath = options.sptPath();
+        final String lutPath = options.lutPath();
+        final List<String> languagePaths = options.languagePaths();
+        final String testsPath = options.testsPath();
+        final String startSymbol = options.startSymbol();
+        configure(options);
+
+        reporter.sessionStarted();
 
         final FileObject testsLocation = resourceService.resolve(testsPath);
         if (!testsLocation.exists()) {
@@ -82,9 +136,27 @@ public class Runner {
             final ILanguageImpl spt = getLanguageImplFromPath("SPT language", sptPath);
             // get LUT
             final ILanguageImpl lut = getLanguageImplFromPath("language under test", lutPath);
-            // load any extra languages
+            // parse results of earlier runs may be of languages that were reloaded since
+            parseCache.clear();
+            // load any extra languages, or only when a test refers to a language that is not loaded yet
+            languageResolver.reset();
             for (String languagePath : languagePaths) {
-                loadLanguagesFromPath("extra languages", languagePath);
+                if (options.eagerLanguages()) {
+                    loadLanguagesFromPath("extra languages", languagePath);
+                } else {
+                    // still fail early on a location that does not exist
+                    if (!resourceService.resolve(languagePath).exists()) {
+                        throw new IllegalArgumentException(
+                                "The location for extra languages does not exist: " + languagePath);
+                    }
+                    languageResolver.register(languagePath, () -> {
+                        try {
+                            loadLanguagesFromPath("extra languages", languagePath);
+                        } catch (FileSystemException e) {
+                            throw new MetaborgException("Unable to load languages from " + languagePath, e);
+                        }
+                    });
+                }
             }
             // process start symbol
             ISpoofaxFragmentParserConfig fragmentConfig =
@@ -93,71 +165,144 @@ public class Runner {
                 fragmentConfig.putConfig(lut, new JSGLRParserConfiguration(startSymbol));
             }
 
-            for (FileObject testSuite : project.location().findFiles(FileSelectorUtils.extension("spt"))) {
-                final String text;
-                try (InputStream in = testSuite.getContent().getInputStream()) {
-                    text = IOUtils.toString(in, StandardCharsets.UTF_8);
-                } catch (IOException e) {
-                    testReporter.getLogger().error("Unable to process file {}", e, testSuite);
-                    continue;
-                }
-                ISpoofaxInputUnit input = inputService.inputUnit(testSuite, text, spt, null);
-                ISpoofaxTestCaseExtractionResult extractionResult = extractor.extract(input, project);
-
-                // use the start symbol of the test suite if no overriding start symbol has been given to this method
-                ISpoofaxFragmentParserConfig moduleFragmentConfig = fragmentConfig;
-                if (extractionResult.getStartSymbol() != null && moduleFragmentConfig == null) {
-                    moduleFragmentConfig = new SpoofaxFragmentParserConfig();
-                    moduleFragmentConfig.putConfig(lut,
-                            new JSGLRParserConfiguration(extractionResult.getStartSymbol()));
-                }
+            final SuiteResultStore store = options.resultStorePath() == null ? null : new SuiteResultStore(
+                    Paths.get(options.resultStorePath()).toAbsolutePath(),
+                    languageFingerprint(sptPath, lutPath, languagePaths, startSymbol), !options.force());
 
-                if (extractionResult.isSuccessful()) {
-                    String testSuiteName = extractionResult.getName();
-                    testReporter.testSuiteStarted(testSuiteName);
-                    Iterable<ITestCase> tests = extractionResult.getTests();
-                    logger.debug("Using the following start symbol for this suite: {}", moduleFragmentConfig == null
-                            ? null : moduleFragmentConfig.getParserConfigForLanguage(lut).overridingStartSymbol);
-                    for (ITestCase test : tests) {
-                        String testName = test.getDescription();
-                        testReporter.testStarted(testName);
-                        ISpoofaxTestResult res = executor.run(project, test, lut, null, moduleFragmentConfig);
-                        if (res.isSuccessful()) {
-                            for (IMessage m : res.getAllMessages()) {
-                                logMessage(m);
-                            }
-                            testReporter.testPassed(testName);
-                        } else {
-                            StringBuilder details = new StringBuilder();
-                            IMessage firstMessage = null;
-                            for (IMessage m : res.getAllMessages()) {
-                                if (firstMessage == null) {
-                                    firstMessage = m;
-                                } else {
-                                    details.append(formatMessage(m));
-                                }
-                            }
-                            String failureReason = firstMessage != null ? formatMessage(firstMessage) : "Test failed.";
-                            testReporter.testFailed(testName, failureReason, details.toString());
-                        }
-                    }
-                    testReporter.testSuiteFinished(testSuiteName);
-                } else {
-                    testReporter.getLogger().error("Failed to run tests at {}. Extraction of tests failed.", testSuite);
-                }
+            final FileObject[] testSuites = project.location().findFiles(FileSelectorUtils.extension("spt"));
+            pipeline.run(project, Arrays.asList(testSuites), spt, lut, fragmentConfig, options.pipelineConfig(), store,
+                    options.filter(), new Reporting(reporter, lut));
+        } finally {
+            // the kept contexts belong to the project of this run
+            if (contextPool.isEnabled()) {
+                logger.debug("Analysis contexts: {}", contextPool);
+            }
+            if (parseCache.isEnabled()) {
+                logger.debug("Parse results: {}", parseCache);
+            }
+            contextPool.clear();
+            projectService.remove(project);
+            reporter.sessionFinished();
+        }
+    }
 
-                for (IMessage m : extractionResult.getAllMessages()) {
-                    logMessage(m);
+    /**
+     * Enable the caches, the fragment parser features, the shared analysis, and the reuse of analysis contexts that
+     * are given by the options, and disable the ones that are not, as they may still be set by an earlier run.
+     */
+    private void configure(RunOptions options) {
+        if (options.testCache() == null) {
+            resultCache.disable();
+        } else {
+            resultCache.enable(options.testCache(), options.testCacheSize());
+        }
+        if (options.extractionCache() == null) {
+            extractionCache.disable();
+        } else {
+            extractionCache.enable(options.extractionCache());
+        }
+        if (options.index() == null) {
+            indexCache.disable();
+        } else {
+            indexCache.enable(options.index());
+        }
+        if (options.parseCacheTokens() <= 0) {
+            parseCache.disable();
+        } else {
+            parseCache.enable(options.parseCacheTokens());
+        }
+        originParser.setIncrementalFixtures(options.incrementalFixtures());
+        prefetcher.setThreads(options.prefetchThreads());
+        pipeline.setSharedAnalysis(options.sharedAnalysis());
+        contextPool.configure(options.contextPoolSize(), options.contextPoolIdleMillis());
+    }
+
+    private void report(ITestReporterService reporter, SuiteRun suiteRun, ILanguageImpl lut) {
+        if (suiteRun.getReadFailure() != null) {
+            reporter.getLogger().error("Unable to process file {}", suiteRun.getReadFailure(),
+                    suiteRun.getTestSuite());
+            return;
+        }
+        if (suiteRun.getStoredSuite() != null) {
+            reportStored(reporter, suiteRun);
+            return;
+        }
+        final ISpoofaxTestCaseExtractionResult extractionResult = suiteRun.getExtractionResult();
+
+        if (extractionResult.isSuccessful()) {
+            String testSuiteName = extractionResult.getName();
+            reporter.testSuiteStarted(testSuiteName);
+            logStartSymbol(suiteRun, lut);
+            for (ISpoofaxTestResult res : suiteRun.getResults()) {
+                reporter.testStarted(res.getTest().getDescription());
+                reportResult(reporter, res);
+            }
+            reporter.testSuiteFinished(testSuiteName);
+        } else {
+            reporter.getLogger().error("Failed to run tests at {}. Extraction of tests failed.",
+                    suiteRun.getTestSuite());
+        }
+
+        for (IMessage m : extractionResult.getAllMessages()) {
+            logMessage(reporter, m);
+        }
+    }
+
+    /**
+     * Finish a test suite whose tests were already reported while they ran.
+     */
+    private void reportRan(ITestReporterService reporter, SuiteRun suiteRun, ILanguageImpl lut, String testSuiteName) {
+        logStartSymbol(suiteRun, lut);
+        reporter.testSuiteFinished(testSuiteName);
+        for (IMessage m : suiteRun.getExtractionResult().getAllMessages()) {
+            logMessage(reporter, m);
+        }
+    }
+
+    private void reportResult(ITestReporterService reporter, ISpoofaxTestResult res) {
+        String testName = res.getTest().getDescription();
+        if (res.isSuccessful()) {
+            for (IMessage m : res.getAllMessages()) {
+                logMessage(reporter, m);
+            }
+            reporter.testPassed(testName);
+        } else {
+            StringBuilder details = new StringBuilder();
+            IMessage firstMessage = null;
+            for (IMessage m : res.getAllMessages()) {
+                if (firstMessage == null) {
+                    firstMessage = m;
+                } else {
+                    details.append(formatMessage(m));
                 }
             }
-        } finally {
-            projectService.remove(project);
-            testReporter.sessionFinished();
+            String failureReason = firstMessage != null ? formatMessage(firstMessage) : "Test failed.";
+            reporter.testFailed(testName, failureReason, details.toString());
         }
     }
 
-    private void logMessage(IMessage m) {
-        testReporter.getLogger().log(getMessageLevel(m), formatMessage(m));
+    private void logStartSymbol(SuiteRun suiteRun, ILanguageImpl lut) {
+        final ISpoofaxFragmentParserConfig fragmentConfig = suiteRun.getFragmentConfig();
+        logger.debug("Using the following start symbol for this suite: {}", fragmentConfig == null
+                ? null : fragmentConfig.getParserConfigForLanguage(lut).overridingStartSymbol);
+    }
+
+    /**
+     * Report a test suite that passed before and did not change, without running it.
+     */
+    private void reportStored(ITestReporterService reporter, SuiteRun suiteRun) {
+        final StoredSuite storedSuite = suiteRun.getStoredSuite();
+        logger.debug("Reporting stored results for {}", suiteRun.getTestSuite());
+        reporter.testSuiteStarted(storedSuite.getName());
+        for (String testName : storedSuite.getTests()) {
+            reporter.testStarted(testName);
+            reporter.testPassed(testName);
+        }
+        reporter.testSuiteFinished(storedSuite.getName());
+    }
+
+    private void logMessage(ITestReporterService reporter, IMessage m) {
+        reporter.getLogger().log(getMessageLevel(m), formatMessage(m));
     }
 
     private String formatMessage(IMessage m) {
@@ -193,22 +338,50 @@ public class Runner {
     }
 
     private Collection<ILanguageComponent> loadLanguagesFromPath(String name, String path) throws FileSystemException, MetaborgException {
-        Collection<ComponentCreationConfig> configs = getComponentConfigsFromPath(name, path);
+        final FileObject location = resourceService.resolve(path);
+        if (!location.exists()) {
+            throw new IllegalArgumentException("The location for " + name + " does not exist: " + path);
+        }
+
+        // only reload languages whose artifacts changed since the last run (relevant when running as a daemon)
+        final String key = location.getName().getURI();
+        final String stamp = ContentHash.of(location);
+        final LoadedLanguages loaded = loadedLanguages.get(key);
+        if (loaded != null && loaded.stamp.equals(stamp)) {
+            logger.debug("Reusing {} loaded from {}", name, path);
+            return loaded.components;
+        }
+
+        Collection<ComponentCreationConfig> configs = getComponentConfigsFromPath(name, path, location);
 
         final Collection<ILanguageComponent> components = Lists.newArrayList();
         for (ComponentCreationConfig config : configs) {
             ILanguageComponent component = languageService.add(config);
             components.add(component);
         }
+        loadedLanguages.put(key, new LoadedLanguages(stamp, components));
         return components;
     }
 
-    private Collection<ComponentCreationConfig> getComponentConfigsFromPath(String name, String path) throws FileSystemException, MetaborgException {
-        final FileObject location = resourceService.resolve(path);
-        if (!location.exists()) {
-            throw new IllegalArgumentException("The location for " + name + " does not exist: " + path);
+    /**
+     * A fingerprint of the languages and start symbol used to run the tests, which changes when any of them changes.
+     * Uses the content hashes of languages that are already loaded, so they match the loaded languages.
+     */
+    private String languageFingerprint(String sptPath, String lutPath, List<String> languagePaths,
+            @Nullable String startSymbol) throws FileSystemException {
+        final StringBuilder fingerprint = new StringBuilder();
+        for (String path : Iterables.concat(Arrays.asList(sptPath, lutPath), languagePaths)) {
+            final FileObject location = resourceService.resolve(path);
+            final String key = location.getName().getURI();
+            final LoadedLanguages loaded = loadedLanguages.get(key);
+            final String stamp = loaded != null ? loaded.stamp : ContentHash.of(location);
+            fingerprint.append(key).append('=').append(stamp).append('\n');
         }
+        fingerprint.append("start-symbol=").append(startSymbol);
+        return fingerprint.toString();
+    }
 
+    private Collection<ComponentCreationConfig> getComponentConfigsFromPath(String name, String path, FileObject location) throws FileSystemException, MetaborgException {
         Collection<IComponentCreationConfigRequest> requests;
         if (location.isFile()) {
             // Hopefully a language artifact.
@@ -228,4 +401,57 @@ public class Runner {
         return languageComponentFactory.createConfigs(validRequests);
     }
 
-}
\ No newline at end of file
+    /**
+     * Reports the tests of a test suite as they start and finish when the pipeline runs them one at a time, and
+     * reports the other test suites once they are done.
+     */
+    private final class Reporting implements ISuiteRunHandler {
+        private final ITestReporterService reporter;
+        private final ILanguageImpl lut;
+        // the name of the test suite whose tests are being reported as they run
+        private @Nullable String running = null;
+
+        private Reporting(ITestReporterService reporter, ILanguageImpl lut) {
+            this.reporter = reporter;
+            this.lut = lut;
+        }
+
+        @Override
+        public void suiteStarted(FileObject testSuite, String name) {
+            reporter.testSuiteStarted(name);
+            running = name;
+        }
+
+        @Override
+        public void testStarted(ITestCase test) {
+            reporter.testStarted(test.getDescription());
+        }
+
+        @Override
+        public void testFinished(ISpoofaxTestResult result) {
+            reportResult(reporter, result);
+        }
+
+        @Override
+        public void handle(SuiteRun suiteRun) {
+            if (running != null) {
+                final String testSuiteName = running;
+                running = null;
+                reportRan(reporter, suiteRun, lut, testSuiteName);
+            } else {
+                report(reporter, suiteRun, lut);
+            }
+        }
+    }
+
+    private static final class LoadedLanguages {
+        // the content hash of the location of the languages
+        private final String stamp;
+        private final Collection<ILanguageComponent> components;
+
+        private LoadedLanguages(String stamp, Collection<ILanguageComponent> components) {
+            this.stamp = stamp;
+            this.components = components;
+        }
+    }
+}
@@ -15,12 +15,19 @@ import org.metaborg.mbt.core.run.IExpectationEvaluatorService;
 import org.metaborg.mbt.core.run.IFragmentParser;
 import org.metaborg.mbt.core.run.ITestCaseRunner;
 import org.metaborg.mbt.core.run.ITestExpectationEvaluator;
+import org.metaborg.mbt.core.run.TemporaryContextPool;
+import org.metaborg.mbt.core.run.TestExecutor;
 import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxInputUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
+import org.metaborg.spt.core.cache.ExtractionCache;
+import org.metaborg.spt.core.cache.ParseResultCache;
+import org.metaborg.spt.core.cache.SuiteIndexCache;
+import org.metaborg.spt.core.cache.TestResultCache;
 import org.metaborg.spt.core.expectations.ParseToAtermExpectation;
 import org.metaborg.spt.core.expectations.RunStrategoToAtermExpectation;
 import org.metaborg.spt.core.expectations.TransformToAtermExpectation;
+import org.metaborg.spt.core.extract.ExpectationProviderIndex;
 import org.metaborg.spt.core.extract.ISpoofaxFragmentBuilder;
 import org.metaborg.spt.core.extract.ISpoofaxTestCaseBuilder;
 import org.metaborg.spt.core.extract.ISpoofaxTestCaseExtractor;
@@ -37,11 +44,14 @@ import org.metaborg.spt.core.extract.expectations.RunStrategoExpectationProvider
 import org.metaborg.spt.core.extract.expectations.RunStrategoToAtermExpectationProvider;
 import org.metaborg.spt.core.extract.expectations.TransformExpectationProvider;
 import org.metaborg.spt.core.extract.expectations.TransformToAtermExpectationProvider;
+import org.metaborg.spt.core.pipeline.SPTPipeline;
 import org.metaborg.spt.core.run.FragmentUtil;
+import org.metaborg.spt.core.run.LanguageResolver;
 import org.metaborg.spt.core.run.ISpoofaxExpectationEvaluator;
 import org.metaborg.spt.core.run.ISpoofaxExpectationEvaluatorService;
 import org.metaborg.spt.core.run.ISpoofaxFragmentParser;
 import org.metaborg.spt.core.run.ISpoofaxTestCaseRunner;
+import org.metaborg.spt.core.run.PrefetchingFragmentParser;
 import org.metaborg.spt.core.run.SpoofaxExpectationEvaluatorService;
 import org.metaborg.spt.core.run.SpoofaxOriginFragmentParser;
 import org.metaborg.spt.core.run.SpoofaxTestCaseRunner;
@@ -65,6 +75,12 @@ public class SPTModule extends MBTModule {
         super.configure();
         
         bind(SPTRunner.class).in(Singleton.class);
+        bind(SPTPipeline.class).in(Singleton.class);
+        bind(TestResultCache.class).in(Singleton.class);
+        bind(ExtractionCache.class).in(Singleton.class);
+        bind(SuiteIndexCache.class).in(Singleton.class);
+        bind(ParseResultCache.class).in(Singleton.class);
+        bind(ExpectationProviderIndex.class).in(Singleton.class);
     }
 
     @Override protected void configureExpectationProviders() {
@@ -93,7 +109,7 @@ public class SPTModule extends MBTModule {
     @Override protected void configureExpectationEvaluators() {
         super.configureExpectationProviders();
         // evaluator service
-        bind(SpoofaxExpectationEvaluatorService.class);
+        bind(SpoofaxExpectationEvaluatorService.class).in(Singleton.class);
         bind(new TypeLiteral<IExpectationEvaluatorService<ISpoofaxParseUnit, ISpoofaxAnalyzeUnit>>() {})
             .to(SpoofaxExpectationEvaluatorService.class);
         bind(ISpoofaxExpectationEvaluatorService.class).to(SpoofaxExpectationEvaluatorService.class);
@@ -163,6 +179,8 @@ public class SPTModule extends MBTModule {
     }
 
     @Override protected void configureRunner() {
+        bind(TemporaryContextPool.class).in(Singleton.class);
+        bind(TestExecutor.class).in(Singleton.class);
         bind(SpoofaxTestCaseRunner.class).in(Singleton.class);
         bind(new TypeLiteral<ITestCaseRunner<ISpoofaxParseUnit, ISpoofaxAnalyzeUnit>>() {})
             .to(SpoofaxTestCaseRunner.class);
@@ -189,13 +207,16 @@ public class SPTModule extends MBTModule {
 
         // this is a test for the new fragment parser
         bind(SpoofaxOriginFragmentParser.class).in(Singleton.class);
-        bind(ISpoofaxFragmentParser.class).to(SpoofaxOriginFragmentParser.class);
-        bind(new TypeLiteral<IFragmentParser<?>>() {}).to(SpoofaxOriginFragmentParser.class);
-        bind(new TypeLiteral<IFragmentParser<ISpoofaxParseUnit>>() {}).to(SpoofaxOriginFragmentParser.class);
+        // which can parse the fragments of tests ahead of time
+        bind(PrefetchingFragmentParser.class).in(Singleton.class);
+        bind(ISpoofaxFragmentParser.class).to(PrefetchingFragmentParser.class);
+        bind(new TypeLiteral<IFragmentParser<?>>() {}).to(PrefetchingFragmentParser.class);
+        bind(new TypeLiteral<IFragmentParser<ISpoofaxParseUnit>>() {}).to(PrefetchingFragmentParser.class);
     }
 
     @Override public void configureUtil() {
         bind(FragmentUtil.class);
+        bind(LanguageResolver.class).in(Singleton.class);
     }
 
 }
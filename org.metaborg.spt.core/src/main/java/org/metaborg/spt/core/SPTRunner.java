@@ -1,7 +1,6 @@
 package org.metaborg.spt.core;
 
 import com.google.inject.Inject;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileType;
@@ -10,41 +9,53 @@ import org.metaborg.core.MetaborgException;
 import org.metaborg.core.language.ILanguageImpl;
 import org.metaborg.core.messages.IMessage;
 import org.metaborg.core.project.IProject;
-import org.metaborg.mbt.core.model.ITestCase;
-import org.metaborg.spoofax.core.syntax.JSGLRParserConfiguration;
-import org.metaborg.spoofax.core.unit.ISpoofaxInputUnit;
-import org.metaborg.spoofax.core.unit.ISpoofaxInputUnitService;
 import org.metaborg.spt.core.extract.ISpoofaxTestCaseExtractionResult;
-import org.metaborg.spt.core.extract.ISpoofaxTestCaseExtractor;
-import org.metaborg.spt.core.run.ISpoofaxFragmentParserConfig;
-import org.metaborg.spt.core.run.ISpoofaxTestCaseRunner;
+import org.metaborg.spt.core.pipeline.ISuiteRunHandler;
+import org.metaborg.spt.core.pipeline.SPTPipeline;
+import org.metaborg.spt.core.pipeline.SPTPipelineConfig;
+import org.metaborg.spt.core.pipeline.SuiteRun;
 import org.metaborg.spt.core.run.ISpoofaxTestResult;
-import org.metaborg.spt.core.run.SpoofaxFragmentParserConfig;
 import org.metaborg.util.log.ILogger;
 import org.metaborg.util.log.LoggerUtils;
 import org.metaborg.util.resource.FileSelectorUtils;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class SPTRunner {
     private static final ILogger logger = LoggerUtils.logger(SPTRunner.class);
 
-    private final ISpoofaxInputUnitService unitService;
-    private final ISpoofaxTestCaseExtractor extractor;
-    private final ISpoofaxTestCaseRunner runner;
+    private final SPTPipeline pipeline;
 
 
-    @Inject public SPTRunner(ISpoofaxInputUnitService unitService, ISpoofaxTestCaseExtractor extractor,
-        ISpoofaxTestCaseRunner runner) {
-        this.unitService = unitService;
-        this.extractor = extractor;
-        this.runner = runner;
+    @Inject public SPTRunner(SPTPipeline pipeline) {
+        this.pipeline = pipeline;
     }
 
 
     public void test(IProject project, ILanguageImpl sptLang, ILanguageImpl testLang) throws MetaborgException {
+        test(project, sptLang, testLang, SPTPipelineConfig.sequential());
+    }
+
+    /**
+     * Run all SPT test suites in the given project.
+     * 
+     * @param jobs
+     *            the maximum number of test suites that are extracted and executed concurrently. Results are always
+     *            logged in the order in which the test suites were found, regardless of this value.
+     * @param testJobs
+     *            the maximum number of tests of a single test suite that are executed concurrently.
+     */
+    public void test(IProject project, ILanguageImpl sptLang, ILanguageImpl testLang, int jobs, int testJobs)
+        throws MetaborgException {
+        test(project, sptLang, testLang, SPTPipelineConfig.forJobs(jobs, testJobs));
+    }
+
+    /**
+     * Run all SPT test suites in the given project, with the given parallelism for each stage of the
+     * {@link SPTPipeline}.
+     */
+    public void test(IProject project, ILanguageImpl sptLang, ILanguageImpl testLang, SPTPipelineConfig config)
+        throws MetaborgException {
         final FileObject[] sptFiles;
         try {
             sptFiles = project.location().findFiles(
@@ -57,43 +68,50 @@ public class SPTRunner {
             return;
         }
 
-        int filesTotal = 0;
-        int filesFailed = 0;
-        int testsTotal = 0;
-        int testsFailed = 0;
+        final Statistics stats = new Statistics();
+        pipeline.run(project, Arrays.asList(sptFiles), sptLang, testLang, null, config, stats);
+
+        if(stats.filesFailed > 0 || stats.testsFailed > 0) {
+            final String message = logger.format("Testing failed: {}/{} tests failed ({}/{} files)",
+                stats.testsFailed, stats.testsTotal, stats.filesFailed, stats.filesTotal);
+            logger.error(message);
+            throw new MetaborgException(message);
+        } else {
+            logger.info("Testing successful: {} tests succeeded ({} files)", stats.testsTotal, stats.filesTotal);
+        }
+    }
+
+    /**
+     * Logs the outcome of each test suite, and keeps count of the (failed) files and tests.
+     */
+    private static final class Statistics implements ISuiteRunHandler {
+        private int filesTotal = 0;
+        private int filesFailed = 0;
+        private int testsTotal = 0;
+        private int testsFailed = 0;
 
-        for(FileObject testSuite : sptFiles) {
+        @Override public void handle(SuiteRun suiteRun) {
             ++filesTotal;
+            final FileObject testSuite = suiteRun.getTestSuite();
             logger.info("Processing {}", testSuite);
-            final String text;
-            try(InputStream in = testSuite.getContent().getInputStream()) {
-                text = IOUtils.toString(in, StandardCharsets.UTF_8);
-            } catch(IOException e) {
-                logger.error("Unable to process {}", e, testSuite);
-                continue;
+            if(suiteRun.getReadFailure() != null) {
+                logger.error("Unable to process {}", suiteRun.getReadFailure(), testSuite);
+                return;
             }
-            final ISpoofaxInputUnit testInput = unitService.inputUnit(testSuite, text, sptLang, null);
-            final ISpoofaxTestCaseExtractionResult extractionResult = extractor.extract(testInput, project);
-
-            // use the start symbol of the test suite if no overriding start symbol has been given to this method
-            ISpoofaxFragmentParserConfig moduleFragmentConfig = null;
-            if(extractionResult.getStartSymbol() != null) {
-                moduleFragmentConfig = new SpoofaxFragmentParserConfig();
-                moduleFragmentConfig.putConfig(testLang,
-                    new JSGLRParserConfiguration(extractionResult.getStartSymbol()));
+            if(suiteRun.getStoredSuite() != null) {
+                testsTotal += suiteRun.getStoredSuite().getTests().size();
+                return;
             }
+            final ISpoofaxTestCaseExtractionResult extractionResult = suiteRun.getExtractionResult();
 
             boolean fileFailed = false;
             if(extractionResult.isSuccessful()) {
-                final Iterable<ITestCase> tests = extractionResult.getTests();
-                for(ITestCase test : tests) {
+                for(ISpoofaxTestResult res : suiteRun.getResults()) {
                     ++testsTotal;
-                    logger.debug("Running test '{}'", test.getDescription());
-                    final ISpoofaxTestResult res = runner.run(project, test, testLang, null, moduleFragmentConfig);
                     if(!res.isSuccessful()) {
                         ++testsFailed;
                         fileFailed = true;
-                        logger.error("Test '{}' failed", test.getDescription());
+                        logger.error("Test '{}' failed", res.getTest().getDescription());
                         for(IMessage m : res.getAllMessages()) {
                             if(m.region() == null) {
                                 logger.error("  {} : {}", m.severity(), m.message());
@@ -122,15 +140,5 @@ public class SPTRunner {
                 ++filesFailed;
             }
         }
-
-        if(filesFailed > 0 || testsFailed > 0) {
-            final String message =
-                logger.format("Testing failed: {}/{} tests failed ({}/{} files)", testsFailed, testsTotal, filesFailed,
-                    filesTotal);
-            logger.error(message);
-            throw new MetaborgException(message);
-        } else {
-            logger.info("Testing successful: {} tests succeeded ({} files)", testsTotal, filesTotal);
-        }
     }
 }
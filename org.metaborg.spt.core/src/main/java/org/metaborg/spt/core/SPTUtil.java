@@ -4,13 +4,17 @@ import java.util.Iterator;
 
 import javax.annotation.Nullable;
 
+import org.metaborg.core.source.ISourceRegion;
+import org.metaborg.spoofax.core.syntax.JSGLRSourceRegionFactory;
 import org.metaborg.util.log.ILogger;
 import org.metaborg.util.log.LoggerUtils;
 import org.spoofax.interpreter.terms.IStrategoAppl;
 import org.spoofax.interpreter.terms.IStrategoList;
 import org.spoofax.interpreter.terms.IStrategoTerm;
 import org.spoofax.interpreter.terms.ITermFactory;
+import org.spoofax.jsglr.client.imploder.ImploderAttachment;
 import org.spoofax.terms.StrategoAnnotation;
+import org.spoofax.terms.attachments.OriginAttachment;
 import org.spoofax.terms.util.StringUtils;
 import org.spoofax.terms.util.TermUtils;
 
@@ -44,6 +48,22 @@ public class SPTUtil {
         }
     }
 
+    /**
+     * Get the region of this term in the source it was parsed from, straight from its origin.
+     * 
+     * This is the region of the location that the ISpoofaxTracingService gives, without the cost of resolving the
+     * resource of the term. Use it for terms of the test suite, whose resource is already known.
+     * 
+     * @return the region, or null if the term has no origin.
+     */
+    public static @Nullable ISourceRegion region(IStrategoTerm term) {
+        final ImploderAttachment origin = ImploderAttachment.get(OriginAttachment.tryGetOrigin(term));
+        if(origin == null) {
+            return null;
+        }
+        return JSGLRSourceRegionFactory.fromTokens(origin.getLeftToken(), origin.getRightToken());
+    }
+
     /**
      * Check if the term is an Option type.
      * 
@@ -0,0 +1,63 @@
+package org.metaborg.spt.core.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nullable;
+
+import org.metaborg.core.source.ISourceRegion;
+import org.metaborg.core.source.SourceRegion;
+
+/**
+ * Reading and writing the values that the caches store in their entries.
+ */
+final class CacheIO {
+
+    private CacheIO() {
+    }
+
+    // unlike writeUTF, this has no limit on the length of the string
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeNullableString(DataOutputStream out, @Nullable String s) throws IOException {
+        out.writeBoolean(s != null);
+        if(s != null) {
+            writeString(out, s);
+        }
+    }
+
+    static @Nullable String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    static void writeRegion(DataOutputStream out, @Nullable ISourceRegion region) throws IOException {
+        out.writeBoolean(region != null);
+        if(region != null) {
+            out.writeInt(region.startOffset());
+            out.writeInt(region.startRow());
+            out.writeInt(region.startColumn());
+            out.writeInt(region.endOffset());
+            out.writeInt(region.endRow());
+            out.writeInt(region.endColumn());
+        }
+    }
+
+    static @Nullable ISourceRegion readRegion(DataInputStream in) throws IOException {
+        if(!in.readBoolean()) {
+            return null;
+        }
+        return new SourceRegion(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+}
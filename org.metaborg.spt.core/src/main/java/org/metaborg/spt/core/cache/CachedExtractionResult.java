@@ -0,0 +1,69 @@
+package org.metaborg.spt.core.cache;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.metaborg.core.messages.IMessage;
+import org.metaborg.mbt.core.model.ITestCase;
+import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
+import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
+import org.metaborg.spt.core.extract.ISpoofaxTestCaseExtractionResult;
+import org.metaborg.util.iterators.Iterables2;
+
+/**
+ * The result of an extraction that was loaded from the {@link ExtractionCache}.
+ *
+ * Only successful extractions without any messages are cached, and the test suite was neither parsed nor analyzed, so
+ * there are no parse or analysis results.
+ */
+class CachedExtractionResult implements ISpoofaxTestCaseExtractionResult {
+
+    private final String name;
+    private final String language;
+    private final @Nullable String startSymbol;
+    private final List<ITestCase> tests;
+
+    CachedExtractionResult(String name, String language, @Nullable String startSymbol, List<ITestCase> tests) {
+        this.name = name;
+        this.language = language;
+        this.startSymbol = startSymbol;
+        this.tests = tests;
+    }
+
+    @Override public String getName() {
+        return name;
+    }
+
+    @Override public String getLanguage() {
+        return language;
+    }
+
+    @Override public @Nullable String getStartSymbol() {
+        return startSymbol;
+    }
+
+    @Override public boolean isSuccessful() {
+        return true;
+    }
+
+    @Override public @Nullable ISpoofaxParseUnit getParseResult() {
+        return null;
+    }
+
+    @Override public @Nullable ISpoofaxAnalyzeUnit getAnalysisResult() {
+        return null;
+    }
+
+    @Override public Iterable<IMessage> getAllMessages() {
+        return Iterables2.empty();
+    }
+
+    @Override public Iterable<IMessage> getMessages() {
+        return Iterables2.empty();
+    }
+
+    @Override public Iterable<ITestCase> getTests() {
+        return tests;
+    }
+}
@@ -0,0 +1,34 @@
+package org.metaborg.spt.core.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.metaborg.core.language.ILanguageComponent;
+
+/**
+ * Fingerprints of language components, which change whenever the contents of any of the files of a component change.
+ *
+ * Computing a fingerprint {@link ContentHash hashes} all files of the component, so they are only computed once until
+ * {@link #clear() cleared}.
+ */
+final class ComponentFingerprints {
+
+    private final Map<ILanguageComponent, String> fingerprints = new ConcurrentHashMap<>();
+
+
+    String of(ILanguageComponent component) throws FileSystemException {
+        String fingerprint = fingerprints.get(component);
+        if(fingerprint == null) {
+            final FileObject location = component.location();
+            fingerprint = component.id() + "@" + location.getName().getURI() + "#" + ContentHash.of(location);
+            fingerprints.put(component, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    void clear() {
+        fingerprints.clear();
+    }
+}
@@ -0,0 +1,67 @@
+package org.metaborg.spt.core.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.FileTypeSelector;
+
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Hashes of the contents of language artifacts and language directories.
+ *
+ * Unlike modification times and sizes, a hash changes whenever the contents change, even when a file is rebuilt within
+ * the resolution of its file system's timestamps, and it does not change when a file is only touched.
+ */
+public final class ContentHash {
+
+    private ContentHash() {
+    }
+
+
+    /**
+     * The SHA-256 hash of the contents of the given file, or of the paths and contents of all files in the given
+     * directory and its subdirectories.
+     */
+    public static String of(FileObject location) throws FileSystemException {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        if(location.isFile()) {
+            putContent(hasher, location);
+        } else {
+            final FileObject[] files = location.findFiles(new FileTypeSelector(FileType.FILE));
+            if(files != null) {
+                // the order in which files are found is not specified
+                Arrays.sort(files, Comparator.comparing((FileObject file) -> file.getName().getURI()));
+                for(FileObject file : files) {
+                    final String path = location.getName().getRelativeName(file.getName());
+                    hasher.putInt(path.length());
+                    hasher.putString(path, StandardCharsets.UTF_8);
+                    putContent(hasher, file);
+                }
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private static void putContent(Hasher hasher, FileObject file) throws FileSystemException {
+        final long size;
+        try(InputStream in = file.getContent().getInputStream()) {
+            size = ByteStreams.copy(in, Funnels.asOutputStream(hasher));
+        } catch(FileSystemException e) {
+            throw e;
+        } catch(IOException e) {
+            throw new FileSystemException(e);
+        }
+        // the size makes sure that the contents of consecutive files can't run into each other
+        hasher.putLong(size);
+    }
+}
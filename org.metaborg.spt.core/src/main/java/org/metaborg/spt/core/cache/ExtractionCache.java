@@ -0,0 +1,364 @@
+package org.metaborg.spt.core.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.metaborg.core.language.ILanguageComponent;
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.core.project.IProject;
+import org.metaborg.core.source.ISourceRegion;
+import org.metaborg.mbt.core.model.CompactFragment;
+import org.metaborg.mbt.core.model.Fragment;
+import org.metaborg.mbt.core.model.IFragment;
+import org.metaborg.mbt.core.model.IFragment.FragmentPiece;
+import org.metaborg.mbt.core.model.ITestCase;
+import org.metaborg.spt.core.extract.ISpoofaxTestCaseBuilder;
+import org.metaborg.spt.core.extract.ISpoofaxTestCaseExtractionResult;
+import org.metaborg.spt.core.extract.SpoofaxTestCase;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+import org.spoofax.interpreter.terms.IStrategoTerm;
+import org.spoofax.interpreter.terms.ITermFactory;
+import org.spoofax.jsglr.client.imploder.IToken;
+import org.spoofax.jsglr.client.imploder.ITokens;
+import org.spoofax.jsglr.client.imploder.ImploderAttachment;
+import org.spoofax.jsglr.client.imploder.Token;
+import org.spoofax.terms.ParseError;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+/**
+ * An on-disk cache of extracted test suites, so test suites that did not change don't have to be parsed and analyzed
+ * with the SPT language again.
+ *
+ * A test suite is identified by a hash of its text and of the components of the SPT language. An entry holds the name,
+ * language under test, and start symbol of the test suite, and for each test its description, its fragment with the
+ * pieces of text and selections, and the AST nodes of its test expectations with the origin of each node. The test
+ * expectations themselves are created again from those AST nodes when loading an entry, as the providers that create
+ * them are an extension point.
+ *
+ * Only extractions that succeeded without any messages are cached. The cache is disabled until it is {@link #enable
+ * enabled}.
+ */
+public class ExtractionCache {
+    private static final ILogger logger = LoggerUtils.logger(ExtractionCache.class);
+
+    // bump when the key or the format of the entries changes
+    private static final int VERSION = 2;
+
+    private final ITermFactory termFactory;
+    private final Provider<ISpoofaxTestCaseBuilder> testBuilderProvider;
+
+    private volatile @Nullable Path directory;
+    private final ComponentFingerprints componentFingerprints = new ComponentFingerprints();
+
+
+    @Inject public ExtractionCache(ITermFactory termFactory, Provider<ISpoofaxTestCaseBuilder> testBuilderProvider) {
+        this.termFactory = termFactory;
+        this.testBuilderProvider = testBuilderProvider;
+    }
+
+
+    /**
+     * Start using the cache in the given directory.
+     */
+    public synchronized void enable(Path directory) {
+        componentFingerprints.clear();
+        this.directory = directory;
+        logger.debug("Using extraction cache {}", directory);
+    }
+
+    /**
+     * Stop using the cache.
+     */
+    public synchronized void disable() {
+        this.directory = null;
+        componentFingerprints.clear();
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+
+    /**
+     * The key of the test suite with the given text, or null if the cache is disabled.
+     *
+     * @param spt
+     *            the SPT language with which the test suite is extracted.
+     */
+    public @Nullable String key(String text, ILanguageImpl spt) {
+        if(!isEnabled()) {
+            return null;
+        }
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(VERSION);
+        putString(hasher, spt.id().toString());
+        try {
+            for(ILanguageComponent component : spt.components()) {
+                putString(hasher, componentFingerprints.of(component));
+            }
+        } catch(FileSystemException e) {
+            logger.warn("Unable to fingerprint {}, not caching the extraction", e, spt);
+            return null;
+        }
+        putString(hasher, text);
+        return hasher.hash().toString();
+    }
+
+    /**
+     * The cached extraction of the given test suite, or null if there is none.
+     *
+     * @param text
+     *            the text of the test suite, which the origins of the AST nodes of the test expectations refer to.
+     */
+    public @Nullable ISpoofaxTestCaseExtractionResult get(String key, String text, FileObject testSuite,
+        IProject project) {
+        final Path dir = directory;
+        if(dir == null) {
+            return null;
+        }
+        final Path file = dir.resolve(key);
+        if(!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() != VERSION) {
+                return null;
+            }
+            final String name = CacheIO.readString(in);
+            final String language = CacheIO.readString(in);
+            final String startSymbol = CacheIO.readNullableString(in);
+            final SuiteTokens tokens = new SuiteTokens(text, testSuite.getName().getURI());
+
+            final int testCount = in.readInt();
+            final List<ITestCase> tests = Lists.newArrayListWithCapacity(testCount);
+            final ISpoofaxTestCaseBuilder testBuilder = testBuilderProvider.get();
+            testBuilder.withProject(project).withResource(testSuite);
+            for(int i = 0; i < testCount; i++) {
+                final String description = CacheIO.readString(in);
+                final ISourceRegion descriptionRegion = CacheIO.readRegion(in);
+                final IFragment fragment = readFragment(in, text, testSuite, project);
+                final int termCount = in.readInt();
+                final List<IStrategoTerm> expectationTerms = Lists.newArrayListWithCapacity(termCount);
+                for(int j = 0; j < termCount; j++) {
+                    expectationTerms.add(readTerm(in, tokens));
+                }
+                tests.add(testBuilder.withExtractedTest(description, descriptionRegion, fragment, expectationTerms)
+                    .build());
+            }
+            return new CachedExtractionResult(name, language, startSymbol, tests);
+        } catch(IOException | ParseError e) {
+            logger.warn("Unable to read cached extraction {}", e, file);
+            return null;
+        }
+    }
+
+    /**
+     * Cache the given extraction under the given key, if it succeeded without any messages.
+     */
+    public void put(String key, ISpoofaxTestCaseExtractionResult result) {
+        final Path dir = directory;
+        if(dir == null || !result.isSuccessful() || result.getAllMessages().iterator().hasNext()
+            || result.getLanguage() == null) {
+            return;
+        }
+        final List<SpoofaxTestCase> tests = new ArrayList<>();
+        for(ITestCase test : result.getTests()) {
+            if(!(test instanceof SpoofaxTestCase)) {
+                return;
+            }
+            tests.add((SpoofaxTestCase) test);
+        }
+
+        final Path file = dir.resolve(key);
+        try {
+            Files.createDirectories(dir);
+            final Path tmp = Files.createTempFile(dir, key, ".tmp");
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(VERSION);
+                CacheIO.writeString(out, result.getName());
+                CacheIO.writeString(out, result.getLanguage());
+                CacheIO.writeNullableString(out, result.getStartSymbol());
+                out.writeInt(tests.size());
+                for(SpoofaxTestCase test : tests) {
+                    CacheIO.writeString(out, test.getDescription());
+                    CacheIO.writeRegion(out, test.getDescriptionRegion());
+                    writeFragment(out, test.getFragment());
+                    out.writeInt(test.getExpectationTerms().size());
+                    for(IStrategoTerm term : test.getExpectationTerms()) {
+                        writeTerm(out, term);
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            logger.warn("Unable to cache extraction in {}", e, file);
+        }
+    }
+
+
+    private static void writeFragment(DataOutputStream out, IFragment fragment) throws IOException {
+        CacheIO.writeRegion(out, fragment.getRegion());
+        out.writeInt(fragment.getSelections().size());
+        for(ISourceRegion selection : fragment.getSelections()) {
+            CacheIO.writeRegion(out, selection);
+        }
+        final List<FragmentPiece> pieces = Lists.newArrayList(fragment.getText());
+        out.writeInt(pieces.size());
+        for(FragmentPiece piece : pieces) {
+            out.writeInt(piece.startOffset);
+            CacheIO.writeString(out, piece.text);
+        }
+    }
+
+    private static IFragment readFragment(DataInputStream in, String text, FileObject testSuite,
+        IProject project) throws IOException {
+        final ISourceRegion region = CacheIO.readRegion(in);
+        final int selectionCount = in.readInt();
+        final List<ISourceRegion> selections = Lists.newArrayListWithCapacity(selectionCount);
+        for(int i = 0; i < selectionCount; i++) {
+            selections.add(CacheIO.readRegion(in));
+        }
+        final int pieceCount = in.readInt();
+        final List<FragmentPiece> pieces = Lists.newArrayListWithCapacity(pieceCount);
+        for(int i = 0; i < pieceCount; i++) {
+            final int startOffset = in.readInt();
+            pieces.add(new FragmentPiece(startOffset, CacheIO.readString(in)));
+        }
+        final IFragment fragment = CompactFragment.of(text, region, selections, pieces, testSuite, project);
+        return fragment != null ? fragment : new Fragment(region, selections, pieces, testSuite, project);
+    }
+
+    /**
+     * Write the term as an ATerm string, followed by the origin of each of its nodes in pre-order.
+     */
+    private static void writeTerm(DataOutputStream out, IStrategoTerm term) throws IOException {
+        CacheIO.writeString(out, term.toString());
+        writeOrigins(out, term);
+    }
+
+    private static void writeOrigins(DataOutputStream out, IStrategoTerm term) throws IOException {
+        final ImploderAttachment origin = ImploderAttachment.get(term);
+        out.writeBoolean(origin != null);
+        if(origin != null) {
+            final IToken left = origin.getLeftToken();
+            final IToken right = origin.getRightToken();
+            out.writeInt(left.getStartOffset());
+            out.writeInt(left.getLine());
+            out.writeInt(left.getColumn());
+            out.writeInt(right.getEndOffset());
+            out.writeInt(right.getEndLine());
+            out.writeInt(right.getEndColumn());
+        }
+        for(IStrategoTerm subterm : term.getAllSubterms()) {
+            writeOrigins(out, subterm);
+        }
+    }
+
+    private IStrategoTerm readTerm(DataInputStream in, SuiteTokens tokens) throws IOException {
+        final IStrategoTerm term = termFactory.parseFromString(CacheIO.readString(in));
+        readOrigins(in, term, tokens);
+        return term;
+    }
+
+    private static void readOrigins(DataInputStream in, IStrategoTerm term, SuiteTokens tokens) throws IOException {
+        if(in.readBoolean()) {
+            final IToken left = tokens.add(in.readInt(), in.readInt(), in.readInt());
+            final int endOffset = in.readInt();
+            final IToken right = tokens.add(endOffset, endOffset, in.readInt(), in.readInt());
+            ImploderAttachment.putImploderAttachment(term, false, null, left, right, false, false, false, false);
+        }
+        for(IStrategoTerm subterm : term.getAllSubterms()) {
+            readOrigins(in, subterm, tokens);
+        }
+    }
+
+    private static void putString(Hasher hasher, String s) {
+        hasher.putInt(s.length());
+        hasher.putString(s, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Tokens that only carry the origins of the AST nodes of a cached test suite, as the test suite is not parsed.
+     */
+    private static class SuiteTokens implements ITokens {
+
+        private final List<IToken> tokens = new ArrayList<>();
+        private final String input;
+        private final String filename;
+
+        private SuiteTokens(String input, String filename) {
+            this.input = input;
+            this.filename = filename;
+        }
+
+        private IToken add(int startOffset, int line, int column) {
+            return add(startOffset, startOffset, line, column);
+        }
+
+        private IToken add(int startOffset, int endOffset, int line, int column) {
+            final IToken token =
+                new Token(this, filename, tokens.size(), line, column, startOffset, endOffset, IToken.Kind.TK_UNKNOWN);
+            tokens.add(token);
+            return token;
+        }
+
+        @Override public String getInput() {
+            return input;
+        }
+
+        @Override public int getTokenCount() {
+            return tokens.size();
+        }
+
+        @Override public IToken getTokenAtOffset(int offset) {
+            for(IToken token : tokens) {
+                if(token.getStartOffset() == offset)
+                    return token;
+            }
+            return null;
+        }
+
+        @Override public String getFilename() {
+            return filename;
+        }
+
+        @Override public String toString(IToken left, IToken right) {
+            return toString(left.getStartOffset(), right.getEndOffset() + 1);
+        }
+
+        @Override public String toString(int startOffset, int endOffset) {
+            return input.substring(startOffset, endOffset);
+        }
+
+        @Override public Iterator<IToken> iterator() {
+            return allTokens().iterator();
+        }
+
+        @Override public Iterable<IToken> allTokens() {
+            return Collections.unmodifiableList(tokens);
+        }
+    }
+}
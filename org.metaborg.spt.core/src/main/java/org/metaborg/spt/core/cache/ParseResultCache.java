@@ -0,0 +1,183 @@
+package org.metaborg.spt.core.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.annotation.Nullable;
+
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
+import org.spoofax.jsglr.client.imploder.ITokens;
+import org.spoofax.jsglr.client.imploder.ImploderAttachment;
+
+/**
+ * An in-memory cache of the raw parse results of fragments, so fragments with the same text, e.g. the same output
+ * fragment of many 'parse to' expectations, are only parsed once.
+ *
+ * An entry is identified by the language implementation, dialect, and start symbol it was parsed with, and the text
+ * that was parsed. The parse results are those of the parser, before their origins are moved to the offsets of a test
+ * suite, so every use of an entry has to move the origins on a copy of the AST. Only successful parse results without
+ * messages are kept, as messages refer to the resource they were found in.
+ *
+ * The size of an entry is the number of tokens of its parse result. When the total size exceeds the capacity, the least
+ * recently used entries are dropped. Languages are compared by identity, so the cache should be {@link #clear cleared}
+ * when languages are reloaded. The cache is disabled until it is {@link #enable enabled}.
+ */
+public class ParseResultCache {
+
+    // guarded by this
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long capacity = 0;
+    private long size = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+
+    /**
+     * Start keeping parse results, up to the given total number of tokens.
+     */
+    public synchronized void enable(long capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("The capacity of the parse cache should be positive");
+        }
+        this.capacity = capacity;
+        evict();
+    }
+
+    /**
+     * Stop keeping parse results, and drop the kept ones.
+     */
+    public synchronized void disable() {
+        this.capacity = 0;
+        clear();
+    }
+
+    public synchronized boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Drop all kept parse results, e.g. because languages are reloaded.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+
+    /**
+     * The raw parse result of the given text, if it was kept.
+     */
+    public synchronized @Nullable ISpoofaxParseUnit get(ILanguageImpl language, @Nullable ILanguageImpl dialect,
+        @Nullable String startSymbol, String text) {
+        if(capacity <= 0) {
+            return null;
+        }
+        final Entry entry = entries.get(new Key(language, dialect, startSymbol, text));
+        if(entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.parseResult;
+    }
+
+    /**
+     * Keep the raw parse result of the given text, if it is successful and has no messages. The AST of the parse result
+     * should not be changed afterwards.
+     */
+    public synchronized void put(ILanguageImpl language, @Nullable ILanguageImpl dialect,
+        @Nullable String startSymbol, String text, ISpoofaxParseUnit parseResult) {
+        if(capacity <= 0 || !parseResult.success() || parseResult.messages().iterator().hasNext()) {
+            return;
+        }
+        // without a tokenizer, the origins cannot be moved to another fragment
+        final ITokens tokens = parseResult.ast() == null ? null : ImploderAttachment.getTokenizer(parseResult.ast());
+        if(tokens == null) {
+            return;
+        }
+        final long weight = Math.max(1, tokens.getTokenCount());
+        if(weight > capacity) {
+            return;
+        }
+        final Entry old = entries.put(new Key(language, dialect, startSymbol, text), new Entry(parseResult, weight));
+        if(old != null) {
+            size -= old.weight;
+        }
+        size += weight;
+        evict();
+    }
+
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override public synchronized String toString() {
+        return "ParseResultCache(" + entries.size() + " entries of " + size + "/" + capacity + " tokens, hits " + hits
+            + ", misses " + misses + ", evictions " + evictions + ")";
+    }
+
+
+    // must hold the lock of this cache
+    private void evict() {
+        for(Iterator<Entry> it = entries.values().iterator(); size > capacity && it.hasNext();) {
+            size -= it.next().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static final class Key {
+        private final ILanguageImpl language;
+        private final @Nullable ILanguageImpl dialect;
+        private final @Nullable String startSymbol;
+        private final String text;
+        private final int hash;
+
+        private Key(ILanguageImpl language, @Nullable ILanguageImpl dialect, @Nullable String startSymbol,
+            String text) {
+            this.language = language;
+            this.dialect = dialect;
+            this.startSymbol = startSymbol;
+            this.text = text;
+            int hash = System.identityHashCode(language);
+            hash = 31 * hash + System.identityHashCode(dialect);
+            hash = 31 * hash + (startSymbol == null ? 0 : startSymbol.hashCode());
+            this.hash = 31 * hash + text.hashCode();
+        }
+
+        @Override public boolean equals(Object obj) {
+            if(!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return language == other.language && dialect == other.dialect && hash == other.hash
+                && (startSymbol == null ? other.startSymbol == null : startSymbol.equals(other.startSymbol))
+                && text.equals(other.text);
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final ISpoofaxParseUnit parseResult;
+        private final long weight;
+
+        private Entry(ISpoofaxParseUnit parseResult, long weight) {
+            this.parseResult = parseResult;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.metaborg.spt.core.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.vfs2.FileContent;
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.spt.core.index.IndexedTest;
+import org.metaborg.spt.core.index.IndexedTest.ExpectationKind;
+import org.metaborg.spt.core.index.SuiteIndex;
+import org.metaborg.spt.core.index.SuiteScanner;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+
+/**
+ * Indexes test suites with the {@link SuiteScanner}, and optionally keeps the indexes on disk, so test suites that did
+ * not change don't even have to be read to list or select their tests.
+ *
+ * An entry is identified by a hash of the URI of its test suite, and is only used while the last modified time and
+ * size of the test suite are those it was made for. The index is not kept on disk until it is {@link #enable
+ * enabled}.
+ */
+public class SuiteIndexCache {
+    private static final ILogger logger = LoggerUtils.logger(SuiteIndexCache.class);
+
+    // bump when the format of the entries or the scanner changes
+    private static final int VERSION = 1;
+
+    private volatile @Nullable Path directory;
+
+
+    /**
+     * Start keeping the indexes in the given directory.
+     */
+    public void enable(Path directory) {
+        this.directory = directory;
+        logger.debug("Using test index {}", directory);
+    }
+
+    /**
+     * Stop keeping the indexes on disk.
+     */
+    public void disable() {
+        this.directory = null;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+
+    /**
+     * The index of the given test suite, from disk if it did not change since it was indexed.
+     */
+    public SuiteIndex index(FileObject testSuite) throws IOException {
+        final Path dir = directory;
+        final FileContent content = testSuite.getContent();
+        final long lastModified = content.getLastModifiedTime();
+        final long size = content.getSize();
+        final Path file = dir == null ? null
+            : dir.resolve(Hashing.sha256().hashString(testSuite.getName().getURI(), StandardCharsets.UTF_8).toString());
+
+        if(file != null) {
+            final SuiteIndex stored = get(file, lastModified, size);
+            if(stored != null) {
+                return stored;
+            }
+        }
+
+        final String text;
+        try(InputStream in = content.getInputStream()) {
+            text = IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+        final SuiteIndex index = SuiteScanner.scan(text);
+        if(file != null) {
+            put(file, lastModified, size, index);
+        }
+        return index;
+    }
+
+
+    private static @Nullable SuiteIndex get(Path file, long lastModified, long size) {
+        if(!Files.isRegularFile(file)) {
+            return null;
+        }
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() != VERSION || in.readLong() != lastModified || in.readLong() != size) {
+                return null;
+            }
+            final String name = CacheIO.readNullableString(in);
+            final String language = CacheIO.readNullableString(in);
+            final String startSymbol = CacheIO.readNullableString(in);
+            final boolean hasFixture = in.readBoolean();
+            final int testCount = in.readInt();
+            final List<IndexedTest> tests = Lists.newArrayListWithCapacity(testCount);
+            for(int i = 0; i < testCount; i++) {
+                final String description = CacheIO.readString(in);
+                final int offset = in.readInt();
+                final int line = in.readInt();
+                final int descriptionOffset = in.readInt();
+                final int kinds = in.readInt();
+                final Set<ExpectationKind> expectations = EnumSet.noneOf(ExpectationKind.class);
+                for(ExpectationKind kind : ExpectationKind.values()) {
+                    if((kinds & (1 << kind.ordinal())) != 0) {
+                        expectations.add(kind);
+                    }
+                }
+                tests.add(new IndexedTest(description, offset, line, descriptionOffset, expectations));
+            }
+            return new SuiteIndex(name, language, startSymbol, hasFixture, tests);
+        } catch(IOException e) {
+            logger.warn("Unable to read test index {}", e, file);
+            return null;
+        }
+    }
+
+    private static void put(Path file, long lastModified, long size, SuiteIndex index) {
+        final Path dir = file.getParent();
+        try {
+            Files.createDirectories(dir);
+            final Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(VERSION);
+                out.writeLong(lastModified);
+                out.writeLong(size);
+                CacheIO.writeNullableString(out, index.getName());
+                CacheIO.writeNullableString(out, index.getLanguage());
+                CacheIO.writeNullableString(out, index.getStartSymbol());
+                out.writeBoolean(index.hasFixture());
+                out.writeInt(index.getTests().size());
+                for(IndexedTest test : index.getTests()) {
+                    CacheIO.writeString(out, test.getDescription());
+                    out.writeInt(test.getOffset());
+                    out.writeInt(test.getLine());
+                    out.writeInt(test.getDescriptionOffset());
+                    int kinds = 0;
+                    for(ExpectationKind kind : test.getExpectations()) {
+                        kinds |= 1 << kind.ordinal();
+                    }
+                    out.writeInt(kinds);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            logger.warn("Unable to write test index {}", e, file);
+        }
+    }
+}
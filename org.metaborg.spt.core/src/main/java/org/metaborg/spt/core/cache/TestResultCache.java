@@ -0,0 +1,453 @@
+package org.metaborg.spt.core.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.metaborg.core.language.FacetContribution;
+import org.metaborg.core.language.ILanguageComponent;
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.core.messages.IMessage;
+import org.metaborg.core.messages.MessageBuilder;
+import org.metaborg.core.messages.MessageSeverity;
+import org.metaborg.core.messages.MessageType;
+import org.metaborg.core.source.ISourceRegion;
+import org.metaborg.core.source.SourceRegion;
+import org.metaborg.mbt.core.model.IFragment;
+import org.metaborg.mbt.core.model.IFragment.FragmentPiece;
+import org.metaborg.mbt.core.model.ITestCase;
+import org.metaborg.mbt.core.model.TestPhase;
+import org.metaborg.mbt.core.model.expectations.ITestExpectation;
+import org.metaborg.spoofax.core.syntax.SyntaxFacet;
+import org.metaborg.spt.core.extract.SpoofaxTestCase;
+import org.metaborg.spt.core.run.ISpoofaxTestExpectationOutput;
+import org.metaborg.spt.core.run.ISpoofaxTestResult;
+import org.metaborg.spt.core.run.SpoofaxFragmentResult;
+import org.metaborg.spt.core.run.SpoofaxTestResult;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+import org.spoofax.interpreter.terms.IStrategoTerm;
+import org.spoofax.jsglr.client.imploder.ImploderAttachment;
+import org.spoofax.terms.util.TermUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * An on-disk cache of test results, so tests that did not change since they last ran don't have to run again.
+ *
+ * A test is identified by a key that covers everything that can influence its result: the text and layout of its
+ * fragment, its test expectations, the start symbol, the phase up to which the fragment is processed, whether it is
+ * analyzed together with the fragments of other tests, and the artifacts of the components of the language under test
+ * that are involved, and of all components of the other languages the test expectations refer to. Only tests extracted
+ * as a {@link SpoofaxTestCase} have a key, as the key needs the AST nodes of the test expectations.
+ *
+ * All offsets in the key are relative to the start of the fragment, so a test that only moved within its test suite,
+ * e.g. because a test above it was added, keeps its key. The regions of the cached messages are stored relative to the
+ * fragment as well, and are moved to the current location of the fragment when the result is read.
+ *
+ * The cache keeps one file per test. Reading an entry touches its file, and when there are more entries than allowed,
+ * the least recently used ones are removed. The cache is disabled until it is {@link #enable enabled}.
+ */
+public class TestResultCache {
+    private static final ILogger logger = LoggerUtils.logger(TestResultCache.class);
+
+    // bump when the key or the format of the entries changes
+    private static final int VERSION = 2;
+
+    private volatile @Nullable Path directory;
+    private volatile int maxEntries;
+    private final AtomicInteger entries = new AtomicInteger();
+    // fingerprints of the language components, which are only computed once while the cache is enabled
+    private final ComponentFingerprints componentFingerprints = new ComponentFingerprints();
+
+
+    /**
+     * Start using the cache in the given directory, keeping at most the given number of test results.
+     */
+    public synchronized void enable(Path directory, int maxEntries) {
+        if(maxEntries < 1) {
+            throw new IllegalArgumentException("The test result cache should be able to hold at least one entry");
+        }
+        componentFingerprints.clear();
+        entries.set(list(directory).size());
+        this.maxEntries = maxEntries;
+        this.directory = directory;
+        logger.debug("Using test result cache {} with {} entries", directory, entries.get());
+    }
+
+    /**
+     * Stop using the cache.
+     */
+    public synchronized void disable() {
+        this.directory = null;
+        componentFingerprints.clear();
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+
+    /**
+     * The key of the given test, or null if the cache is disabled or the test can't be cached.
+     *
+     * @param otherLanguages
+     *            the languages that the test expectations refer to by name, e.g. the output language of a 'parse to'.
+     * @param startSymbol
+     *            the start symbol used to parse the fragment, or null to use the default one.
+     * @param phase
+     *            the phase up to which the fragment of the test is processed.
+     * @param syntaxOnly
+     *            whether the result only depends on the syntax of the language under test, i.e. the test only has
+     *            expectations about parsing. Expectations that only need a parse result may still run transformations
+     *            or strategies of the other components. Ignored when there are other languages, as their output is then
+     *            compared to that of the language under test.
+     * @param sharedAnalysis
+     *            whether the fragment is analyzed together with the fragments of the other tests of its test suite, in
+     *            which case the result can differ from that of analyzing it on its own. Ignored when the fragment is
+     *            not analyzed.
+     */
+    public @Nullable String key(ITestCase test, ILanguageImpl languageUnderTest,
+        @Nullable ILanguageImpl dialectUnderTest, Collection<ILanguageImpl> otherLanguages, @Nullable String startSymbol,
+        TestPhase phase, boolean syntaxOnly, boolean sharedAnalysis) {
+        if(!isEnabled() || !(test instanceof SpoofaxTestCase)) {
+            return null;
+        }
+        if(!otherLanguages.isEmpty()) {
+            syntaxOnly = false;
+        }
+
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(VERSION);
+        putString(hasher, languageUnderTest.id().toString());
+        putString(hasher, dialectUnderTest == null ? "" : dialectUnderTest.id().toString());
+        putString(hasher, startSymbol == null ? "" : startSymbol);
+        putString(hasher, phase.name());
+        hasher.putBoolean(syntaxOnly);
+        hasher.putBoolean(sharedAnalysis && phase != TestPhase.PARSING);
+        try {
+            for(ILanguageComponent component : components(languageUnderTest, syntaxOnly)) {
+                putString(hasher, componentFingerprints.of(component));
+            }
+            hasher.putInt(otherLanguages.size());
+            for(ILanguageImpl language : otherLanguages) {
+                putString(hasher, language.id().toString());
+                for(ILanguageComponent component : language.components()) {
+                    putString(hasher, componentFingerprints.of(component));
+                }
+            }
+        } catch(FileSystemException e) {
+            logger.warn("Unable to fingerprint the languages of test '{}', not caching it", e, test.getDescription());
+            return null;
+        }
+
+        final IFragment fragment = test.getFragment();
+        final int base = fragment.getRegion().startOffset();
+
+        // messages are placed on the description when there is no better place
+        putString(hasher, test.getDescription());
+        putRegion(hasher, test.getDescriptionRegion(), base);
+
+        putRegion(hasher, fragment.getRegion(), base);
+        for(ISourceRegion selection : fragment.getSelections()) {
+            putRegion(hasher, selection, base);
+        }
+        for(FragmentPiece piece : fragment.getText()) {
+            hasher.putInt(piece.startOffset - base);
+            putString(hasher, piece.text);
+        }
+
+        for(ITestExpectation expectation : test.getExpectations()) {
+            putString(hasher, expectation.getClass().getName());
+            putRegion(hasher, expectation.region(), base);
+        }
+        // the offsets of the terms matter as well, as expectations can contain fragments and selections
+        for(IStrategoTerm term : ((SpoofaxTestCase) test).getExpectationTerms()) {
+            putTerm(hasher, term, base);
+        }
+
+        return hasher.hash().toString();
+    }
+
+    /**
+     * The cached result for the given test, or null if there is none.
+     *
+     * The result has the same outcome and messages as the original one, but it does not have the parse or analysis
+     * results, nor the outputs of the separate test expectations.
+     */
+    public @Nullable ISpoofaxTestResult get(String key, ITestCase test) {
+        final Path dir = directory;
+        if(dir == null) {
+            return null;
+        }
+        final Path file = dir.resolve(key);
+        if(!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try {
+            final boolean success;
+            final List<IMessage> messages;
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if(in.readInt() != VERSION) {
+                    return null;
+                }
+                success = in.readBoolean();
+                final int count = in.readInt();
+                messages = Lists.newArrayListWithCapacity(count);
+                final ISourceRegion fragment = test.getFragment().getRegion();
+                for(int i = 0; i < count; i++) {
+                    messages.add(readMessage(in, test.getResource(), fragment));
+                }
+            }
+            // mark the entry as recently used
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new SpoofaxTestResult(test, success, messages,
+                new SpoofaxFragmentResult(test.getFragment(), null, null, null),
+                Lists.<ISpoofaxTestExpectationOutput>newArrayList());
+        } catch(IOException e) {
+            logger.warn("Unable to read cached test result {}", e, file);
+            return null;
+        }
+    }
+
+    /**
+     * Cache the given result of a test under the given key.
+     *
+     * Results with messages that were caused by an exception are not cached, as they may not be reproducible.
+     */
+    public void put(String key, ISpoofaxTestResult result) {
+        final Path dir = directory;
+        if(dir == null) {
+            return;
+        }
+        final List<IMessage> messages = Lists.newArrayList(result.getAllMessages());
+        for(IMessage message : messages) {
+            if(message.exception() != null) {
+                return;
+            }
+        }
+
+        final Path file = dir.resolve(key);
+        try {
+            Files.createDirectories(dir);
+            final boolean existed = Files.exists(file);
+            final Path tmp = Files.createTempFile(dir, key, ".tmp");
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(VERSION);
+                out.writeBoolean(result.isSuccessful());
+                out.writeInt(messages.size());
+                final ISourceRegion fragment = result.getTest().getFragment().getRegion();
+                for(IMessage message : messages) {
+                    writeMessage(out, message, fragment);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if(!existed && entries.incrementAndGet() > maxEntries) {
+                evict(dir);
+            }
+        } catch(IOException e) {
+            logger.warn("Unable to cache test result in {}", e, file);
+        }
+    }
+
+    /**
+     * Remove the least recently used entries, leaving some room so we don't have to do this on every put.
+     */
+    private synchronized void evict(Path dir) {
+        if(entries.get() <= maxEntries) {
+            // another thread beat us to it
+            return;
+        }
+        final List<Path> files = list(dir);
+        final Map<Path, Long> lastUsed = new HashMap<>();
+        for(Path file : files) {
+            try {
+                lastUsed.put(file, Files.getLastModifiedTime(file).toMillis());
+            } catch(IOException e) {
+                lastUsed.put(file, 0L);
+            }
+        }
+        files.sort(Comparator.comparing(lastUsed::get));
+
+        final int keep = Math.max(1, maxEntries - maxEntries / 10);
+        int remaining = files.size();
+        for(Path file : files) {
+            if(remaining <= keep) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(file);
+                --remaining;
+            } catch(IOException e) {
+                logger.warn("Unable to remove cached test result {}", e, file);
+            }
+        }
+        entries.set(remaining);
+        logger.debug("Evicted {} cached test results", files.size() - remaining);
+    }
+
+    private static List<Path> list(Path dir) {
+        final List<Path> files = new ArrayList<>();
+        if(!Files.isDirectory(dir)) {
+            return files;
+        }
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for(Path file : stream) {
+                if(!file.getFileName().toString().endsWith(".tmp")) {
+                    files.add(file);
+                }
+            }
+        } catch(IOException e) {
+            logger.warn("Unable to list cached test results in {}", e, dir);
+        }
+        return files;
+    }
+
+
+    /**
+     * The components of the language under test that influence the result. Expectations about parsing only depend on
+     * the components that contribute the syntax, all other expectations may depend on any component.
+     */
+    private static Collection<ILanguageComponent> components(ILanguageImpl languageUnderTest, boolean syntaxOnly) {
+        if(syntaxOnly) {
+            final List<ILanguageComponent> components = new ArrayList<>();
+            for(FacetContribution<SyntaxFacet> contribution : languageUnderTest.facetContributions(SyntaxFacet.class)) {
+                components.add(contribution.contributor);
+            }
+            if(!components.isEmpty()) {
+                return components;
+            }
+        }
+        return Lists.newArrayList(languageUnderTest.components());
+    }
+
+    private static void putString(Hasher hasher, String s) {
+        // the length makes sure that consecutive strings can't run into each other
+        hasher.putInt(s.length());
+        hasher.putString(s, StandardCharsets.UTF_8);
+    }
+
+    private static void putRegion(Hasher hasher, @Nullable ISourceRegion region, int base) {
+        if(region == null) {
+            hasher.putBoolean(false);
+        } else {
+            hasher.putBoolean(true);
+            hasher.putInt(region.startOffset() - base);
+            hasher.putInt(region.endOffset() - base);
+        }
+    }
+
+    private static void putTerm(Hasher hasher, IStrategoTerm term, int base) {
+        hasher.putInt(term.getTermType());
+        if(TermUtils.isAppl(term)) {
+            putString(hasher, TermUtils.toAppl(term).getConstructor().getName());
+        } else if(TermUtils.isString(term)) {
+            putString(hasher, TermUtils.toJavaString(term));
+        } else if(TermUtils.isInt(term)) {
+            hasher.putInt(TermUtils.toJavaInt(term));
+        } else if(!TermUtils.isList(term) && !TermUtils.isTuple(term)) {
+            putString(hasher, term.toString());
+        }
+        final ImploderAttachment origin = ImploderAttachment.get(term);
+        if(origin == null) {
+            hasher.putBoolean(false);
+        } else {
+            hasher.putBoolean(true);
+            hasher.putInt(origin.getLeftToken().getStartOffset() - base);
+            hasher.putInt(origin.getRightToken().getEndOffset() - base);
+        }
+        hasher.putInt(term.getSubtermCount());
+        for(IStrategoTerm subterm : term.getAllSubterms()) {
+            putTerm(hasher, subterm, base);
+        }
+    }
+
+
+    /**
+     * Write the message with its region relative to the given region of the fragment.
+     */
+    private static void writeMessage(DataOutputStream out, IMessage message, ISourceRegion fragment)
+        throws IOException {
+        out.writeUTF(message.severity().name());
+        out.writeUTF(message.type().name());
+        CacheIO.writeString(out, message.message());
+        CacheIO.writeRegion(out, message.region() == null ? null : relative(message.region(), fragment));
+    }
+
+    /**
+     * Read a message, and move its region to the given region of the fragment.
+     */
+    private static IMessage readMessage(DataInputStream in, FileObject resource, ISourceRegion fragment)
+        throws IOException {
+        final MessageSeverity severity = MessageSeverity.valueOf(in.readUTF());
+        final MessageType type = MessageType.valueOf(in.readUTF());
+        final String text = CacheIO.readString(in);
+        // @formatter:off
+        final MessageBuilder builder = MessageBuilder.create()
+            .withSeverity(severity)
+            .withType(type)
+            .withMessage(text)
+            .withSource(resource);
+        // @formatter:on
+        final ISourceRegion region = CacheIO.readRegion(in);
+        if(region != null) {
+            builder.withRegion(absolute(region, fragment));
+        }
+        return builder.build();
+    }
+
+    /**
+     * The region with its offsets and rows relative to the start of the fragment. Columns are only relative on the
+     * first row of the fragment, as the other rows start at the same column wherever the fragment is.
+     */
+    private static ISourceRegion relative(ISourceRegion region, ISourceRegion fragment) {
+        if(region.startRow() < 0 || fragment.startRow() < 0) {
+            return new SourceRegion(region.startOffset() - fragment.startOffset(), region.startRow(),
+                region.startColumn(), region.endOffset() - fragment.startOffset(), region.endRow(), region.endColumn());
+        }
+        final int row = fragment.startRow();
+        final int column = fragment.startColumn();
+        return new SourceRegion(region.startOffset() - fragment.startOffset(), region.startRow() - row,
+            region.startRow() == row ? region.startColumn() - column : region.startColumn(),
+            region.endOffset() - fragment.startOffset(), region.endRow() - row,
+            region.endRow() == row ? region.endColumn() - column : region.endColumn());
+    }
+
+    /**
+     * The inverse of {@link #relative}, for the given, possibly moved, region of the fragment.
+     */
+    private static ISourceRegion absolute(ISourceRegion region, ISourceRegion fragment) {
+        if(region.startRow() < 0 || fragment.startRow() < 0) {
+            return new SourceRegion(region.startOffset() + fragment.startOffset(), region.startRow(),
+                region.startColumn(), region.endOffset() + fragment.startOffset(), region.endRow(), region.endColumn());
+        }
+        final int row = fragment.startRow();
+        final int column = fragment.startColumn();
+        return new SourceRegion(region.startOffset() + fragment.startOffset(), region.startRow() + row,
+            region.startRow() == 0 ? region.startColumn() + column : region.startColumn(),
+            region.endOffset() + fragment.startOffset(), region.endRow() + row,
+            region.endRow() == 0 ? region.endColumn() + column : region.endColumn());
+    }
+}
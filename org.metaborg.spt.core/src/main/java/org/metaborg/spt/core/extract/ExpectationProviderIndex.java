@@ -0,0 +1,93 @@
+package org.metaborg.spt.core.extract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.inject.Inject;
+
+/**
+ * Which ISpoofaxTestExpectationProviders to ask about an expectation term, based on its constructor.
+ *
+ * Providers that declare their {@link ISpoofaxTestExpectationProvider#handledConstructors() handled constructors} are
+ * only candidates for terms with one of those constructors. Providers that don't are candidates for every term. The
+ * candidates are kept in the order of the registered providers, so the first candidate that can evaluate a term is the
+ * same provider that a scan of all providers would find.
+ *
+ * Providers are identified by their class, as every test case builder has its own provider instances.
+ */
+public class ExpectationProviderIndex {
+
+    private final List<Class<? extends ISpoofaxTestExpectationProvider>> undeclared;
+    private final Map<String, List<Class<? extends ISpoofaxTestExpectationProvider>>> byConstructor;
+
+
+    @Inject public ExpectationProviderIndex(Set<ISpoofaxTestExpectationProvider> providers) {
+        final Set<String> constructors = new LinkedHashSet<>();
+        for(ISpoofaxTestExpectationProvider provider : providers) {
+            final Set<String> handled = provider.handledConstructors();
+            if(handled != null) {
+                constructors.addAll(handled);
+            }
+        }
+
+        final List<Class<? extends ISpoofaxTestExpectationProvider>> undeclared = new ArrayList<>();
+        final Map<String, List<Class<? extends ISpoofaxTestExpectationProvider>>> byConstructor = new HashMap<>();
+        for(ISpoofaxTestExpectationProvider provider : providers) {
+            final Set<String> handled = provider.handledConstructors();
+            if(handled == null) {
+                undeclared.add(provider.getClass());
+            }
+            for(String constructor : constructors) {
+                if(handled == null || handled.contains(constructor)) {
+                    byConstructor.computeIfAbsent(constructor, c -> new ArrayList<>()).add(provider.getClass());
+                }
+            }
+        }
+        this.undeclared = Collections.unmodifiableList(undeclared);
+        for(Map.Entry<String, List<Class<? extends ISpoofaxTestExpectationProvider>>> entry : byConstructor
+            .entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        this.byConstructor = Collections.unmodifiableMap(byConstructor);
+    }
+
+
+    /**
+     * The classes of the providers to ask about a term with the given constructor, in order.
+     *
+     * @param constructor
+     *            the name of the constructor of the term, or null if it is not a constructor application.
+     */
+    public List<Class<? extends ISpoofaxTestExpectationProvider>> candidates(@Nullable String constructor) {
+        if(constructor == null) {
+            return undeclared;
+        }
+        final List<Class<? extends ISpoofaxTestExpectationProvider>> candidates = byConstructor.get(constructor);
+        return candidates == null ? undeclared : candidates;
+    }
+
+    /**
+     * The lookup table: for each declared constructor, the classes of the providers to ask about it, in order.
+     */
+    public Map<String, List<Class<? extends ISpoofaxTestExpectationProvider>>> table() {
+        return byConstructor;
+    }
+
+    /**
+     * The classes of the providers that did not declare their constructors, which are asked about every term.
+     */
+    public List<Class<? extends ISpoofaxTestExpectationProvider>> undeclared() {
+        return undeclared;
+    }
+
+    @Override public String toString() {
+        return "ExpectationProviderIndex" + byConstructor + ", undeclared " + undeclared;
+    }
+}
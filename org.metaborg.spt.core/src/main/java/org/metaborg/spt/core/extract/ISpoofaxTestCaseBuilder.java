@@ -1,12 +1,31 @@
 package org.metaborg.spt.core.extract;
 
+import java.util.List;
+
+import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.mbt.core.extract.ITestCaseBuilder;
+import org.metaborg.mbt.core.model.IFragment;
 import org.spoofax.interpreter.terms.IStrategoTerm;
 
 /**
  * Type interface for a builder that can create an ITestCase from the AST nodes of a Spoofax SPT test case
  * specification.
+ * 
+ * Builders are stateful and not thread safe. Inject a {@code Provider<ISpoofaxTestCaseBuilder>} to get a fresh builder,
+ * with its own fragment builder and expectation providers, for each test that is built concurrently.
  */
 public interface ISpoofaxTestCaseBuilder extends ITestCaseBuilder<IStrategoTerm, IStrategoTerm> {
 
+    /**
+     * Use the parts of a test that were extracted before instead of the AST node of a test.
+     * 
+     * Only the test expectations are still created from their AST nodes, as they depend on the available
+     * ISpoofaxTestExpectationProviders. Like {@link #withTest(Object)}, this overrides earlier calls.
+     * 
+     * @param expectationTerms
+     *            the AST nodes of the test expectations, with origins in the test suite.
+     * @return the same builder for chaining calls.
+     */
+    ISpoofaxTestCaseBuilder withExtractedTest(String description, ISourceRegion descriptionRegion, IFragment fragment,
+        List<IStrategoTerm> expectationTerms);
 }
@@ -12,7 +12,27 @@ import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
 public interface ISpoofaxTestCaseExtractor
     extends ITestCaseExtractor<ISpoofaxInputUnit, ISpoofaxParseUnit, ISpoofaxAnalyzeUnit> {
 
+    /**
+     * {@inheritDoc}
+     * 
+     * Instead of analyzing the test suite with the SPT language, its AST is desugared with an {@link SPTDesugarer}, so
+     * no Stratego runtime or SPT context is needed. The analysis result is an analysis unit without a context.
+     */
     @Override ISpoofaxTestCaseExtractionResult extract(ISpoofaxInputUnit input, IProject project);
 
+    /**
+     * Extract the tests from the test suite like {@link #extract(ISpoofaxInputUnit, IProject)}, but only build a test
+     * when it is requested from the returned stream.
+     *
+     * This allows running the first tests of a large test suite before all of its tests have been built, without
+     * keeping every test in memory. The tests are built one at a time, on the thread that iterates over the stream.
+     */
+    ISpoofaxTestCaseStream extractStream(ISpoofaxInputUnit input, IProject project);
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The test suite is analyzed with the SPT language, as it is in the editor.
+     */
     @Override ISpoofaxTestCaseExtractionResult extract(ISpoofaxParseUnit input, IProject project);
 }
@@ -0,0 +1,56 @@
+package org.metaborg.spt.core.extract;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+import org.metaborg.core.messages.IMessage;
+import org.metaborg.mbt.core.model.ITestCase;
+
+/**
+ * The tests of a test suite, which are built one at a time as they are iterated over.
+ *
+ * The headers of the test suite (its name, language, start symbol, and the messages about them) are extracted up
+ * front, so tests can be run as soon as they are returned. The stream does not keep the tests it returned, so a test
+ * can be garbage collected once it has been run.
+ *
+ * A stream can only be iterated over once, from one thread at a time.
+ */
+public interface ISpoofaxTestCaseStream extends Iterator<ITestCase> {
+
+    /**
+     * The result of extracting the headers of the test suite. Its tests should not be used; take them from the stream
+     * instead.
+     *
+     * If it is not successful, there is no point in running the tests. The stream may still return tests, just like
+     * {@link ISpoofaxTestCaseExtractor#extract} may return tests in an unsuccessful result.
+     */
+    ISpoofaxTestCaseExtractionResult getHeaders();
+
+    /**
+     * The number of tests in the test suite, including the tests that were already returned.
+     */
+    int size();
+
+    /**
+     * The messages about the tests that were returned so far, e.g. about expectations that can't be evaluated.
+     */
+    Iterable<IMessage> getTestMessages();
+
+    /**
+     * The result of extracting the test suite, as {@link ISpoofaxTestCaseExtractor#extract} would have returned it.
+     * Can only be called once all tests have been returned.
+     *
+     * @param tests
+     *            the tests that were returned, in order. Results of earlier extractions may be returned as they were,
+     *            with their own tests.
+     */
+    ISpoofaxTestCaseExtractionResult toResult(Iterable<ITestCase> tests);
+
+    /**
+     * A spliterator over the remaining tests, e.g. to create a sequential {@link java.util.stream.Stream Stream}.
+     */
+    default Spliterator<ITestCase> spliterator() {
+        return Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+}
@@ -1,5 +1,9 @@
 package org.metaborg.spt.core.extract;
 
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
 import org.metaborg.mbt.core.extract.ITestExpectationProvider;
 import org.spoofax.interpreter.terms.IStrategoTerm;
 
@@ -9,4 +13,14 @@ import org.spoofax.interpreter.terms.IStrategoTerm;
  */
 public interface ISpoofaxTestExpectationProvider extends ITestExpectationProvider<IStrategoTerm> {
 
+    /**
+     * The names of the constructors of the expectation terms that this provider may be able to handle.
+     * 
+     * Providers are then only asked if they {@link #canEvaluate can evaluate} terms with one of these constructors, see
+     * {@link ExpectationProviderIndex}. Returns null by default, meaning the provider can't tell, and is asked about
+     * every term.
+     */
+    default @Nullable Set<String> handledConstructors() {
+        return null;
+    }
 }
@@ -0,0 +1,350 @@
+package org.metaborg.spt.core.extract;
+
+import javax.annotation.Nullable;
+
+import org.metaborg.spt.core.SPTUtil;
+import org.spoofax.interpreter.terms.IStrategoAppl;
+import org.spoofax.interpreter.terms.IStrategoList;
+import org.spoofax.interpreter.terms.IStrategoTerm;
+import org.spoofax.interpreter.terms.ITermFactory;
+import org.spoofax.jsglr.client.imploder.ImploderAttachment;
+import org.spoofax.jsglr.client.imploder.ListImploderAttachment;
+import org.spoofax.terms.util.TermUtils;
+
+import com.google.inject.Inject;
+
+/**
+ * Desugars the AST of an SPT test suite, like the analysis of the SPT language does with {@code desugar-before} in
+ * {@code trans/spt/desugar.str}, but without running Stratego.
+ *
+ * The analysis of the SPT language does nothing but desugaring, so this gives the same AST as the analysis. It keeps
+ * the origins the way Stratego does: the result of a rewrite rule gets the origin of the term it replaces, unless it
+ * already has one, terms that are rebuilt because one of their subterms changed keep their origin, and all other newly
+ * created terms have none. So the severities built by the {@code desugar-severity} strategy, and the strings that are
+ * unquoted, have no origin. The numbers parsed from strings get the origin of their string, as {@code
+ * spt-string-to-int} forces it, and so does the number that replaces an {@code OnPart}.
+ *
+ * Keep this in sync with {@code desugar.str}.
+ */
+public class SPTDesugarer {
+
+    private static final String TEST_CONS = SPTUtil.TEST_CONS;
+    private static final String FIXTURE_CONS = SPTUtil.FIXTURE_CONS;
+    private static final String TO_PART_CONS = "ToPart";
+    private static final String ANALYZE_MESSAGES_CONS = "AnalyzeMessages";
+
+    private final ITermFactory termFactory;
+
+    @Inject public SPTDesugarer(ITermFactory termFactory) {
+        this.termFactory = termFactory;
+    }
+
+    /**
+     * Desugar the given AST of a test suite.
+     *
+     * Corresponds to {@code desugar-before = topdown(try(desugar-term-before))}.
+     */
+    public IStrategoTerm desugar(IStrategoTerm ast) {
+        final IStrategoTerm rewritten = desugarTerm(ast);
+        return desugarSubterms(rewritten == null ? ast : rewritten);
+    }
+
+    private IStrategoTerm desugarSubterms(IStrategoTerm term) {
+        IStrategoTerm[] kids = null;
+        for(int i = 0; i < term.getSubtermCount(); i++) {
+            final IStrategoTerm kid = term.getSubterm(i);
+            final IStrategoTerm newKid = desugar(kid);
+            if(newKid != kid) {
+                if(kids == null) {
+                    kids = term.getAllSubterms().clone();
+                }
+                kids[i] = newKid;
+            }
+        }
+        if(kids == null) {
+            return term;
+        }
+        final IStrategoTerm rebuilt;
+        switch(term.getTermType()) {
+            case IStrategoTerm.APPL:
+                rebuilt = termFactory.makeAppl(((IStrategoAppl) term).getConstructor(), kids, term.getAnnotations());
+                break;
+            case IStrategoTerm.LIST:
+                rebuilt = termFactory.makeList(kids, term.getAnnotations());
+                break;
+            case IStrategoTerm.TUPLE:
+                rebuilt = termFactory.makeTuple(kids, term.getAnnotations());
+                break;
+            default:
+                return term;
+        }
+        return withOrigin(rebuilt, term);
+    }
+
+    /**
+     * Corresponds to {@code desugar-term-before}.
+     *
+     * @return the rewritten term, or null if no rule applies.
+     */
+    private @Nullable IStrategoTerm desugarTerm(IStrategoTerm term) {
+        if(!TermUtils.isAppl(term)) {
+            return null;
+        }
+        final String cons = SPTUtil.consName(term);
+        final int arity = term.getSubtermCount();
+        switch(cons) {
+            case "Test2":
+            case "Test3":
+            case "Test4":
+                return arity == 5 ? desugarTest(withOrigin(appl(TEST_CONS, term.getAllSubterms()), term)) : null;
+            case "Fixture2":
+            case "Fixture3":
+            case "Fixture4":
+                return arity == 6 ? withOrigin(appl(FIXTURE_CONS, term.getAllSubterms()), term) : null;
+            case "ToPart2":
+            case "ToPart3":
+            case "ToPart4":
+                return arity == 4 ? withOrigin(appl(TO_PART_CONS, term.getAllSubterms()), term) : null;
+            case "AnalyzeSucceeds":
+                return arity == 0 ? withOrigin(errorCount("Equal"), term) : null;
+            case "AnalyzeFails":
+                return arity == 0 ? withOrigin(errorCount("More"), term) : null;
+            case ANALYZE_MESSAGES_CONS:
+                return arity == 4 ? desugarAnalyzeMessages(term) : null;
+            case "AnalyzeMessagePattern":
+                return arity == 3 ? desugarAnalyzeMessagePattern(term) : null;
+            case "AtPart":
+                return arity == 1 ? desugarAtPart(term) : null;
+            case "Warnings":
+            case "Errors":
+            case "Notes":
+            case "Resolve":
+                return arity == 1 ? desugarNumbers(term) : null;
+            case "ResolveTo":
+                return arity == 2 ? desugarNumbers(term) : null;
+            case "OnPart":
+                // the number already has the origin of its string, which the rule does not replace
+                return arity == 1 ? stringToInt(term.getSubterm(0)) : null;
+            case "String":
+                return arity == 1 ? desugarString(term) : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Add a parse succeeds expectation if no parse expectation is present.
+     */
+    private IStrategoTerm desugarTest(IStrategoTerm test) {
+        final IStrategoTerm expectations = test.getSubterm(4);
+        if(!TermUtils.isList(expectations)) {
+            return test;
+        }
+        for(IStrategoTerm expectation : expectations.getAllSubterms()) {
+            if(isParseExpectation(expectation)) {
+                return test;
+            }
+        }
+        final IStrategoTerm[] kids = test.getAllSubterms().clone();
+        kids[4] = termFactory.makeListCons(appl("ParseSucceeds"), (IStrategoList) expectations);
+        return withOrigin(appl(TEST_CONS, kids), test);
+    }
+
+    private static boolean isParseExpectation(IStrategoTerm expectation) {
+        if(!TermUtils.isAppl(expectation)) {
+            return false;
+        }
+        switch(SPTUtil.consName(expectation)) {
+            case "ParseSucceeds":
+            case "ParseFails":
+            case "ParseAmbiguous":
+                return expectation.getSubtermCount() == 0;
+            case "ParseTo":
+            case "ParseToAterm":
+                return expectation.getSubtermCount() == 1;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * AnalyzeMessages(Some(op()), 0, Error("errors"), None())
+     */
+    private IStrategoTerm errorCount(String op) {
+        return appl(ANALYZE_MESSAGES_CONS, appl(SPTUtil.SOME_CONS, appl(op)), termFactory.makeInt(0),
+            appl("Error", termFactory.makeString("errors")), appl(SPTUtil.NONE_CONS));
+    }
+
+    private @Nullable IStrategoTerm desugarAnalyzeMessages(IStrategoTerm term) {
+        final IStrategoTerm op = desugarMessageOp(term.getSubterm(0));
+        final IStrategoTerm count = decStringToInt(term.getSubterm(1));
+        final IStrategoTerm severity = desugarSeverity(term.getSubterm(2));
+        if(op == null || count == null || severity == null) {
+            return null;
+        }
+        return withOrigin(appl(ANALYZE_MESSAGES_CONS, op, count, severity, term.getSubterm(3)), term);
+    }
+
+    private @Nullable IStrategoTerm desugarAnalyzeMessagePattern(IStrategoTerm term) {
+        final IStrategoTerm severity = desugarSeverity(term.getSubterm(0));
+        final IStrategoTerm content = term.getSubterm(1);
+        final String unquoted = TermUtils.isString(content) ? unDoubleQuote(TermUtils.toJavaString(content)) : null;
+        if(severity == null || unquoted == null) {
+            return null;
+        }
+        return withOrigin(appl("AnalyzeMessagePattern", severity, termFactory.makeString(unquoted), term.getSubterm(2)),
+            term);
+    }
+
+    private @Nullable IStrategoTerm desugarMessageOp(IStrategoTerm op) {
+        if(TermUtils.isAppl(op) && SPTUtil.NONE_CONS.equals(SPTUtil.consName(op))) {
+            return op;
+        }
+        if(!TermUtils.isAppl(op) || !SPTUtil.SOME_CONS.equals(SPTUtil.consName(op)) || op.getSubtermCount() != 1
+            || !TermUtils.isString(op.getSubterm(0))) {
+            return null;
+        }
+        final String name;
+        switch(TermUtils.toJavaString(op.getSubterm(0))) {
+            case "=":
+                name = "Equal";
+                break;
+            case "<":
+                name = "Less";
+                break;
+            case "<=":
+                name = "LessOrEqual";
+                break;
+            case ">":
+                name = "More";
+                break;
+            case ">=":
+                name = "MoreOrEqual";
+                break;
+            default:
+                return null;
+        }
+        return withOrigin(appl(SPTUtil.SOME_CONS, appl(name)), op);
+    }
+
+    private @Nullable IStrategoTerm desugarSeverity(IStrategoTerm severity) {
+        if(!TermUtils.isString(severity)) {
+            return null;
+        }
+        final String name;
+        switch(TermUtils.toJavaString(severity)) {
+            case "error":
+            case "errors":
+                name = "Error";
+                break;
+            case "warning":
+            case "warnings":
+                name = "Warning";
+                break;
+            case "note":
+            case "notes":
+                name = "Note";
+                break;
+            default:
+                return null;
+        }
+        // built by a strategy rather than a rewrite rule, so Stratego does not give it an origin
+        return appl(name, severity);
+    }
+
+    /**
+     * AtPart([SelectionRef(n), ...]) becomes AtPart([i, ...]).
+     */
+    private @Nullable IStrategoTerm desugarAtPart(IStrategoTerm term) {
+        final IStrategoTerm refs = term.getSubterm(0);
+        if(!TermUtils.isList(refs)) {
+            return null;
+        }
+        final IStrategoTerm[] numbers = new IStrategoTerm[refs.getSubtermCount()];
+        for(int i = 0; i < numbers.length; i++) {
+            final IStrategoTerm ref = refs.getSubterm(i);
+            if(!TermUtils.isAppl(ref) || !"SelectionRef".equals(SPTUtil.consName(ref)) || ref.getSubtermCount() != 1) {
+                return null;
+            }
+            numbers[i] = stringToInt(ref.getSubterm(0));
+            if(numbers[i] == null) {
+                return null;
+            }
+        }
+        final IStrategoTerm newRefs = withOrigin(termFactory.makeList(numbers, refs.getAnnotations()), refs);
+        return withOrigin(appl("AtPart", newRefs), term);
+    }
+
+    /**
+     * Replace all subterms, which should be strings, with the numbers they hold.
+     */
+    private @Nullable IStrategoTerm desugarNumbers(IStrategoTerm term) {
+        final IStrategoTerm[] numbers = new IStrategoTerm[term.getSubtermCount()];
+        for(int i = 0; i < numbers.length; i++) {
+            numbers[i] = stringToInt(term.getSubterm(i));
+            if(numbers[i] == null) {
+                return null;
+            }
+        }
+        return withOrigin(termFactory.makeAppl(((IStrategoAppl) term).getConstructor(), numbers), term);
+    }
+
+    private @Nullable IStrategoTerm desugarString(IStrategoTerm term) {
+        final IStrategoTerm s = term.getSubterm(0);
+        if(!TermUtils.isString(s)) {
+            return null;
+        }
+        final String value = TermUtils.toJavaString(s);
+        final String unquoted = unDoubleQuote(value);
+        final String desugared = (unquoted == null ? value : unquoted).replace("\\\"", "\"");
+        return withOrigin(appl("String", termFactory.makeString(desugared)), term);
+    }
+
+
+    /**
+     * Corresponds to {@code spt-string-to-int = origin-track-forced(dec-string-to-int)}.
+     */
+    private @Nullable IStrategoTerm stringToInt(IStrategoTerm s) {
+        final IStrategoTerm i = decStringToInt(s);
+        return i == null ? null : withOrigin(i, s);
+    }
+
+    private @Nullable IStrategoTerm decStringToInt(IStrategoTerm s) {
+        if(!TermUtils.isString(s)) {
+            return null;
+        }
+        try {
+            return termFactory.makeInt(Integer.parseInt(TermUtils.toJavaString(s)));
+        } catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Strips the double quotes around the given string, or returns null if it is not quoted.
+     */
+    private static @Nullable String unDoubleQuote(String s) {
+        if(s.length() < 2 || s.charAt(0) != '"' || s.charAt(s.length() - 1) != '"') {
+            return null;
+        }
+        return s.substring(1, s.length() - 1);
+    }
+
+    private IStrategoTerm appl(String cons, IStrategoTerm... kids) {
+        return termFactory.makeAppl(termFactory.makeConstructor(cons, kids.length), kids);
+    }
+
+    /**
+     * Give the term the origin of the other term, if it has one.
+     */
+    private static IStrategoTerm withOrigin(IStrategoTerm term, IStrategoTerm origin) {
+        final ImploderAttachment attachment = ImploderAttachment.get(origin);
+        if(attachment != null && term != origin) {
+            ImploderAttachment.putImploderAttachment(term, attachment instanceof ListImploderAttachment,
+                attachment.getSort(), attachment.getLeftToken(), attachment.getRightToken(), attachment.isBracket(),
+                attachment.isCompletion(), attachment.isNestedCompletion(),
+                attachment.isSinglePlaceholderCompletion());
+        }
+        return term;
+    }
+}
@@ -0,0 +1,36 @@
+package org.metaborg.spt.core.extract;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.project.IProject;
+import org.metaborg.core.source.ISourceRegion;
+import org.metaborg.mbt.core.model.IFragment;
+import org.metaborg.mbt.core.model.TestCase;
+import org.metaborg.mbt.core.model.expectations.ITestExpectation;
+import org.spoofax.interpreter.terms.IStrategoTerm;
+
+/**
+ * A test case extracted from an SPT test suite, which keeps the AST nodes of its test expectations.
+ */
+public class SpoofaxTestCase extends TestCase {
+
+    private final List<IStrategoTerm> expectationTerms;
+
+    public SpoofaxTestCase(String description, ISourceRegion descriptionRegion, IFragment fragment,
+        FileObject resource, IProject project, List<ITestExpectation> expectations,
+        List<IStrategoTerm> expectationTerms) {
+        super(description, descriptionRegion, fragment, resource, project, expectations);
+        this.expectationTerms = Collections
+            .unmodifiableList(Arrays.asList(expectationTerms.toArray(new IStrategoTerm[expectationTerms.size()])));
+    }
+
+    /**
+     * The AST nodes of the test expectations, from which the {@link #getExpectations()} were created.
+     */
+    public List<IStrategoTerm> getExpectationTerms() {
+        return expectationTerms;
+    }
+}
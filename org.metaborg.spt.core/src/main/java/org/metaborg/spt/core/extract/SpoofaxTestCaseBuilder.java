@@ -4,14 +4,11 @@ import java.util.*;
 
 import org.apache.commons.vfs2.FileObject;
 import org.metaborg.core.project.IProject;
-import org.metaborg.core.source.ISourceLocation;
 import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.mbt.core.model.IFragment;
 import org.metaborg.mbt.core.model.ITestCase;
-import org.metaborg.mbt.core.model.TestCase;
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
 import org.metaborg.mbt.core.model.expectations.NoExpectationError;
-import org.metaborg.spoofax.core.tracing.ISpoofaxTracingService;
 import org.metaborg.spt.core.SPTUtil;
 import org.metaborg.util.log.ILogger;
 import org.metaborg.util.log.LoggerUtils;
@@ -28,16 +25,20 @@ public class SpoofaxTestCaseBuilder implements ISpoofaxTestCaseBuilder {
     private String description = null;
     private ISourceRegion descriptionRegion = null;
     private List<IStrategoTerm> expectationTerms = null;
+    // only set for tests that were extracted before, otherwise the fragment builder builds it
+    private IFragment fragment = null;
 
-    private final Set<ISpoofaxTestExpectationProvider> expectationProviders;
+    private final Map<Class<?>, ISpoofaxTestExpectationProvider> expectationProviders = new HashMap<>();
+    private final ExpectationProviderIndex providerIndex;
     private final ISpoofaxFragmentBuilder fragmentBuilder;
-    private final ISpoofaxTracingService trace;
 
     @Inject public SpoofaxTestCaseBuilder(Set<ISpoofaxTestExpectationProvider> expectationProviders,
-        ISpoofaxFragmentBuilder fragmentBuilder, ISpoofaxTracingService trace) {
-        this.expectationProviders = expectationProviders;
+        ExpectationProviderIndex providerIndex, ISpoofaxFragmentBuilder fragmentBuilder) {
+        for(ISpoofaxTestExpectationProvider provider : expectationProviders) {
+            this.expectationProviders.put(provider.getClass(), provider);
+        }
+        this.providerIndex = providerIndex;
         this.fragmentBuilder = fragmentBuilder;
-        this.trace = trace;
     }
 
     @Override public ISpoofaxTestCaseBuilder withTestFixture(IStrategoTerm testFixture) {
@@ -67,12 +68,11 @@ public class SpoofaxTestCaseBuilder implements ISpoofaxTestCaseBuilder {
         // record the test's description
         IStrategoTerm descriptionTerm = TermUtils.toStringAt(test, 0);
         description = TermUtils.toJavaString(descriptionTerm);
-        ISourceLocation descriptionLocation = trace.location(descriptionTerm);
-        if(descriptionLocation == null) {
+        descriptionRegion = SPTUtil.region(descriptionTerm);
+        if(descriptionRegion == null) {
             throw new IllegalArgumentException(
                 "The test's description has no source location information attached to it.");
         }
-        descriptionRegion = descriptionLocation.region();
 
         // collect the AST nodes for the test expectations
         expectationTerms = new ArrayList<>();
@@ -81,7 +81,17 @@ public class SpoofaxTestCaseBuilder implements ISpoofaxTestCaseBuilder {
         // setup the fragment builder
         IStrategoTerm fragmentTerm = test.getSubterm(2);
         fragmentBuilder.withFragment(fragmentTerm);
+        fragment = null;
+
+        return this;
+    }
 
+    @Override public ISpoofaxTestCaseBuilder withExtractedTest(String description, ISourceRegion descriptionRegion,
+        IFragment fragment, List<IStrategoTerm> expectationTerms) {
+        this.description = description;
+        this.descriptionRegion = descriptionRegion;
+        this.fragment = fragment;
+        this.expectationTerms = new ArrayList<>(expectationTerms);
         return this;
     }
 
@@ -97,14 +107,16 @@ public class SpoofaxTestCaseBuilder implements ISpoofaxTestCaseBuilder {
         }
 
         // build the fragment
-        IFragment fragment = fragmentBuilder.build();
+        IFragment fragment = this.fragment != null ? this.fragment : fragmentBuilder.build();
 
         // lookup the ITestExpectationProviders that can handle our test expectations
+        // only the providers that may handle the constructor of the expectation are asked
         final List<ITestExpectation> expectations = new LinkedList<>();
         for(IStrategoTerm expectationTerm : expectationTerms) {
             boolean found = false;
-            for(ISpoofaxTestExpectationProvider provider : expectationProviders) {
-                if(provider.canEvaluate(fragment, expectationTerm)) {
+            for(Class<?> providerClass : providerIndex.candidates(SPTUtil.consName(expectationTerm))) {
+                final ISpoofaxTestExpectationProvider provider = expectationProviders.get(providerClass);
+                if(provider != null && provider.canEvaluate(fragment, expectationTerm)) {
                     final ITestExpectation expectation = provider.createExpectation(fragment, expectationTerm);
                     expectations.add(expectation);
                     found = true;
@@ -117,13 +129,14 @@ public class SpoofaxTestCaseBuilder implements ISpoofaxTestCaseBuilder {
                 // We might want to have a way to make it less dirty.
                 // The main reason for this is that the builder can't give back any messages, so we rely on someone
                 // after us to check for these things and do the error message reporting.
-                ISourceLocation loc = trace.location(expectationTerm);
-                expectations.add(new NoExpectationError(loc == null ? descriptionRegion : loc.region()));
+                ISourceRegion region = SPTUtil.region(expectationTerm);
+                expectations.add(new NoExpectationError(region == null ? descriptionRegion : region));
             }
         }
 
 
-        return new TestCase(description, descriptionRegion, fragment, resource, project, expectations);
+        return new SpoofaxTestCase(description, descriptionRegion, fragment, resource, project, expectations,
+            expectationTerms);
     }
 
 }
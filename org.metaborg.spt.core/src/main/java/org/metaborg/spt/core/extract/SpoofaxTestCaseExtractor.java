@@ -1,8 +1,16 @@
 package org.metaborg.spt.core.extract;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
 
 import org.apache.commons.vfs2.FileObject;
 import org.metaborg.core.analysis.AnalysisException;
@@ -19,40 +27,91 @@ import org.metaborg.mbt.core.model.expectations.ITestExpectation;
 import org.metaborg.mbt.core.model.expectations.NoExpectationError;
 import org.metaborg.spoofax.core.analysis.ISpoofaxAnalysisService;
 import org.metaborg.spoofax.core.syntax.ISpoofaxSyntaxService;
+import org.metaborg.spoofax.core.unit.AnalyzeContrib;
 import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxInputUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
+import org.metaborg.spoofax.core.unit.ISpoofaxUnitService;
 import org.metaborg.spt.core.SPTUtil;
+import org.metaborg.spt.core.cache.ExtractionCache;
+import org.metaborg.util.concurrent.IClosableLock;
 import org.metaborg.util.iterators.Iterables2;
 import org.metaborg.util.log.ILogger;
 import org.metaborg.util.log.LoggerUtils;
 import org.spoofax.interpreter.terms.IStrategoTerm;
-import org.spoofax.terms.TermVisitor;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import org.spoofax.terms.util.TermUtils;
 
 public class SpoofaxTestCaseExtractor implements ISpoofaxTestCaseExtractor {
 
     private static final ILogger logger = LoggerUtils.logger(SpoofaxTestCaseExtractor.class);
+    // below this number of tests, building them concurrently is not worth the overhead
+    private static final int PARALLEL_THRESHOLD = 8;
 
     private final ISpoofaxSyntaxService parseService;
     private final ISpoofaxAnalysisService analysisService;
     private final IContextService contextService;
-    private final ISpoofaxTestCaseBuilder testBuilder;
+    // builders are stateful, so every test gets its own to allow building tests concurrently
+    private final Provider<ISpoofaxTestCaseBuilder> testBuilderProvider;
+    private final ExtractionCache extractionCache;
+    private final SPTDesugarer desugarer;
+    private final ISpoofaxUnitService unitService;
 
     @Inject public SpoofaxTestCaseExtractor(ISpoofaxSyntaxService parseService, ISpoofaxAnalysisService analysisService,
-        IContextService contextService, ISpoofaxTestCaseBuilder builder) {
+        IContextService contextService, Provider<ISpoofaxTestCaseBuilder> testBuilderProvider,
+        ExtractionCache extractionCache, SPTDesugarer desugarer, ISpoofaxUnitService unitService) {
         this.parseService = parseService;
         this.analysisService = analysisService;
         this.contextService = contextService;
-        this.testBuilder = builder;
+        this.testBuilderProvider = testBuilderProvider;
+        this.extractionCache = extractionCache;
+        this.desugarer = desugarer;
+        this.unitService = unitService;
     }
 
     @Override public ISpoofaxTestCaseExtractionResult extract(ISpoofaxInputUnit input, IProject project) {
+        final ParsedSuite parsed = parse(input, project);
+        if(parsed.result != null) {
+            return parsed.result;
+        }
+
+        // the analysis of SPT only desugars, which we do natively rather than with Stratego and an SPT context
+        final ISpoofaxTestCaseExtractionResult result =
+            extract(parsed.testSuite, parsed.p, desugar(parsed.p), project);
+        if(parsed.cacheKey != null) {
+            extractionCache.put(parsed.cacheKey, result);
+        }
+        return result;
+    }
+
+    @Override public ISpoofaxTestCaseStream extractStream(ISpoofaxInputUnit input, IProject project) {
+        final ParsedSuite parsed = parse(input, project);
+        if(parsed.result != null) {
+            return new SpoofaxTestCaseStream(parsed.result);
+        }
+
+        final FileObject testSuite = parsed.testSuite;
+        final SuiteHeaders headers = extractHeaders(testSuite, parsed.p, desugar(parsed.p));
+        final Iterator<ITestCase> tests =
+            Iterators.transform(headers.testTerms.iterator(), terms -> buildTest(terms, testSuite, project));
+        final String cacheKey = parsed.cacheKey;
+        return new SpoofaxTestCaseStream(headers.result, tests, headers.testTerms.size(),
+            cacheKey == null ? null : result -> extractionCache.put(cacheKey, result));
+    }
+
+    /**
+     * Parse the test suite, unless it is in the extraction cache.
+     *
+     * @return the parsed test suite, or the final result if it was cached or could not be parsed.
+     */
+    private ParsedSuite parse(ISpoofaxInputUnit input, IProject project) {
         final FileObject testSuite = input.source();
         if(testSuite == null) {
-            return new SpoofaxTestCaseExtractionResult("", null, null, null,
+            return new ParsedSuite(new SpoofaxTestCaseExtractionResult("", null, null, null,
                 Iterables2.singleton(MessageBuilder.create()
                     // @formatter:off
                     .asInternal()
@@ -60,7 +119,18 @@ public class SpoofaxTestCaseExtractor implements ISpoofaxTestCaseExtractor {
                     .withMessage("Can't extract a test without a source FileObject.")
                     .build()
                     // @formatter:on
-                ), Iterables2.empty());
+                ), Iterables2.empty()));
+        }
+
+        // test suites that did not change since they were last extracted don't have to be parsed and analyzed again
+        final String cacheKey = extractionCache.key(input.text(), input.langImpl());
+        if(cacheKey != null) {
+            final ISpoofaxTestCaseExtractionResult cached = extractionCache.get(cacheKey, input.text(), testSuite,
+                project);
+            if(cached != null) {
+                logger.debug("Using cached extraction of {}", testSuite);
+                return new ParsedSuite(cached);
+            }
         }
 
         final ISpoofaxParseUnit p;
@@ -68,8 +138,8 @@ public class SpoofaxTestCaseExtractor implements ISpoofaxTestCaseExtractor {
             p = parseService.parse(input);
             if(!p.valid()) {
                 // parse failed and couldn't recover
-                return new SpoofaxTestCaseExtractionResult(testSuite.getName().getBaseName(), null, p, null,
-                    Iterables2.empty(), Iterables2.empty());
+                return new ParsedSuite(new SpoofaxTestCaseExtractionResult(testSuite.getName().getBaseName(), null,
+                    p, null, Iterables2.empty(), Iterables2.empty()));
             }
         } catch(ParseException pe) {
             // @formatter:off
@@ -81,11 +151,10 @@ public class SpoofaxTestCaseExtractor implements ISpoofaxTestCaseExtractor {
                 .withMessage(pe.getMessage())
                 .build();
             // @formatter:on
-            return new SpoofaxTestCaseExtractionResult(testSuite.getName().getBaseName(), null, null, null,
-                Iterables2.singleton(error), Iterables2.empty());
+            return new ParsedSuite(new SpoofaxTestCaseExtractionResult(testSuite.getName().getBaseName(), null, null,
+                null, Iterables2.singleton(error), Iterables2.empty()));
         }
-
-        return extract(p, project);
+        return new ParsedSuite(testSuite, p, cacheKey);
     }
 
     @Override public ISpoofaxTestCaseExtractionResult extract(ISpoofaxParseUnit p, final IProject project) {
@@ -107,8 +176,11 @@ public class SpoofaxTestCaseExtractor implements ISpoofaxTestCaseExtractor {
         try {
             // even if parsing fails we can still analyze
             // the result will just be empty
+            // test suites of the same project share their context, and may be extracted concurrently
             IContext ctx = contextService.get(testSuite, project, p.input().langImpl());
-            a = analysisService.analyze(p, ctx).result();
+            try(IClosableLock lock = ctx.write()) {
+                a = analysisService.analyze(p, ctx).result();
+            }
         } catch(ContextException | AnalysisException ae) {
             // @formatter:off
             IMessage error = MessageBuilder.create()
@@ -123,9 +195,38 @@ public class SpoofaxTestCaseExtractor implements ISpoofaxTestCaseExtractor {
                 Iterables2.singleton(error), Iterables2.empty());
         }
 
+        return extract(testSuite, p, a, project);
+    }
+
+    /**
+     * Desugar the parsed test suite like the analysis of SPT does, and wrap it in an analysis result without a context.
+     */
+    private ISpoofaxAnalyzeUnit desugar(ISpoofaxParseUnit p) {
+        final long start = System.currentTimeMillis();
+        final IStrategoTerm ast = desugarer.desugar(p.ast());
+        final AnalyzeContrib contrib = new AnalyzeContrib(true, true, true, ast, Iterables2.<IMessage>empty(),
+            System.currentTimeMillis() - start);
+        return unitService.analyzeUnit(p, contrib, null);
+    }
+
+    private ISpoofaxTestCaseExtractionResult extract(FileObject testSuite, ISpoofaxParseUnit p,
+        @Nullable ISpoofaxAnalyzeUnit a, IProject project) {
+        final SuiteHeaders headers = extractHeaders(testSuite, p, a);
+        final List<ITestCase> tests = buildTests(headers.testTerms, testSuite, project);
+        final List<IMessage> testMessages = new ArrayList<>();
+        for(ITestCase test : tests) {
+            addMissingExpectations(test, testMessages);
+        }
+        return complete(headers.result, testMessages, tests);
+    }
+
+    /**
+     * Extract the headers of the test suite, and find the terms of its tests without building them yet.
+     */
+    private SuiteHeaders extractHeaders(FileObject testSuite, ISpoofaxParseUnit p, @Nullable ISpoofaxAnalyzeUnit a) {
         // Retrieve the AST from the analysis result
         if(a == null || !a.valid() || !a.hasAst()) {
-            return new SpoofaxTestCaseExtractionResult(testSuite.getName().getBaseName(), null, p, a,
+            return new SuiteHeaders(new SpoofaxTestCaseExtractionResult(testSuite.getName().getBaseName(), null, p, a,
                 Iterables2.singleton(MessageBuilder.create()
                     // @formatter:off
                     .asInternal()
@@ -134,60 +235,47 @@ public class SpoofaxTestCaseExtractor implements ISpoofaxTestCaseExtractor {
                     .withMessage("The analysis of SPT did not return an AST.")
                     .build()
                     // @formatter:on
-                ), Iterables2.empty());
+                ), Iterables2.empty()));
         }
         final IStrategoTerm ast = a.ast();
 
-        // build each test case and gather messages for missing ITestExpectations
-        // for now, we will consider these missing expectations to be an error
         final List<IMessage> extraMessages = new LinkedList<>();
-        final List<ITestCase> tests = new ArrayList<>();
+        final List<IStrategoTerm[]> testTerms = new ArrayList<>();
         final List<String> suiteNameContainer = new ArrayList<>();
         final List<String> langNameContainer = new ArrayList<>();
         final List<String> startSymbolContainer = new ArrayList<>();
-        new TermVisitor() {
-            IStrategoTerm fixtureTerm = null;
-
-            @Override public void preVisit(IStrategoTerm term) {
-                if(TermUtils.isAppl(term)) {
-                    final String cons = SPTUtil.consName(term);
-                    if(SPTUtil.START_SYMBOL_CONS.equals(cons)) {
-                        startSymbolContainer.add(TermUtils.toJavaString(term.getSubterm(0)));
-                    } else if(SPTUtil.LANG_CONS.equals(cons)) {
-                        langNameContainer.add(TermUtils.toJavaString(term.getSubterm(0)));
-                    } else if(SPTUtil.NAME_CONS.equals(cons)) {
-                        suiteNameContainer.add(TermUtils.toJavaString(term.getSubterm(0)));
-                    } else if(SPTUtil.FIXTURE_CONS.equals(cons)) {
-                        fixtureTerm = term;
-                        logger.debug("Using test fixture: {}", fixtureTerm);
-                    } else if(SPTUtil.TEST_CONS.equals(cons)) {
-                        // TODO: this doesn't seem like a proper use of builders
-                        // are we allowed to reuse a builder like this?
-                        ITestCase test = testBuilder.withProject(project).withResource(testSuite)
-                            .withTestFixture(fixtureTerm).withTest(term).build();
-                        tests.add(test);
-                        for(ITestExpectation expectation : test.getExpectations()) {
-                            // TODO: not a very good way of error reporting, but it works for now
-                            // also see SpoofaxTestCaseBuilder.build()
-                            if(expectation instanceof NoExpectationError) {
-                                ISourceRegion region = expectation.region();
-                                // @formatter:off
-                                IMessage m = MessageBuilder.create()
-                                    .asAnalysis()
-                                    .asError()
-                                    .withSource(test.getResource())
-                                    .withRegion(region)
-                                    .withMessage(
-                                        "Unable to evaluate this test expectation. No ITestExpectation found that can handle this.")
-                                    .build();
-                                // @formatter:on
-                                extraMessages.add(m);
-                            }
-                        }
-                    }
+        // a single pre-order walk that doesn't descend into headers, fixtures, and tests
+        // the fragment builder walks the fragment of each test, so every node is visited at most once
+        final Deque<IStrategoTerm> todo = new ArrayDeque<>();
+        todo.push(ast);
+        IStrategoTerm fixtureTerm = null;
+        while(!todo.isEmpty()) {
+            final IStrategoTerm term = todo.pop();
+            if(TermUtils.isAppl(term)) {
+                final String cons = SPTUtil.consName(term);
+                if(SPTUtil.START_SYMBOL_CONS.equals(cons)) {
+                    startSymbolContainer.add(TermUtils.toJavaString(term.getSubterm(0)));
+                    continue;
+                } else if(SPTUtil.LANG_CONS.equals(cons)) {
+                    langNameContainer.add(TermUtils.toJavaString(term.getSubterm(0)));
+                    continue;
+                } else if(SPTUtil.NAME_CONS.equals(cons)) {
+                    suiteNameContainer.add(TermUtils.toJavaString(term.getSubterm(0)));
+                    continue;
+                } else if(SPTUtil.FIXTURE_CONS.equals(cons)) {
+                    fixtureTerm = term;
+                    logger.debug("Using test fixture: {}", fixtureTerm);
+                    continue;
+                } else if(SPTUtil.TEST_CONS.equals(cons)) {
+                    testTerms.add(new IStrategoTerm[] { fixtureTerm, term });
+                    continue;
                 }
             }
-        }.visit(ast);
+            // push the subterms in reverse, to visit them from left to right
+            for(int i = term.getSubtermCount() - 1; i >= 0; i--) {
+                todo.push(term.getSubterm(i));
+            }
+        }
 
         if(startSymbolContainer.size() > 1) {
          // @formatter:off
@@ -216,7 +304,7 @@ public class SpoofaxTestCaseExtractor implements ISpoofaxTestCaseExtractor {
             extraMessages.add(m);
         }
         if(suiteNameContainer.isEmpty()) {
-            return new SpoofaxTestCaseExtractionResult(testSuite.getName().getBaseName(), null, p, a,
+            return new SuiteHeaders(new SpoofaxTestCaseExtractionResult(testSuite.getName().getBaseName(), null, p, a,
                 Iterables2.singleton(MessageBuilder.create()
                     // @formatter:off
                     .asInternal()
@@ -225,7 +313,7 @@ public class SpoofaxTestCaseExtractor implements ISpoofaxTestCaseExtractor {
                     .withMessage("Found no module name. The test suite should have a name.")
                     .build()
                     // @formatter:on
-                ), Iterables2.empty());
+                ), Iterables2.empty()));
         }
         final String suiteName = suiteNameContainer.get(0);
 
@@ -242,7 +330,7 @@ public class SpoofaxTestCaseExtractor implements ISpoofaxTestCaseExtractor {
             extraMessages.add(m);
         }
         if(langNameContainer.isEmpty()) {
-            return new SpoofaxTestCaseExtractionResult(testSuite.getName().getBaseName(), null, p, a,
+            return new SuiteHeaders(new SpoofaxTestCaseExtractionResult(testSuite.getName().getBaseName(), null, p, a,
                 Iterables2.singleton(MessageBuilder.create()
                     // @formatter:off
                     .asInternal()
@@ -251,10 +339,116 @@ public class SpoofaxTestCaseExtractor implements ISpoofaxTestCaseExtractor {
                     .withMessage("Found no language header. The test suite should have a header for the language under test.")
                     .build()
                     // @formatter:on
-                ), Iterables2.empty());
+                ), Iterables2.empty()));
         }
         final String langName = langNameContainer.get(0);
 
-        return new SpoofaxTestCaseExtractionResult(suiteName, langName, p, a, extraMessages, tests, startSymbol);
+        return new SuiteHeaders(new SpoofaxTestCaseExtractionResult(suiteName, langName, p, a, extraMessages,
+            Iterables2.<ITestCase>empty(), startSymbol), testTerms);
+    }
+
+    /**
+     * Build the test cases of the given Test terms, each paired with the Fixture term that precedes it (or null).
+     *
+     * Each test gets a builder of its own, so larger test suites are built concurrently, on the common fork-join pool.
+     * The tests are returned in the order of the given terms.
+     */
+    private List<ITestCase> buildTests(List<IStrategoTerm[]> testTerms, FileObject testSuite, IProject project) {
+        final Stream<IStrategoTerm[]> stream =
+            testTerms.size() < PARALLEL_THRESHOLD ? testTerms.stream() : testTerms.parallelStream();
+        return stream.map(terms -> buildTest(terms, testSuite, project)).collect(Collectors.toList());
+    }
+
+    private ITestCase buildTest(IStrategoTerm[] terms, FileObject testSuite, IProject project) {
+        // @formatter:off
+        return testBuilderProvider.get()
+            .withProject(project)
+            .withResource(testSuite)
+            .withTestFixture(terms[0])
+            .withTest(terms[1])
+            .build();
+        // @formatter:on
+    }
+
+    /**
+     * Add an error for each expectation of the test that no ITestExpectation can handle.
+     *
+     * For now, we consider these missing expectations to be an error.
+     */
+    static void addMissingExpectations(ITestCase test, List<IMessage> messages) {
+        for(ITestExpectation expectation : test.getExpectations()) {
+            // TODO: not a very good way of error reporting, but it works for now
+            // also see SpoofaxTestCaseBuilder.build()
+            if(expectation instanceof NoExpectationError) {
+                ISourceRegion region = expectation.region();
+                // @formatter:off
+                IMessage m = MessageBuilder.create()
+                    .asAnalysis()
+                    .asError()
+                    .withSource(test.getResource())
+                    .withRegion(region)
+                    .withMessage(
+                        "Unable to evaluate this test expectation. No ITestExpectation found that can handle this.")
+                    .build();
+                // @formatter:on
+                messages.add(m);
+            }
+        }
+    }
+
+    /**
+     * The result of extracting a test suite with the given headers and tests.
+     *
+     * @param testMessages
+     *            the messages about the tests, which come before the messages of the headers.
+     */
+    static ISpoofaxTestCaseExtractionResult complete(ISpoofaxTestCaseExtractionResult headers,
+        Iterable<IMessage> testMessages, Iterable<ITestCase> tests) {
+        return new SpoofaxTestCaseExtractionResult(headers.getName(), headers.getLanguage(), headers.getParseResult(),
+            headers.getAnalysisResult(), Iterables.concat(testMessages, headers.getMessages()), tests,
+            headers.getStartSymbol());
+    }
+
+
+    /**
+     * A test suite that was parsed, or the final result of extracting it if there is nothing left to do.
+     */
+    private static final class ParsedSuite {
+        private final @Nullable ISpoofaxTestCaseExtractionResult result;
+        private final FileObject testSuite;
+        private final ISpoofaxParseUnit p;
+        private final @Nullable String cacheKey;
+
+        private ParsedSuite(ISpoofaxTestCaseExtractionResult result) {
+            this.result = result;
+            this.testSuite = null;
+            this.p = null;
+            this.cacheKey = null;
+        }
+
+        private ParsedSuite(FileObject testSuite, ISpoofaxParseUnit p, @Nullable String cacheKey) {
+            this.result = null;
+            this.testSuite = testSuite;
+            this.p = p;
+            this.cacheKey = cacheKey;
+        }
+    }
+
+    /**
+     * The result of extracting the headers of a test suite, without any tests, and the terms of its tests.
+     */
+    private static final class SuiteHeaders {
+        private final ISpoofaxTestCaseExtractionResult result;
+        // pairs of the Fixture term (or null) and the Test term
+        private final List<IStrategoTerm[]> testTerms;
+
+        private SuiteHeaders(ISpoofaxTestCaseExtractionResult result) {
+            this(result, Collections.<IStrategoTerm[]>emptyList());
+        }
+
+        private SuiteHeaders(ISpoofaxTestCaseExtractionResult result, List<IStrategoTerm[]> testTerms) {
+            this.result = result;
+            this.testTerms = testTerms;
+        }
     }
 }
@@ -0,0 +1,89 @@
+package org.metaborg.spt.core.extract;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import org.metaborg.core.messages.IMessage;
+import org.metaborg.mbt.core.model.ITestCase;
+
+import com.google.common.collect.Iterables;
+
+public class SpoofaxTestCaseStream implements ISpoofaxTestCaseStream {
+
+    private final ISpoofaxTestCaseExtractionResult headers;
+    private final Iterator<ITestCase> tests;
+    private final int size;
+    private final @Nullable Consumer<ISpoofaxTestCaseExtractionResult> onResult;
+    // the result to return from toResult, if the tests were extracted before
+    private final @Nullable ISpoofaxTestCaseExtractionResult result;
+    private final List<IMessage> testMessages = new ArrayList<>();
+
+    /**
+     * @param tests
+     *            builds the tests when they are requested.
+     * @param onResult
+     *            receives the result when {@link #toResult} is called, or null.
+     */
+    public SpoofaxTestCaseStream(ISpoofaxTestCaseExtractionResult headers, Iterator<ITestCase> tests, int size,
+        @Nullable Consumer<ISpoofaxTestCaseExtractionResult> onResult) {
+        this.headers = headers;
+        this.tests = tests;
+        this.size = size;
+        this.onResult = onResult;
+        this.result = null;
+    }
+
+    /**
+     * A stream over the tests of an extraction result, which is returned as is by {@link #toResult}.
+     */
+    public SpoofaxTestCaseStream(ISpoofaxTestCaseExtractionResult result) {
+        this.headers = result;
+        this.tests = result.getTests().iterator();
+        this.size = Iterables.size(result.getTests());
+        this.onResult = null;
+        this.result = result;
+    }
+
+    @Override public boolean hasNext() {
+        return tests.hasNext();
+    }
+
+    @Override public ITestCase next() {
+        final ITestCase test = tests.next();
+        if(result == null) {
+            SpoofaxTestCaseExtractor.addMissingExpectations(test, testMessages);
+        }
+        return test;
+    }
+
+    @Override public ISpoofaxTestCaseExtractionResult getHeaders() {
+        return headers;
+    }
+
+    @Override public int size() {
+        return size;
+    }
+
+    @Override public Iterable<IMessage> getTestMessages() {
+        return testMessages;
+    }
+
+    @Override public ISpoofaxTestCaseExtractionResult toResult(Iterable<ITestCase> tests) {
+        if(hasNext()) {
+            throw new IllegalStateException("Not all tests of " + headers.getName() + " have been returned yet");
+        }
+        if(result != null) {
+            return result;
+        }
+        final ISpoofaxTestCaseExtractionResult extracted =
+            SpoofaxTestCaseExtractor.complete(headers, testMessages, tests);
+        if(onResult != null) {
+            onResult.accept(extracted);
+        }
+        return extracted;
+    }
+}
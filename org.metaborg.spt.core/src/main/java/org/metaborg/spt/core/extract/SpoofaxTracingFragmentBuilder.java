@@ -1,41 +1,37 @@
 package org.metaborg.spt.core.extract;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.commons.vfs2.FileObject;
 import org.metaborg.core.project.IProject;
-import org.metaborg.core.source.ISourceLocation;
 import org.metaborg.core.source.ISourceRegion;
+import org.metaborg.mbt.core.model.CompactFragment;
 import org.metaborg.mbt.core.model.Fragment;
 import org.metaborg.mbt.core.model.IFragment;
 import org.metaborg.mbt.core.model.IFragment.FragmentPiece;
-import org.metaborg.spoofax.core.tracing.ISpoofaxTracingService;
 import org.metaborg.spt.core.SPTUtil;
 import org.spoofax.interpreter.terms.IStrategoTerm;
+import org.spoofax.jsglr.client.imploder.ITokens;
+import org.spoofax.jsglr.client.imploder.ImploderAttachment;
 import org.spoofax.terms.TermVisitor;
 
-import com.google.inject.Inject;
 import org.spoofax.terms.util.TermUtils;
 
 /**
  * A builder for IFragments from the AST nodes of a Spoofax SPT test suite specification.
  * 
- * Uses the ISpoofaxTracingService to construct the regions for the selections of a Fragment.
+ * Takes the regions of the selections and pieces of text of a Fragment straight from the origins of their AST nodes.
+ * 
+ * Builds a {@link CompactFragment} that shares the text of the test suite with the other fragments of the test suite,
+ * if that text is available from the tokens of the AST node.
  */
 public class SpoofaxTracingFragmentBuilder implements ISpoofaxFragmentBuilder {
-    private final ISpoofaxTracingService traceService;
-
     private IStrategoTerm fixtureTerm = null;
     private IStrategoTerm fragmentTerm;
     private FileObject resource = null;
     private IProject project = null;
 
-    @Inject public SpoofaxTracingFragmentBuilder(ISpoofaxTracingService traceService) {
-        this.traceService = traceService;
-    }
-
     @Override public ISpoofaxFragmentBuilder withFixture(IStrategoTerm fragmentFixture) {
         this.fixtureTerm = fragmentFixture;
         return this;
@@ -68,22 +64,21 @@ public class SpoofaxTracingFragmentBuilder implements ISpoofaxFragmentBuilder {
         }
 
         // get the region of the fragment
-        ISourceLocation fragmentLocation = traceService.location(fragmentTerm);
-        if(fragmentLocation == null) {
+        ISourceRegion region = SPTUtil.region(fragmentTerm);
+        if(region == null) {
             throw new IllegalArgumentException("The given fragment has no origin location.");
         }
-        ISourceRegion region = fragmentLocation.region();
         
         // get the text of the fixture before the fragment
-        final List<FragmentPiece> text = new LinkedList<>();
+        final List<FragmentPiece> text = new ArrayList<>();
         if (fixtureTerm != null) {
             // Fixture(openmarker, text1, openmarker, closemarker, text2, closemarker)
             final IStrategoTerm text1Term = fixtureTerm.getSubterm(1);
-            final ISourceLocation loc = traceService.location(text1Term);
+            final ISourceRegion loc = SPTUtil.region(text1Term);
             if (loc == null) {
                 throw new IllegalArgumentException("No origin info for test fixture text: " + text1Term);
             }
-            text.add(new FragmentPiece(loc.region().startOffset(), TermUtils.toJavaString(text1Term)));
+            text.add(new FragmentPiece(loc.startOffset(), TermUtils.toJavaString(text1Term)));
         }
         
         // get the text and selections
@@ -96,49 +91,49 @@ public class SpoofaxTracingFragmentBuilder implements ISpoofaxFragmentBuilder {
              */
             @Override public void preVisit(IStrategoTerm term) {
                 if(TermUtils.isAppl(term)) {
-                    ISourceLocation loc = null;
+                    ISourceRegion loc = null;
                     String consName = SPTUtil.consName(term);
                     switch(consName) {
                         // collect the selected regions
                         case SPTUtil.SELECTION_CONS:
                             // we want the region of the term inside the selection, not including the selection markers
-                            loc = traceService.location(term.getSubterm(1));
+                            loc = SPTUtil.region(term.getSubterm(1));
                             if(loc == null) {
                                 // TODO is this ok? or should we fail more gracefully?
                                 throw new IllegalArgumentException("Selection " + term + " has no origin information.");
                             }
-                            selections.add(loc.region());
+                            selections.add(loc);
                             break;
                         case SPTUtil.FRAGMENT_CONS:
                             // it's a Fragment("sometext", <TailPart>)
                             IStrategoTerm textTerm = term.getSubterm(0);
-                            loc = traceService.location(textTerm);
+                            loc = SPTUtil.region(textTerm);
                             if(loc == null) {
                                 // TODO is this ok? or should we fail more gracefully?
                                 throw new IllegalArgumentException(
                                     "Fragment text " + textTerm + " has no origin information.");
                             }
-                            text.add(new FragmentPiece(loc.region().startOffset(), TermUtils.toJavaString(textTerm)));
+                            text.add(new FragmentPiece(loc.startOffset(), TermUtils.toJavaString(textTerm)));
                             break;
                         case SPTUtil.TAILPART_MORE_CONS:
                             // it's a More(Selection(<marker>, "sometext", <marker>), "sometext", <Tailpart>)
                             IStrategoTerm selectionTextTerm = term.getSubterm(0).getSubterm(1);
-                            loc = traceService.location(selectionTextTerm);
+                            loc = SPTUtil.region(selectionTextTerm);
                             if(loc == null) {
                                 // TODO is this ok? or should we fail more gracefully?
                                 throw new IllegalArgumentException(
                                     "Fragment text " + selectionTextTerm + " has no origin information.");
                             }
                             text.add(
-                                new FragmentPiece(loc.region().startOffset(), TermUtils.toJavaString(selectionTextTerm)));
+                                new FragmentPiece(loc.startOffset(), TermUtils.toJavaString(selectionTextTerm)));
                             IStrategoTerm moreTextTerm = term.getSubterm(1);
-                            loc = traceService.location(moreTextTerm);
+                            loc = SPTUtil.region(moreTextTerm);
                             if(loc == null) {
                                 // TODO is this ok? or should we fail more gracefully?
                                 throw new IllegalArgumentException(
                                     "Fragment text " + moreTextTerm + " has no origin information.");
                             }
-                            text.add(new FragmentPiece(loc.region().startOffset(), TermUtils.toJavaString(moreTextTerm)));
+                            text.add(new FragmentPiece(loc.startOffset(), TermUtils.toJavaString(moreTextTerm)));
                             break;
                         default:
                             // nothing to do
@@ -150,13 +145,21 @@ public class SpoofaxTracingFragmentBuilder implements ISpoofaxFragmentBuilder {
         if (fixtureTerm != null) {
             // Fixture(openmarker, text1, openmarker, closemarker, text2, closemarker)
             final IStrategoTerm text2Term = fixtureTerm.getSubterm(4);
-            final ISourceLocation loc = traceService.location(text2Term);
+            final ISourceRegion loc = SPTUtil.region(text2Term);
             if (loc == null) {
                 throw new IllegalArgumentException("No origin info for test fixture text: " + text2Term);
             }
-            text.add(new FragmentPiece(loc.region().startOffset(), TermUtils.toJavaString(text2Term)));
+            text.add(new FragmentPiece(loc.startOffset(), TermUtils.toJavaString(text2Term)));
         }
         
+        final ITokens tokens = ImploderAttachment.getTokenizer(fragmentTerm);
+        if(tokens != null && tokens.getInput() != null) {
+            final IFragment fragment =
+                CompactFragment.of(tokens.getInput(), region, selections, text, resource, project);
+            if(fragment != null) {
+                return fragment;
+            }
+        }
         return new Fragment(region, selections, text, resource, project);
     }
 
@@ -1,15 +1,13 @@
 package org.metaborg.spt.core.extract.expectations;
 
 import com.google.common.collect.Lists;
-import com.google.inject.Inject;
+import com.google.common.collect.Sets;
 import org.metaborg.core.messages.MessageSeverity;
-import org.metaborg.core.source.ISourceLocation;
 import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.mbt.core.model.IFragment;
 import org.metaborg.mbt.core.model.expectations.AnalysisMessageExpectation;
 import org.metaborg.mbt.core.model.expectations.AnalysisMessageExpectation.Operation;
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
-import org.metaborg.spoofax.core.tracing.ISpoofaxTracingService;
 import org.metaborg.spt.core.SPTUtil;
 import org.metaborg.spt.core.extract.ISpoofaxTestExpectationProvider;
 import org.metaborg.util.log.ILogger;
@@ -19,7 +17,9 @@ import org.spoofax.interpreter.terms.IStrategoTerm;
 import org.spoofax.terms.util.TermUtils;
 
 import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 
 public class AnalyzeExpectationProvider implements ISpoofaxTestExpectationProvider {
@@ -30,6 +30,7 @@ public class AnalyzeExpectationProvider implements ISpoofaxTestExpectationProvid
     private static final String CONS = "AnalyzeMessages";
     // AnalyzeMessagePattern(severity, content, optional at part)
     private static final String LIKE = "AnalyzeMessagePattern";
+    private static final Set<String> CONSTRUCTORS = Collections.unmodifiableSet(Sets.newHashSet(CONS, LIKE));
 
     private static final String AT_PART = "AtPart";
 
@@ -42,10 +43,8 @@ public class AnalyzeExpectationProvider implements ISpoofaxTestExpectationProvid
     private static final String MT = "More";
     private static final String ME = "MoreOrEqual";
 
-    private final ISpoofaxTracingService traceService;
-
-    @Inject public AnalyzeExpectationProvider(ISpoofaxTracingService traceService) {
-        this.traceService = traceService;
+    @Override public Set<String> handledConstructors() {
+        return CONSTRUCTORS;
     }
 
     @Override public boolean canEvaluate(IFragment inputFragment, IStrategoTerm expectationTerm) {
@@ -77,8 +76,8 @@ public class AnalyzeExpectationProvider implements ISpoofaxTestExpectationProvid
     }
 
     private ISourceRegion getRegion(IFragment inputFragment, IStrategoTerm expectationTerm) {
-        final ISourceLocation loc = traceService.location(expectationTerm);
-        return loc == null ? inputFragment.getRegion() : loc.region();
+        final ISourceRegion loc = SPTUtil.region(expectationTerm);
+        return loc == null ? inputFragment.getRegion() : loc;
     }
 
     private AnalysisMessageExpectation getLikeExpectation(IFragment inputFragment, IStrategoTerm expectationTerm) {
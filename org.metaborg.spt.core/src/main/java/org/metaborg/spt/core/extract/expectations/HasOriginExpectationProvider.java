@@ -1,15 +1,16 @@
 package org.metaborg.spt.core.extract.expectations;
 
-import org.metaborg.core.source.ISourceLocation;
+import java.util.Collections;
+import java.util.Set;
+
+import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.mbt.core.model.IFragment;
 import org.metaborg.mbt.core.model.expectations.HasOriginExpectation;
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
-import org.metaborg.spoofax.core.tracing.ISpoofaxTracingService;
 import org.metaborg.spt.core.SPTUtil;
 import org.metaborg.spt.core.extract.ISpoofaxTestExpectationProvider;
 import org.spoofax.interpreter.terms.IStrategoTerm;
 
-import com.google.inject.Inject;
 
 /**
  * Provider for the `has origin locations` expectation.
@@ -17,11 +18,10 @@ import com.google.inject.Inject;
 public class HasOriginExpectationProvider implements ISpoofaxTestExpectationProvider {
 
     private static final String HAS_ORIGIN = "HasOrigin";
+    private static final Set<String> CONSTRUCTORS = Collections.singleton(HAS_ORIGIN);
 
-    private final ISpoofaxTracingService traceService;
-
-    @Inject public HasOriginExpectationProvider(ISpoofaxTracingService traceService) {
-        this.traceService = traceService;
+    @Override public Set<String> handledConstructors() {
+        return CONSTRUCTORS;
     }
 
     @Override public boolean canEvaluate(IFragment inputFragment, IStrategoTerm expectationTerm) {
@@ -29,8 +29,8 @@ public class HasOriginExpectationProvider implements ISpoofaxTestExpectationProv
     }
 
     @Override public ITestExpectation createExpectation(IFragment inputFragment, IStrategoTerm expectationTerm) {
-        ISourceLocation loc = traceService.location(expectationTerm);
-        return new HasOriginExpectation(loc == null ? inputFragment.getRegion() : loc.region());
+        ISourceRegion loc = SPTUtil.region(expectationTerm);
+        return new HasOriginExpectation(loc == null ? inputFragment.getRegion() : loc);
     }
 
 }
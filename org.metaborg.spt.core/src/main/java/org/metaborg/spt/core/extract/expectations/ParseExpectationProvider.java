@@ -1,17 +1,19 @@
 package org.metaborg.spt.core.extract.expectations;
 
-import org.metaborg.core.source.ISourceLocation;
+import java.util.Collections;
+import java.util.Set;
+
 import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.mbt.core.model.IFragment;
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
 import org.metaborg.mbt.core.model.expectations.ParseExpectation;
-import org.metaborg.spoofax.core.tracing.ISpoofaxTracingService;
 import org.metaborg.spt.core.SPTUtil;
 import org.metaborg.spt.core.extract.ISpoofaxFragmentBuilder;
 import org.metaborg.spt.core.extract.ISpoofaxTestExpectationProvider;
 import org.metaborg.spt.core.run.FragmentUtil;
 import org.spoofax.interpreter.terms.IStrategoTerm;
 
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
 /**
@@ -25,20 +27,22 @@ public class ParseExpectationProvider implements ISpoofaxTestExpectationProvider
     private static final String AMB = "ParseAmbiguous";
     private static final String FAIL = "ParseFails";
     private static final String TO = "ParseTo";
+    private static final Set<String> CONSTRUCTORS = Collections.unmodifiableSet(Sets.newHashSet(SUC, AMB, FAIL, TO));
 
-    private final ISpoofaxTracingService traceService;
     private final ISpoofaxFragmentBuilder fragmentBuilder;
 
     private final FragmentUtil fragmentUtil;
 
-    @Inject public ParseExpectationProvider(ISpoofaxTracingService traceService,
-        ISpoofaxFragmentBuilder fragmentBuilder, FragmentUtil fragmentUtil) {
-        this.traceService = traceService;
+    @Inject public ParseExpectationProvider(ISpoofaxFragmentBuilder fragmentBuilder, FragmentUtil fragmentUtil) {
         this.fragmentBuilder = fragmentBuilder;
 
         this.fragmentUtil = fragmentUtil;
     }
 
+    @Override public Set<String> handledConstructors() {
+        return CONSTRUCTORS;
+    }
+
     @Override public boolean canEvaluate(IFragment inputFragment, IStrategoTerm expectationTerm) {
         String cons = SPTUtil.consName(expectationTerm);
         return cons != null && (SUC.equals(cons) || AMB.equals(cons) || FAIL.equals(cons) || TO.equals(cons));
@@ -46,8 +50,8 @@ public class ParseExpectationProvider implements ISpoofaxTestExpectationProvider
 
     @Override public ITestExpectation createExpectation(IFragment inputFragment, IStrategoTerm expectationTerm) {
         // logger.debug("Creating a ParseExpectation for {}", expectationTerm);
-        ISourceLocation loc = traceService.location(expectationTerm);
-        ISourceRegion region = loc == null ? inputFragment.getRegion() : loc.region();
+        ISourceRegion loc = SPTUtil.region(expectationTerm);
+        ISourceRegion region = loc == null ? inputFragment.getRegion() : loc;
         final String cons = SPTUtil.consName(expectationTerm);
         switch (cons) {
             case TO:
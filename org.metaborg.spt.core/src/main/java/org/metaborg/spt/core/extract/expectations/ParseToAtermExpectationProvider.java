@@ -1,16 +1,16 @@
 package org.metaborg.spt.core.extract.expectations;
 
-import org.metaborg.core.source.ISourceLocation;
+import java.util.Collections;
+import java.util.Set;
+
 import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.mbt.core.model.IFragment;
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
-import org.metaborg.spoofax.core.tracing.ISpoofaxTracingService;
 import org.metaborg.spt.core.SPTUtil;
 import org.metaborg.spt.core.expectations.ParseToAtermExpectation;
 import org.metaborg.spt.core.extract.ISpoofaxTestExpectationProvider;
 import org.spoofax.interpreter.terms.IStrategoTerm;
 
-import com.google.inject.Inject;
 
 /**
  * Deals with 'parse to [ATerm]' expectations, which are specific to Spoofax.
@@ -20,11 +20,10 @@ public class ParseToAtermExpectationProvider implements ISpoofaxTestExpectationP
     // ParseToAterm(ToAterm(ast))
     private static final String PARSE = "ParseToAterm";
     private static final String ATERM = "ToAterm";
+    private static final Set<String> CONSTRUCTORS = Collections.singleton(PARSE);
 
-    private final ISpoofaxTracingService traceService;
-
-    @Inject public ParseToAtermExpectationProvider(ISpoofaxTracingService traceService) {
-        this.traceService = traceService;
+    @Override public Set<String> handledConstructors() {
+        return CONSTRUCTORS;
     }
 
     @Override public boolean canEvaluate(IFragment inputFragment, IStrategoTerm expectationTerm) {
@@ -39,8 +38,8 @@ public class ParseToAtermExpectationProvider implements ISpoofaxTestExpectationP
     }
 
     @Override public ITestExpectation createExpectation(IFragment inputFragment, IStrategoTerm expectationTerm) {
-        ISourceLocation loc = traceService.location(expectationTerm);
-        ISourceRegion region = loc == null ? inputFragment.getRegion() : loc.region();
+        ISourceRegion loc = SPTUtil.region(expectationTerm);
+        ISourceRegion region = loc == null ? inputFragment.getRegion() : loc;
         return new ParseToAtermExpectation(region, expectationTerm.getSubterm(0).getSubterm(0));
     }
 
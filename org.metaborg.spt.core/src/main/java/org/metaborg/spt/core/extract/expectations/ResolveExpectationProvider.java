@@ -1,16 +1,17 @@
 package org.metaborg.spt.core.extract.expectations;
 
-import org.metaborg.core.source.ISourceLocation;
+import java.util.Collections;
+import java.util.Set;
+
 import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.mbt.core.model.IFragment;
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
 import org.metaborg.mbt.core.model.expectations.ResolveExpectation;
-import org.metaborg.spoofax.core.tracing.ISpoofaxTracingService;
 import org.metaborg.spt.core.SPTUtil;
 import org.metaborg.spt.core.extract.ISpoofaxTestExpectationProvider;
 import org.spoofax.interpreter.terms.IStrategoTerm;
 
-import com.google.inject.Inject;
+import com.google.common.collect.Sets;
 import org.spoofax.terms.util.TermUtils;
 
 /**
@@ -23,11 +24,10 @@ public class ResolveExpectationProvider implements ISpoofaxTestExpectationProvid
 
     private static final String RESOLVE = "Resolve";
     private static final String TO = "ResolveTo";
+    private static final Set<String> CONSTRUCTORS = Collections.unmodifiableSet(Sets.newHashSet(RESOLVE, TO));
 
-    private final ISpoofaxTracingService traceService;
-
-    @Inject public ResolveExpectationProvider(ISpoofaxTracingService traceService) {
-        this.traceService = traceService;
+    @Override public Set<String> handledConstructors() {
+        return CONSTRUCTORS;
     }
 
     @Override public boolean canEvaluate(IFragment inputFragment, IStrategoTerm expectationTerm) {
@@ -35,19 +35,19 @@ public class ResolveExpectationProvider implements ISpoofaxTestExpectationProvid
     }
 
     @Override public ITestExpectation createExpectation(IFragment inputFragment, IStrategoTerm expectationTerm) {
-        final ISourceLocation loc = traceService.location(expectationTerm);
-        final ISourceRegion region = loc == null ? inputFragment.getRegion() : loc.region();
+        final ISourceRegion loc = SPTUtil.region(expectationTerm);
+        final ISourceRegion region = loc == null ? inputFragment.getRegion() : loc;
 
         final String cons = SPTUtil.consName(expectationTerm);
         final IStrategoTerm refTerm = getReferenceTerm(expectationTerm);
-        final ISourceLocation refLoc = traceService.location(refTerm);
+        final ISourceRegion refLoc = SPTUtil.region(refTerm);
         if(RESOLVE.equals(cons)) {
-            return new ResolveExpectation(region, TermUtils.toJavaInt(refTerm), refLoc.region());
+            return new ResolveExpectation(region, TermUtils.toJavaInt(refTerm), refLoc);
         } else {
             final IStrategoTerm defTerm = getDefinitionTerm(expectationTerm);
-            final ISourceLocation defLoc = traceService.location(defTerm);
-            return new ResolveExpectation(region, TermUtils.toJavaInt(refTerm), refLoc.region(), TermUtils.toJavaInt(defTerm),
-                defLoc.region());
+            final ISourceRegion defLoc = SPTUtil.region(defTerm);
+            return new ResolveExpectation(region, TermUtils.toJavaInt(refTerm), refLoc, TermUtils.toJavaInt(defTerm),
+                defLoc);
         }
     }
 
@@ -1,19 +1,21 @@
 package org.metaborg.spt.core.extract.expectations;
 
+import java.util.Collections;
+import java.util.Set;
+
 import javax.annotation.Nullable;
 
-import org.metaborg.core.source.ISourceLocation;
 import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.mbt.core.model.IFragment;
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
 import org.metaborg.mbt.core.model.expectations.RunStrategoExpectation;
-import org.metaborg.spoofax.core.tracing.ISpoofaxTracingService;
 import org.metaborg.spt.core.SPTUtil;
 import org.metaborg.spt.core.extract.ISpoofaxFragmentBuilder;
 import org.metaborg.spt.core.extract.ISpoofaxTestExpectationProvider;
 import org.metaborg.spt.core.run.FragmentUtil;
 import org.spoofax.interpreter.terms.IStrategoTerm;
 
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import org.spoofax.terms.util.TermUtils;
 
@@ -26,20 +28,22 @@ public class RunStrategoExpectationProvider implements ISpoofaxTestExpectationPr
 
     private static final String RUN = "Run";
     private static final String RUN_TO = "RunTo";
+    private static final Set<String> CONSTRUCTORS = Collections.unmodifiableSet(Sets.newHashSet(RUN, RUN_TO));
 
     private final ISpoofaxFragmentBuilder fragmentBuilder;
-    private final ISpoofaxTracingService traceService;
 
     private final FragmentUtil fragmentUtil;
 
-    @Inject public RunStrategoExpectationProvider(ISpoofaxFragmentBuilder fragmentBuilder,
-        ISpoofaxTracingService traceService, FragmentUtil fragmentUtil) {
+    @Inject public RunStrategoExpectationProvider(ISpoofaxFragmentBuilder fragmentBuilder, FragmentUtil fragmentUtil) {
         this.fragmentBuilder = fragmentBuilder;
-        this.traceService = traceService;
 
         this.fragmentUtil = fragmentUtil;
     }
 
+    @Override public Set<String> handledConstructors() {
+        return CONSTRUCTORS;
+    }
+
     @Override public boolean canEvaluate(IFragment inputFragment, IStrategoTerm expectationTerm) {
         String cons = SPTUtil.consName(expectationTerm);
         switch(cons) {
@@ -56,25 +60,25 @@ public class RunStrategoExpectationProvider implements ISpoofaxTestExpectationPr
     }
 
     @Override public ITestExpectation createExpectation(IFragment inputFragment, IStrategoTerm expectationTerm) {
-        ISourceLocation loc = traceService.location(expectationTerm);
-        ISourceRegion region = loc == null ? inputFragment.getRegion() : loc.region();
+        ISourceRegion loc = SPTUtil.region(expectationTerm);
+        ISourceRegion region = loc == null ? inputFragment.getRegion() : loc;
 
         // Run(strat, optional onPart) or RunTo(strat, optOnPart, toPart)
         final String cons = SPTUtil.consName(expectationTerm);
         final IStrategoTerm stratTerm = getStrategyTerm(expectationTerm);
         final String strategy = TermUtils.toJavaString(stratTerm);
-        final ISourceLocation stratLoc = traceService.location(stratTerm);
+        final ISourceRegion stratLoc = SPTUtil.region(stratTerm);
         final @Nullable IStrategoTerm onTerm = SPTUtil.getOptionValue(getOnPartTerm(expectationTerm));
         final Integer selection;
         final ISourceRegion selectionRegion;
         if(onTerm != null) {
             // on #<int> was present
             selection = TermUtils.toJavaInt(onTerm);
-            final ISourceLocation selLoc = traceService.location(onTerm);
+            final ISourceRegion selLoc = SPTUtil.region(onTerm);
             if(selLoc == null) {
                 selectionRegion = region;
             } else {
-                selectionRegion = selLoc.region();
+                selectionRegion = selLoc;
             }
         } else {
             // the onPart was None()
@@ -84,7 +88,7 @@ public class RunStrategoExpectationProvider implements ISpoofaxTestExpectationPr
 
         if(RUN.equals(cons)) {
             // This is a Run term
-            return new RunStrategoExpectation(region, strategy, stratLoc.region(), selection, selectionRegion);
+            return new RunStrategoExpectation(region, strategy, stratLoc, selection, selectionRegion);
         } else {
             // This is a RunTo term
             final IStrategoTerm toPart = getToPartTerm(expectationTerm);
@@ -92,7 +96,7 @@ public class RunStrategoExpectationProvider implements ISpoofaxTestExpectationPr
             final ISourceRegion langRegion = fragmentUtil.toPartLangNameRegion(toPart);
             final IFragment outputFragment = fragmentBuilder.withFragment(FragmentUtil.toPartFragment(toPart))
                 .withProject(inputFragment.getProject()).withResource(inputFragment.getResource()).build();
-            return new RunStrategoExpectation(region, strategy, stratLoc.region(), selection, selectionRegion,
+            return new RunStrategoExpectation(region, strategy, stratLoc, selection, selectionRegion,
                 outputFragment, langName, langRegion);
         }
     }
@@ -1,18 +1,18 @@
 package org.metaborg.spt.core.extract.expectations;
 
+import java.util.Collections;
+import java.util.Set;
+
 import javax.annotation.Nullable;
 
-import org.metaborg.core.source.ISourceLocation;
 import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.mbt.core.model.IFragment;
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
-import org.metaborg.spoofax.core.tracing.ISpoofaxTracingService;
 import org.metaborg.spt.core.SPTUtil;
 import org.metaborg.spt.core.expectations.RunStrategoToAtermExpectation;
 import org.metaborg.spt.core.extract.ISpoofaxTestExpectationProvider;
 import org.spoofax.interpreter.terms.IStrategoTerm;
 
-import com.google.inject.Inject;
 import org.spoofax.terms.util.TermUtils;
 
 /**
@@ -23,12 +23,10 @@ public class RunStrategoToAtermExpectationProvider implements ISpoofaxTestExpect
     // RunToAterm("strategy", optional onPart(int), ToAterm(ast))
     private static final String RUN_TO = "RunToAterm";
     private static final String TO_ATERM = "ToAterm";
+    private static final Set<String> CONSTRUCTORS = Collections.singleton(RUN_TO);
 
-    private final ISpoofaxTracingService traceService;
-
-
-    @Inject public RunStrategoToAtermExpectationProvider(ISpoofaxTracingService traceService) {
-        this.traceService = traceService;
+    @Override public Set<String> handledConstructors() {
+        return CONSTRUCTORS;
     }
 
     @Override public boolean canEvaluate(IFragment inputFragment, IStrategoTerm expectationTerm) {
@@ -36,8 +34,8 @@ public class RunStrategoToAtermExpectationProvider implements ISpoofaxTestExpect
     }
 
     @Override public ITestExpectation createExpectation(IFragment inputFragment, IStrategoTerm expectationTerm) {
-        ISourceLocation loc = traceService.location(expectationTerm);
-        ISourceRegion region = loc == null ? inputFragment.getRegion() : loc.region();
+        ISourceRegion loc = SPTUtil.region(expectationTerm);
+        ISourceRegion region = loc == null ? inputFragment.getRegion() : loc;
 
         final IStrategoTerm stratTerm = getStrategyTerm(expectationTerm);
         final String strategy = TermUtils.toJavaString(stratTerm);
@@ -52,15 +50,15 @@ public class RunStrategoToAtermExpectationProvider implements ISpoofaxTestExpect
         } else {
             // the optional onPart was Some(onTerm)
             selection = TermUtils.toJavaInt(onTerm);
-            final ISourceLocation selLoc = traceService.location(onTerm);
+            final ISourceRegion selLoc = SPTUtil.region(onTerm);
             if(selLoc == null) {
                 selectionRegion = region;
             } else {
-                selectionRegion = selLoc.region();
+                selectionRegion = selLoc;
             }
         }
         final IStrategoTerm toAtermPart = getToAtermTerm(expectationTerm);
-        return new RunStrategoToAtermExpectation(region, strategy, loc.region(), selection, selectionRegion,
+        return new RunStrategoToAtermExpectation(region, strategy, loc, selection, selectionRegion,
             toAtermPart.getSubterm(0));
     }
 
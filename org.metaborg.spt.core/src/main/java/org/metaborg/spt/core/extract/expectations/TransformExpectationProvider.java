@@ -1,16 +1,16 @@
 package org.metaborg.spt.core.extract.expectations;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.metaborg.core.action.EndNamedGoal;
 import org.metaborg.core.action.ITransformGoal;
 import org.metaborg.core.action.NamedGoal;
-import org.metaborg.core.source.ISourceLocation;
 import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.mbt.core.model.IFragment;
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
 import org.metaborg.mbt.core.model.expectations.TransformExpectation;
-import org.metaborg.spoofax.core.tracing.ISpoofaxTracingService;
 import org.metaborg.spt.core.SPTUtil;
 import org.metaborg.spt.core.extract.ISpoofaxFragmentBuilder;
 import org.metaborg.spt.core.extract.ISpoofaxTestExpectationProvider;
@@ -24,15 +24,13 @@ import org.spoofax.terms.util.TermUtils;
 public class TransformExpectationProvider implements ISpoofaxTestExpectationProvider {
 
     private static final String TRANSFORM = "Transform";
+    private static final Set<String> CONSTRUCTORS = Collections.singleton(TRANSFORM);
 
-    private final ISpoofaxTracingService traceService;
     private final ISpoofaxFragmentBuilder fragmentBuilder;
 
     private final FragmentUtil fragmentUtil;
 
-    @Inject public TransformExpectationProvider(ISpoofaxTracingService traceService,
-        ISpoofaxFragmentBuilder fragmentBuilder, FragmentUtil fragmentUtil) {
-        this.traceService = traceService;
+    @Inject public TransformExpectationProvider(ISpoofaxFragmentBuilder fragmentBuilder, FragmentUtil fragmentUtil) {
         this.fragmentBuilder = fragmentBuilder;
 
         this.fragmentUtil = fragmentUtil;
@@ -47,6 +45,10 @@ public class TransformExpectationProvider implements ISpoofaxTestExpectationProv
         return goalNames;
     }
 
+    @Override public Set<String> handledConstructors() {
+        return CONSTRUCTORS;
+    }
+
     @Override public boolean canEvaluate(IFragment inputFragment, IStrategoTerm expectationTerm) {
         String cons = SPTUtil.consName(expectationTerm);
         if(!TRANSFORM.equals(cons)) {
@@ -62,8 +64,8 @@ public class TransformExpectationProvider implements ISpoofaxTestExpectationProv
     }
 
     @Override public ITestExpectation createExpectation(IFragment inputFragment, IStrategoTerm expectationTerm) {
-        ISourceLocation loc = traceService.location(expectationTerm);
-        ISourceRegion region = loc == null ? inputFragment.getRegion() : loc.region();
+        ISourceRegion loc = SPTUtil.region(expectationTerm);
+        ISourceRegion region = loc == null ? inputFragment.getRegion() : loc;
 
         // It's a Transform("goal") or a Transform("goal", ToPart(...))
         String unQuotedGoalStr = TermUtils.toJavaString(expectationTerm.getSubterm(0));
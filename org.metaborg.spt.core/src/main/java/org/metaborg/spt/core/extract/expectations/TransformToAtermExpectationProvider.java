@@ -1,32 +1,30 @@
 package org.metaborg.spt.core.extract.expectations;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.metaborg.core.action.EndNamedGoal;
 import org.metaborg.core.action.ITransformGoal;
 import org.metaborg.core.action.NamedGoal;
-import org.metaborg.core.source.ISourceLocation;
 import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.mbt.core.model.IFragment;
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
-import org.metaborg.spoofax.core.tracing.ISpoofaxTracingService;
 import org.metaborg.spt.core.SPTUtil;
 import org.metaborg.spt.core.expectations.TransformToAtermExpectation;
 import org.metaborg.spt.core.extract.ISpoofaxTestExpectationProvider;
 import org.spoofax.interpreter.terms.IStrategoTerm;
 
-import com.google.inject.Inject;
 import org.spoofax.terms.util.TermUtils;
 
 public class TransformToAtermExpectationProvider implements ISpoofaxTestExpectationProvider {
 
     // TransformToAterm("goal", ToAterm(ast))
     private static final String TRANSFORM = "TransformToAterm";
+    private static final Set<String> CONSTRUCTORS = Collections.singleton(TRANSFORM);
 
-    private final ISpoofaxTracingService traceService;
-
-    @Inject public TransformToAtermExpectationProvider(ISpoofaxTracingService traceService) {
-        this.traceService = traceService;
+    @Override public Set<String> handledConstructors() {
+        return CONSTRUCTORS;
     }
 
     @Override public boolean canEvaluate(IFragment inputFragment, IStrategoTerm expectationTerm) {
@@ -34,8 +32,8 @@ public class TransformToAtermExpectationProvider implements ISpoofaxTestExpectat
     }
 
     @Override public ITestExpectation createExpectation(IFragment inputFragment, IStrategoTerm expectationTerm) {
-        final ISourceLocation loc = traceService.location(expectationTerm);
-        final ISourceRegion region = loc == null ? inputFragment.getRegion() : loc.region();
+        final ISourceRegion loc = SPTUtil.region(expectationTerm);
+        final ISourceRegion region = loc == null ? inputFragment.getRegion() : loc;
 
         // It's a Transform("goal", ToPart(...))
         String unQuotedGoalStr = TermUtils.toJavaString(getGoalTerm(expectationTerm));
@@ -0,0 +1,87 @@
+package org.metaborg.spt.core.index;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A test as found by the {@link SuiteScanner}, without its fragment and expectations.
+ */
+public final class IndexedTest {
+
+    /**
+     * The kinds of expectations a test can have, by the keyword that starts them.
+     */
+    public enum ExpectationKind {
+        /** parse succeeds, fails, ambiguous, or to. */
+        PARSE,
+        /** analysis succeeds or fails, and expected errors, warnings, and notes. */
+        ANALYSIS,
+        /** resolve. */
+        RESOLVE,
+        /** has origin locations. */
+        ORIGIN,
+        /** run a strategy. */
+        RUN,
+        /** transform with a menu action. */
+        TRANSFORM
+    }
+
+    private final String description;
+    private final int offset;
+    private final int line;
+    private final int descriptionOffset;
+    private final Set<ExpectationKind> expectations;
+
+
+    public IndexedTest(String description, int offset, int line, int descriptionOffset,
+        Set<ExpectationKind> expectations) {
+        this.description = description;
+        this.offset = offset;
+        this.line = line;
+        this.descriptionOffset = descriptionOffset;
+        this.expectations = Collections.unmodifiableSet(
+            expectations.isEmpty() ? EnumSet.noneOf(ExpectationKind.class) : EnumSet.copyOf(expectations));
+    }
+
+
+    /**
+     * The description of the test, exactly as the extracted test will have it.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * The offset of the 'test' keyword in the test suite.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * The line of the 'test' keyword in the test suite, starting at 1.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * The offset of the description in the test suite.
+     */
+    public int getDescriptionOffset() {
+        return descriptionOffset;
+    }
+
+    /**
+     * The kinds of expectations of the test. Tests without explicit expectations get a parse and analysis expectation
+     * when they are extracted, but those are not included here.
+     */
+    public Set<ExpectationKind> getExpectations() {
+        return expectations;
+    }
+
+    @Override public String toString() {
+        return "test " + description + " at line " + line + " " + expectations;
+    }
+}
@@ -0,0 +1,69 @@
+package org.metaborg.spt.core.index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * The headers and tests of a test suite, as found by the {@link SuiteScanner}.
+ *
+ * An index is a best effort: it is not checked against the SPT grammar, so it may list tests of a test suite that
+ * fails to extract.
+ */
+public final class SuiteIndex {
+
+    private final @Nullable String name;
+    private final @Nullable String language;
+    private final @Nullable String startSymbol;
+    private final boolean hasFixture;
+    private final List<IndexedTest> tests;
+
+
+    public SuiteIndex(@Nullable String name, @Nullable String language, @Nullable String startSymbol,
+        boolean hasFixture, List<IndexedTest> tests) {
+        this.name = name;
+        this.language = language;
+        this.startSymbol = startSymbol;
+        this.hasFixture = hasFixture;
+        this.tests = Collections.unmodifiableList(Arrays.asList(tests.toArray(new IndexedTest[tests.size()])));
+    }
+
+
+    /**
+     * The module name of the test suite, or null if it has none.
+     */
+    public @Nullable String getName() {
+        return name;
+    }
+
+    /**
+     * The name of the language under test, or null if the test suite does not declare one.
+     */
+    public @Nullable String getLanguage() {
+        return language;
+    }
+
+    /**
+     * The start symbol of the test suite, or null if it does not declare one.
+     */
+    public @Nullable String getStartSymbol() {
+        return startSymbol;
+    }
+
+    public boolean hasFixture() {
+        return hasFixture;
+    }
+
+    /**
+     * The tests of the test suite, in the order in which they appear.
+     */
+    public List<IndexedTest> getTests() {
+        return tests;
+    }
+
+    @Override public String toString() {
+        return "module " + name + " (" + tests.size() + " tests)";
+    }
+}
@@ -0,0 +1,349 @@
+package org.metaborg.spt.core.index;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.metaborg.spt.core.index.IndexedTest.ExpectationKind;
+
+/**
+ * Finds the headers and tests of a test suite with a single pass over its text, without the SPT language.
+ *
+ * The scanner knows just enough of the SPT syntax to skip everything that may contain keywords without them being
+ * keywords: layout and comments, strings, fragments with their selections, strategy names, and ATerms. Everything else
+ * that is not a keyword it knows about is ignored, so it never fails, but it may find tests in a test suite that does
+ * not parse.
+ */
+public final class SuiteScanner {
+
+    private final String text;
+    private int pos = 0;
+
+    // for computing the line of an offset, which only moves forward
+    private int lineOffset = 0;
+    private int line = 1;
+
+    private @Nullable String name;
+    private @Nullable String language;
+    private @Nullable String startSymbol;
+    private boolean hasFixture;
+    private final List<IndexedTest> tests = new ArrayList<>();
+
+    // the test whose expectations are being scanned
+    private @Nullable String description;
+    private int testOffset;
+    private int testLine;
+    private int descriptionOffset;
+    private final Set<ExpectationKind> expectations = EnumSet.noneOf(ExpectationKind.class);
+
+
+    private SuiteScanner(String text) {
+        this.text = text;
+    }
+
+
+    /**
+     * Scan the given text of a test suite.
+     */
+    public static SuiteIndex scan(String text) {
+        final SuiteScanner scanner = new SuiteScanner(text);
+        scanner.scanSuite();
+        return new SuiteIndex(scanner.name, scanner.language, scanner.startSymbol, scanner.hasFixture, scanner.tests);
+    }
+
+
+    private void scanSuite() {
+        while(true) {
+            skipLayout();
+            if(pos >= text.length()) {
+                break;
+            }
+            final char c = text.charAt(pos);
+            if(c == '[' && brackets('[') > 1) {
+                skipFragment(brackets('['));
+            } else if(c == '"') {
+                skipString();
+            } else if(isLetter(c)) {
+                final int start = pos;
+                keyword(word(), start);
+            } else {
+                pos++;
+            }
+        }
+        endTest();
+    }
+
+    private void keyword(String keyword, int start) {
+        switch(keyword) {
+            case "module":
+                skipLayout();
+                name = nameUntilLayout();
+                break;
+            case "language":
+                skipLayout();
+                language = word();
+                break;
+            case "start":
+                skipLayout();
+                if(word().equals("symbol")) {
+                    skipLayout();
+                    startSymbol = word();
+                }
+                break;
+            case "fixture":
+                hasFixture = true;
+                skipLayout();
+                skipFragment(brackets('['));
+                break;
+            case "test":
+                test(start);
+                break;
+            case "parse":
+                expectations.add(ExpectationKind.PARSE);
+                break;
+            case "analysis":
+            case "error":
+            case "errors":
+            case "warning":
+            case "warnings":
+            case "note":
+            case "notes":
+                expectations.add(ExpectationKind.ANALYSIS);
+                break;
+            case "resolve":
+                expectations.add(ExpectationKind.RESOLVE);
+                break;
+            case "has":
+                expectations.add(ExpectationKind.ORIGIN);
+                break;
+            case "run":
+                expectations.add(ExpectationKind.RUN);
+                // the name of the strategy may be any keyword
+                skipLayout();
+                strategy();
+                break;
+            case "transform":
+                expectations.add(ExpectationKind.TRANSFORM);
+                break;
+            case "to":
+                to();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void test(int start) {
+        endTest();
+        skipLayout();
+        final int descriptionStart = pos;
+        while(pos < text.length() && !isDescriptionEnd(text.charAt(pos))) {
+            pos++;
+        }
+        if(pos == descriptionStart || pos >= text.length() || text.charAt(pos) != '[') {
+            // not a test, or one that is cut off
+            return;
+        }
+        description = text.substring(descriptionStart, pos);
+        testOffset = start;
+        testLine = line(start);
+        descriptionOffset = descriptionStart;
+        skipFragment(brackets('['));
+    }
+
+    private void endTest() {
+        if(description != null) {
+            tests.add(new IndexedTest(description, testOffset, testLine, descriptionOffset, expectations));
+        }
+        description = null;
+        expectations.clear();
+    }
+
+    private void to() {
+        skipLayout();
+        if(pos < text.length() && isLetter(text.charAt(pos))) {
+            // a language name, or the constructor of an ATerm
+            word();
+            if(pos < text.length() && (text.charAt(pos) == '(' || text.charAt(pos) == '{')) {
+                skipTerm();
+                return;
+            }
+            skipLayout();
+        }
+        if(brackets('[') > 1) {
+            skipFragment(brackets('['));
+        } else {
+            skipTerm();
+        }
+    }
+
+    /**
+     * Skip a fragment that starts at the current position with the given number of brackets, including its
+     * selections, which use the same number of brackets.
+     */
+    private void skipFragment(int markers) {
+        if(markers < 2) {
+            return;
+        }
+        pos += markers;
+        int depth = 0;
+        while(pos < text.length()) {
+            final char c = text.charAt(pos);
+            if(c != '[' && c != ']') {
+                pos++;
+                continue;
+            }
+            final int count = brackets(c);
+            pos += count;
+            if(count != markers) {
+                continue;
+            }
+            if(c == '[') {
+                depth++;
+            } else if(depth > 0) {
+                depth--;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skip an ATerm: a string, a constructor application, a list, an int, or a wildcard, with annotations.
+     */
+    private void skipTerm() {
+        if(pos < text.length() && text.charAt(pos) == '!') {
+            pos++;
+            skipLayout();
+        }
+        if(pos >= text.length()) {
+            return;
+        }
+        final char c = text.charAt(pos);
+        if(c == '"') {
+            skipString();
+        } else if(c == '[' || c == '(') {
+            skipBalanced();
+        } else {
+            while(pos < text.length() && (isWordChar(text.charAt(pos)) || text.charAt(pos) == '-')) {
+                pos++;
+            }
+            if(pos < text.length() && text.charAt(pos) == '(') {
+                skipBalanced();
+            }
+        }
+        if(pos < text.length() && text.charAt(pos) == '{') {
+            skipBalanced();
+        }
+    }
+
+    /**
+     * Skip from an opening parenthesis, bracket, or brace up to and including the matching closing one.
+     */
+    private void skipBalanced() {
+        int depth = 0;
+        while(pos < text.length()) {
+            final char c = text.charAt(pos);
+            if(c == '"') {
+                skipString();
+                continue;
+            }
+            pos++;
+            if(c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if(c == ')' || c == ']' || c == '}') {
+                depth--;
+                if(depth <= 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void skipString() {
+        pos++;
+        while(pos < text.length()) {
+            final char c = text.charAt(pos++);
+            if(c == '\\' && pos < text.length()) {
+                pos++;
+            } else if(c == '"') {
+                return;
+            }
+        }
+    }
+
+    private void skipLayout() {
+        while(pos < text.length()) {
+            final char c = text.charAt(pos);
+            if(c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                pos++;
+            } else if(text.startsWith("//", pos)) {
+                while(pos < text.length() && text.charAt(pos) != '\n' && text.charAt(pos) != '\r') {
+                    pos++;
+                }
+            } else if(text.startsWith("/*", pos)) {
+                final int end = text.indexOf("*/", pos + 2);
+                pos = end < 0 ? text.length() : end + 2;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private String word() {
+        final int start = pos;
+        while(pos < text.length() && isWordChar(text.charAt(pos))) {
+            pos++;
+        }
+        return text.substring(start, pos);
+    }
+
+    private void strategy() {
+        while(pos < text.length() && (isWordChar(text.charAt(pos)) || text.charAt(pos) == '\'')) {
+            pos++;
+        }
+    }
+
+    private String nameUntilLayout() {
+        final int start = pos;
+        while(pos < text.length() && (isWordChar(text.charAt(pos)) || text.charAt(pos) == '/')) {
+            pos++;
+        }
+        return text.substring(start, pos);
+    }
+
+    /**
+     * The number of consecutive occurrences of the given bracket at the current position.
+     */
+    private int brackets(char bracket) {
+        int end = pos;
+        while(end < text.length() && text.charAt(end) == bracket) {
+            end++;
+        }
+        return end - pos;
+    }
+
+    private int line(int offset) {
+        for(; lineOffset < offset; lineOffset++) {
+            if(text.charAt(lineOffset) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    private static boolean isDescriptionEnd(char c) {
+        return c == '\n' || c == '\r' || c == '[';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWordChar(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '-' || c == '_';
+    }
+}
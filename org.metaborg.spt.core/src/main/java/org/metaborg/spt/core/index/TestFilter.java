@@ -0,0 +1,51 @@
+package org.metaborg.spt.core.index;
+
+import java.util.regex.Pattern;
+
+/**
+ * Selects tests by their description.
+ *
+ * A test is selected if the regular expression matches a part of its description, with the surrounding whitespace
+ * removed.
+ */
+public final class TestFilter {
+
+    private final Pattern pattern;
+
+
+    public TestFilter(Pattern pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * A filter for the given regular expression.
+     *
+     * @throws java.util.regex.PatternSyntaxException
+     *             if the regular expression is not valid.
+     */
+    public static TestFilter of(String regex) {
+        return new TestFilter(Pattern.compile(regex));
+    }
+
+
+    public boolean selects(String description) {
+        return pattern.matcher(description.trim()).find();
+    }
+
+    /**
+     * Whether any test of the indexed test suite is selected. Only test suites for which this holds have to be
+     * extracted.
+     */
+    public boolean selects(SuiteIndex index) {
+        for(IndexedTest test : index.getTests()) {
+            if(selects(test.getDescription())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override public String toString() {
+        return pattern.pattern();
+    }
+}
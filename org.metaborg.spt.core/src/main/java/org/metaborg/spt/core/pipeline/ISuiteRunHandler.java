@@ -0,0 +1,49 @@
+package org.metaborg.spt.core.pipeline;
+
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.MetaborgException;
+import org.metaborg.mbt.core.model.ITestCase;
+import org.metaborg.spt.core.run.ISpoofaxTestResult;
+
+/**
+ * Receives the runs of test suites that come out of the {@link SPTPipeline}.
+ *
+ * When the pipeline is {@link SPTPipelineConfig#isSequential sequential}, the tests of a test suite are also passed to
+ * the handler as they start and finish, so progress can be reported while the test suite runs. Test suites that are
+ * not run one test at a time on the thread that runs the pipeline, e.g. because they analyze their fragments
+ * together, are only passed to {@link #handle}.
+ */
+public interface ISuiteRunHandler {
+
+    /**
+     * Called on the thread that runs the pipeline, once for each test suite, in the order in which the test suites were
+     * given to the pipeline.
+     */
+    void handle(SuiteRun run) throws MetaborgException;
+
+    /**
+     * Called on the thread that runs the pipeline when it starts running the tests of the given test suite one at a
+     * time. The tests are then passed to {@link #testStarted} and {@link #testFinished}, before the test suite is
+     * passed to {@link #handle}. Only called for test suites whose tests were all extracted successfully, so the
+     * tests that are passed to the handler are never dropped afterwards.
+     *
+     * @param name
+     *            the name of the test suite, from its header.
+     */
+    default void suiteStarted(FileObject testSuite, String name) {
+    }
+
+    /**
+     * Called on the thread that runs the pipeline, right before the given test of the last
+     * {@link #suiteStarted started} test suite runs.
+     */
+    default void testStarted(ITestCase test) {
+    }
+
+    /**
+     * Called on the thread that runs the pipeline, right after a test of the last {@link #suiteStarted started} test
+     * suite ran.
+     */
+    default void testFinished(ISpoofaxTestResult result) {
+    }
+}
@@ -0,0 +1,552 @@
+package org.metaborg.spt.core.pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.MetaborgException;
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.core.project.IProject;
+import org.metaborg.mbt.core.model.ITestCase;
+import org.metaborg.spoofax.core.syntax.JSGLRParserConfiguration;
+import org.metaborg.spoofax.core.unit.ISpoofaxInputUnit;
+import org.metaborg.spoofax.core.unit.ISpoofaxInputUnitService;
+import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
+import org.metaborg.spt.core.cache.SuiteIndexCache;
+import org.metaborg.spt.core.extract.ISpoofaxTestCaseExtractionResult;
+import org.metaborg.spt.core.extract.ISpoofaxTestCaseExtractor;
+import org.metaborg.spt.core.extract.ISpoofaxTestCaseStream;
+import org.metaborg.spt.core.index.TestFilter;
+import org.metaborg.spt.core.run.ISpoofaxFragmentParserConfig;
+import org.metaborg.spt.core.run.ISpoofaxTestCaseRunner;
+import org.metaborg.spt.core.run.ISpoofaxTestResult;
+import org.metaborg.spt.core.run.PrefetchingFragmentParser;
+import org.metaborg.spt.core.run.SpoofaxFragmentParserConfig;
+import org.metaborg.spt.core.run.SuiteExecutionPlan;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+
+/**
+ * Takes test suites through the stages of reading, extracting, parsing the fragments of the tests, and evaluating the
+ * expectations of the tests.
+ *
+ * Each stage has its own thread pool, with a bounded queue in front of it. When a queue is full, the previous stage
+ * waits until there is room, so a slow stage slows down the stages before it instead of letting work pile up. This allows
+ * e.g. the extraction of one test suite to overlap with the fragment parsing of the previous one. Tests are taken
+ * from an {@link ISpoofaxTestCaseStream}, so the first tests of a test suite are run while its later tests are still
+ * being built.
+ *
+ * The outcome of each test suite is handed to an {@link ISuiteRunHandler} on the calling thread, in the order of the
+ * test suites. When the pipeline is sequential, the handler also receives each test as it starts and finishes. The
+ * sequential pipeline builds all tests of a test suite before it runs the first one, so a test suite whose extraction
+ * fails has none of its tests passed to the handler, and none of them run.
+ *
+ * Optionally, a {@link SuiteResultStore} is consulted right after reading a test suite. Test suites that passed before
+ * are then not extracted nor run, and test suites that pass are added to the store.
+ *
+ * Optionally, only the tests selected by a {@link TestFilter} are run. Test suites without any selected tests
+ * according to their {@link SuiteIndexCache index} are then not even read.
+ *
+ * Test suites can opt in to analyzing all their fragments together, see {@link #setSharedAnalysis}.
+ *
+ * When the {@link PrefetchingFragmentParser} is enabled, the fragments of each test are parsed ahead of time as soon as
+ * the test is built, including the output fragments that are otherwise only parsed while evaluating the test.
+ */
+public class SPTPipeline {
+    private static final ILogger logger = LoggerUtils.logger(SPTPipeline.class);
+
+    private final ISpoofaxInputUnitService unitService;
+    private final ISpoofaxTestCaseExtractor extractor;
+    private final ISpoofaxTestCaseRunner runner;
+    private final SuiteIndexCache indexCache;
+    private final PrefetchingFragmentParser prefetcher;
+
+    private volatile @Nullable Pattern sharedAnalysis;
+
+
+    @Inject public SPTPipeline(ISpoofaxInputUnitService unitService, ISpoofaxTestCaseExtractor extractor,
+        ISpoofaxTestCaseRunner runner, SuiteIndexCache indexCache, PrefetchingFragmentParser prefetcher) {
+        this.unitService = unitService;
+        this.extractor = extractor;
+        this.runner = runner;
+        this.indexCache = indexCache;
+        this.prefetcher = prefetcher;
+    }
+
+
+    /**
+     * Analyze the fragments of test suites whose module name matches the given pattern together, with
+     * {@link ISpoofaxTestCaseRunner#runShared}, instead of each fragment in a context of its own.
+     *
+     * @param suites
+     *            matches the module names of the test suites that opt in, or null to analyze every fragment on its own.
+     */
+    public void setSharedAnalysis(@Nullable Pattern suites) {
+        this.sharedAnalysis = suites;
+    }
+
+
+    /**
+     * Run all tests of the given test suites.
+     *
+     * @param project
+     *            the project containing the test suites.
+     * @param testSuites
+     *            the files of the test suites.
+     * @param spt
+     *            the SPT language, used to extract the tests.
+     * @param lut
+     *            the language under test.
+     * @param fragmentConfig
+     *            the configuration for parsing fragments. If null, the start symbol of each test suite is used, if it
+     *            has one.
+     * @param config
+     *            the parallelism of the stages.
+     * @param handler
+     *            receives the outcome of each test suite.
+     */
+    public void run(IProject project, Iterable<FileObject> testSuites, ILanguageImpl spt, ILanguageImpl lut,
+        @Nullable ISpoofaxFragmentParserConfig fragmentConfig, SPTPipelineConfig config, ISuiteRunHandler handler)
+        throws MetaborgException {
+        run(project, testSuites, spt, lut, fragmentConfig, config, null, handler);
+    }
+
+    /**
+     * Run all tests of the given test suites that did not pass before according to the given store.
+     *
+     * @param store
+     *            the store of test suites that passed before, or null to run all test suites.
+     * @see #run(IProject, Iterable, ILanguageImpl, ILanguageImpl, ISpoofaxFragmentParserConfig, SPTPipelineConfig,
+     *      ISuiteRunHandler)
+     */
+    public void run(IProject project, Iterable<FileObject> testSuites, ILanguageImpl spt, ILanguageImpl lut,
+        @Nullable ISpoofaxFragmentParserConfig fragmentConfig, SPTPipelineConfig config,
+        @Nullable SuiteResultStore store, ISuiteRunHandler handler) throws MetaborgException {
+        run(project, testSuites, spt, lut, fragmentConfig, config, store, null, handler);
+    }
+
+    /**
+     * Run the tests of the given test suites that are selected by the given filter.
+     *
+     * @param filter
+     *            selects the tests to run, or null to run all tests. When a filter is given, the store is not used, as
+     *            it only knows about test suites of which all tests were run.
+     * @see #run(IProject, Iterable, ILanguageImpl, ILanguageImpl, ISpoofaxFragmentParserConfig, SPTPipelineConfig,
+     *      SuiteResultStore, ISuiteRunHandler)
+     */
+    public void run(IProject project, Iterable<FileObject> testSuites, ILanguageImpl spt, ILanguageImpl lut,
+        @Nullable ISpoofaxFragmentParserConfig fragmentConfig, SPTPipelineConfig config,
+        @Nullable SuiteResultStore store, @Nullable TestFilter filter, ISuiteRunHandler handler)
+        throws MetaborgException {
+        if(filter != null) {
+            store = null;
+            testSuites = Iterables.filter(testSuites, testSuite -> selects(filter, testSuite));
+        }
+        if(config.isSequential()) {
+            for(FileObject testSuite : testSuites) {
+                final Extraction extraction = extract(project, read(testSuite, store), spt, lut, fragmentConfig, store);
+                handler.handle(runTests(project, extraction, lut, store, filter, handler));
+            }
+            return;
+        }
+
+        logger.debug("Running test suites in a pipeline with {}", config);
+        final Stages stages = new Stages(config);
+        try {
+            final Iterator<FileObject> it = testSuites.iterator();
+            final Deque<CompletableFuture<SuiteRun>> inFlight = new ArrayDeque<>();
+            while(it.hasNext() || !inFlight.isEmpty()) {
+                while(it.hasNext() && inFlight.size() < config.capacity()) {
+                    inFlight.add(submit(project, it.next(), spt, lut, fragmentConfig, store, filter, stages));
+                }
+                handler.handle(await(inFlight.poll()));
+            }
+        } finally {
+            stages.shutdown();
+        }
+    }
+
+    private CompletableFuture<SuiteRun> submit(IProject project, FileObject testSuite, ILanguageImpl spt,
+        ILanguageImpl lut, @Nullable ISpoofaxFragmentParserConfig fragmentConfig, @Nullable SuiteResultStore store,
+        @Nullable TestFilter filter, Stages stages) {
+        // @formatter:off
+        return CompletableFuture
+            .supplyAsync(() -> read(testSuite, store), stages.read)
+            .thenApplyAsync(text -> extract(project, text, spt, lut, fragmentConfig, store), stages.extract)
+            .thenCompose(extraction -> runTests(project, extraction, lut, store, filter, stages));
+        // @formatter:on
+    }
+
+    private CompletableFuture<SuiteRun> runTests(IProject project, Extraction extraction, ILanguageImpl lut,
+        @Nullable SuiteResultStore store, @Nullable TestFilter filter, Stages stages) {
+        if(extraction.readFailure != null) {
+            return CompletableFuture.completedFuture(new SuiteRun(extraction.testSuite, extraction.readFailure));
+        }
+        if(extraction.storedSuite != null) {
+            return CompletableFuture.completedFuture(new SuiteRun(extraction.testSuite, extraction.storedSuite));
+        }
+        final ISpoofaxTestCaseStream stream = extraction.stream;
+        final ISpoofaxFragmentParserConfig cfg = extraction.fragmentConfig;
+        if(!stream.getHeaders().isSuccessful()) {
+            return CompletableFuture.completedFuture(notRun(extraction));
+        }
+
+        if(sharesAnalysis(stream)) {
+            final List<ITestCase> all = Lists.newArrayList(stream);
+            final List<ITestCase> selected = select(all, filter);
+            // @formatter:off
+            return CompletableFuture
+                .supplyAsync(() -> runner.runShared(project, selected, lut, cfg), stages.evaluate)
+                .thenApply(results -> finish(extraction, all, results, store));
+            // @formatter:on
+        }
+
+        // tests are built as they are taken from the stream, so the first tests run while later ones are being built
+        final List<ITestCase> all = new ArrayList<>(stream.size());
+        final List<CompletableFuture<ISpoofaxTestResult>> tests = new ArrayList<>(stream.size());
+        while(stream.hasNext()) {
+            final ITestCase extracted = stream.next();
+            all.add(extracted);
+            if(filter != null && !filter.selects(extracted.getDescription())) {
+                continue;
+            }
+            // look up the evaluators once, instead of for the cache key, the required phase, and the evaluation
+            final ITestCase test = runner.plan(extracted, lut);
+            prefetcher.prefetch(Collections.singletonList(test), lut, cfg);
+            // @formatter:off
+            tests.add(CompletableFuture
+                .supplyAsync(() -> parse(test, lut, cfg), stages.parse)
+                .thenApplyAsync(parsed -> parsed.cached != null
+                    ? parsed.cached : runner.run(project, test, parsed.parseResult, lut, null, cfg), stages.evaluate));
+            // @formatter:on
+        }
+        return CompletableFuture.allOf(tests.toArray(new CompletableFuture<?>[tests.size()])).thenApply(v -> {
+            final List<ISpoofaxTestResult> results = new ArrayList<>(tests.size());
+            for(CompletableFuture<ISpoofaxTestResult> test : tests) {
+                results.add(test.join());
+            }
+            // e.g. the fragments of tests whose result was cached
+            prefetcher.discard(all);
+            return finish(extraction, all, results, store);
+        });
+    }
+
+    /**
+     * Run the tests of an extracted test suite on the calling thread, one at a time, and pass them to the handler as
+     * they start and finish.
+     */
+    private SuiteRun runTests(IProject project, Extraction extraction, ILanguageImpl lut,
+        @Nullable SuiteResultStore store, @Nullable TestFilter filter, ISuiteRunHandler handler) {
+        if(extraction.readFailure != null) {
+            return new SuiteRun(extraction.testSuite, extraction.readFailure);
+        }
+        if(extraction.storedSuite != null) {
+            return new SuiteRun(extraction.testSuite, extraction.storedSuite);
+        }
+        final ISpoofaxTestCaseStream stream = extraction.stream;
+        final ISpoofaxFragmentParserConfig cfg = extraction.fragmentConfig;
+        if(!stream.getHeaders().isSuccessful()) {
+            return notRun(extraction);
+        }
+        // a test that was passed to the handler can't be taken back, so only start once all tests were built
+        final List<ITestCase> all = Lists.newArrayList(stream);
+        final ISpoofaxTestCaseExtractionResult result = stream.toResult(all);
+        if(!result.isSuccessful()) {
+            return new SuiteRun(extraction.testSuite, result, cfg, Collections.<ISpoofaxTestResult>emptyList());
+        }
+        if(sharesAnalysis(stream)) {
+            return ran(extraction, result, runner.runShared(project, select(all, filter), lut, cfg), store);
+        }
+        handler.suiteStarted(extraction.testSuite, result.getName());
+        final SuiteExecutionPlan plan = runner.plan(select(all, filter), lut, cfg);
+        prefetcher.prefetch(plan.getTests(), lut, cfg);
+        try {
+            final List<ISpoofaxTestResult> results = new ArrayList<>(plan.getTests().size());
+            for(ITestCase test : plan.getTests()) {
+                results.add(runTest(project, test, lut, cfg, handler));
+            }
+            return ran(extraction, result, results, store);
+        } finally {
+            prefetcher.discard(plan.getTests());
+        }
+    }
+
+    private ISpoofaxTestResult runTest(IProject project, ITestCase test, ILanguageImpl lut,
+        @Nullable ISpoofaxFragmentParserConfig cfg, ISuiteRunHandler handler) {
+        handler.testStarted(test);
+        final ISpoofaxTestResult result = runner.run(project, test, lut, null, cfg);
+        handler.testFinished(result);
+        return result;
+    }
+
+    /**
+     * The run of a test suite whose selected tests were all run. If it turns out that the extraction of some test
+     * failed, the results are dropped, just like no tests are run when {@link ISpoofaxTestCaseExtractor#extract} fails.
+     *
+     * @param tests
+     *            all tests of the test suite, including those that were not selected, so the extraction result is
+     *            complete.
+     */
+    private static SuiteRun finish(Extraction extraction, List<ITestCase> tests, List<ISpoofaxTestResult> results,
+        @Nullable SuiteResultStore store) {
+        final ISpoofaxTestCaseExtractionResult result = extraction.stream.toResult(tests);
+        if(!result.isSuccessful()) {
+            return new SuiteRun(extraction.testSuite, result, extraction.fragmentConfig,
+                Collections.<ISpoofaxTestResult>emptyList());
+        }
+        return ran(extraction, result, results, store);
+    }
+
+    /**
+     * The run of a test suite that was extracted successfully, whose selected tests were all run.
+     */
+    private static SuiteRun ran(Extraction extraction, ISpoofaxTestCaseExtractionResult result,
+        List<ISpoofaxTestResult> results, @Nullable SuiteResultStore store) {
+        if(store != null) {
+            store.put(extraction.storeKey, result.getName(), results);
+        }
+        return new SuiteRun(extraction.testSuite, result, extraction.fragmentConfig, results);
+    }
+
+    /**
+     * The run of a test suite whose headers could not be extracted, so none of its tests are run.
+     */
+    private static SuiteRun notRun(Extraction extraction) {
+        // still build the tests, for the messages about them
+        final List<ITestCase> tests = Lists.newArrayList(extraction.stream);
+        return new SuiteRun(extraction.testSuite, extraction.stream.toResult(tests), extraction.fragmentConfig,
+            Collections.<ISpoofaxTestResult>emptyList());
+    }
+
+    private boolean sharesAnalysis(ISpoofaxTestCaseStream stream) {
+        final Pattern suites = sharedAnalysis;
+        final String name = stream.getHeaders().getName();
+        return suites != null && name != null && suites.matcher(name).matches();
+    }
+
+    private static List<ITestCase> select(List<ITestCase> tests, @Nullable TestFilter filter) {
+        if(filter == null) {
+            return tests;
+        }
+        final List<ITestCase> selected = new ArrayList<>();
+        for(ITestCase test : tests) {
+            if(filter.selects(test.getDescription())) {
+                selected.add(test);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Whether the filter selects any test of the given test suite, according to its index. Test suites that cannot be
+     * indexed are selected, so reading them fails later on and is reported.
+     */
+    private boolean selects(TestFilter filter, FileObject testSuite) {
+        try {
+            if(filter.selects(indexCache.index(testSuite))) {
+                return true;
+            }
+            logger.debug("Skipping {}, none of its tests match {}", testSuite, filter);
+            return false;
+        } catch(IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Parse the fragment of the test, unless there is a cached result for the test.
+     */
+    private ParsedTest parse(ITestCase test, ILanguageImpl lut, @Nullable ISpoofaxFragmentParserConfig cfg) {
+        final ISpoofaxTestResult cached = runner.cachedResult(test, lut, null, cfg);
+        if(cached != null) {
+            return new ParsedTest(cached, null);
+        }
+        return new ParsedTest(null, runner.parse(test, lut, null, cfg));
+    }
+
+    private SuiteText read(FileObject testSuite, @Nullable SuiteResultStore store) {
+        logger.debug("Reading {}", testSuite);
+        try(InputStream in = testSuite.getContent().getInputStream()) {
+            final String text = IOUtils.toString(in, StandardCharsets.UTF_8);
+            return new SuiteText(testSuite, text, store == null ? null : store.key(text), null);
+        } catch(IOException e) {
+            return new SuiteText(testSuite, null, null, e);
+        }
+    }
+
+    private Extraction extract(IProject project, SuiteText text, ILanguageImpl spt, ILanguageImpl lut,
+        @Nullable ISpoofaxFragmentParserConfig fragmentConfig, @Nullable SuiteResultStore store) {
+        if(text.readFailure != null) {
+            return new Extraction(text.testSuite, text.readFailure, null, null, null, null);
+        }
+        final StoredSuite storedSuite = store == null ? null : store.get(text.storeKey);
+        if(storedSuite != null) {
+            logger.debug("Skipping {}, it passed before and did not change", text.testSuite);
+            return new Extraction(text.testSuite, null, null, null, text.storeKey, storedSuite);
+        }
+        final ISpoofaxInputUnit input = unitService.inputUnit(text.testSuite, text.text, spt, null);
+        final ISpoofaxTestCaseStream stream = extractor.extractStream(input, project);
+
+        // use the start symbol of the test suite if no overriding configuration has been given
+        final String startSymbol = stream.getHeaders().getStartSymbol();
+        ISpoofaxFragmentParserConfig moduleFragmentConfig = fragmentConfig;
+        if(startSymbol != null && moduleFragmentConfig == null) {
+            moduleFragmentConfig = new SpoofaxFragmentParserConfig();
+            moduleFragmentConfig.putConfig(lut, new JSGLRParserConfiguration(startSymbol));
+        }
+        return new Extraction(text.testSuite, null, stream, moduleFragmentConfig, text.storeKey, null);
+    }
+
+    private static SuiteRun await(CompletableFuture<SuiteRun> future) throws MetaborgException {
+        try {
+            return future.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MetaborgException("Interrupted while running tests", e);
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            while(cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new MetaborgException("Running a test suite failed unexpectedly", cause);
+        }
+    }
+
+
+    private static final class SuiteText {
+        private final FileObject testSuite;
+        private final @Nullable String text;
+        private final @Nullable String storeKey;
+        private final @Nullable IOException readFailure;
+
+        private SuiteText(FileObject testSuite, @Nullable String text, @Nullable String storeKey,
+            @Nullable IOException readFailure) {
+            this.testSuite = testSuite;
+            this.text = text;
+            this.storeKey = storeKey;
+            this.readFailure = readFailure;
+        }
+    }
+
+    private static final class Extraction {
+        private final FileObject testSuite;
+        private final @Nullable IOException readFailure;
+        private final ISpoofaxTestCaseStream stream;
+        private final @Nullable ISpoofaxFragmentParserConfig fragmentConfig;
+        private final @Nullable String storeKey;
+        private final @Nullable StoredSuite storedSuite;
+
+        private Extraction(FileObject testSuite, @Nullable IOException readFailure,
+            ISpoofaxTestCaseStream stream, @Nullable ISpoofaxFragmentParserConfig fragmentConfig,
+            @Nullable String storeKey, @Nullable StoredSuite storedSuite) {
+            this.testSuite = testSuite;
+            this.readFailure = readFailure;
+            this.stream = stream;
+            this.fragmentConfig = fragmentConfig;
+            this.storeKey = storeKey;
+            this.storedSuite = storedSuite;
+        }
+    }
+
+    private static final class ParsedTest {
+        private final @Nullable ISpoofaxTestResult cached;
+        private final @Nullable ISpoofaxParseUnit parseResult;
+
+        private ParsedTest(@Nullable ISpoofaxTestResult cached, @Nullable ISpoofaxParseUnit parseResult) {
+            this.cached = cached;
+            this.parseResult = parseResult;
+        }
+    }
+
+    private static final class Stages {
+        private final ExecutorService read;
+        private final ExecutorService extract;
+        private final ExecutorService parse;
+        private final ExecutorService evaluate;
+
+        private Stages(SPTPipelineConfig config) {
+            this.read = stage("read", config.readers(), config.capacity());
+            this.extract = stage("extract", config.extractors(), config.capacity());
+            this.parse = stage("parse", config.parsers(), config.capacity() * config.parsers());
+            this.evaluate = stage("evaluate", config.evaluators(), config.capacity() * config.evaluators());
+        }
+
+        private static ExecutorService stage(String name, int threads, int capacity) {
+            return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(capacity),
+                new ThreadFactoryBuilder().setNameFormat("spt-" + name + "-%d").setDaemon(true).build(),
+                Stages::handOff);
+        }
+
+        /**
+         * Called when the queue of a stage is full. The submitting thread (i.e. the previous stage) waits until there
+         * is room. Stages only hand work to later stages, so this can't deadlock. A task that can't be queued is
+         * rejected, which completes its future exceptionally, so whoever waits for it does not wait forever.
+         */
+        private static void handOff(Runnable task, ThreadPoolExecutor stage) {
+            if(stage.isShutdown()) {
+                throw new RejectedExecutionException("The pipeline stage was shut down");
+            }
+            try {
+                stage.getQueue().put(task);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for a pipeline stage", e);
+            }
+            // the stage may have shut down while waiting, after which nobody takes the task from the queue
+            if(stage.isShutdown() && stage.getQueue().remove(task)) {
+                throw new RejectedExecutionException("The pipeline stage was shut down");
+            }
+        }
+
+        /**
+         * Let the stages finish the tasks they were given, in the order of the stages, so the tasks that are still
+         * running can hand their work to the next stage. Only when interrupted, the remaining tasks are dropped.
+         */
+        private void shutdown() {
+            final List<ExecutorService> stages = Arrays.asList(read, extract, parse, evaluate);
+            for(int i = 0; i < stages.size(); i++) {
+                stages.get(i).shutdown();
+                try {
+                    stages.get(i).awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    for(ExecutorService stage : stages.subList(i, stages.size())) {
+                        stage.shutdownNow();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.metaborg.spt.core.pipeline;
+
+/**
+ * The amount of parallelism of each stage of the {@link SPTPipeline}.
+ */
+public class SPTPipelineConfig {
+
+    private final int readers;
+    private final int extractors;
+    private final int parsers;
+    private final int evaluators;
+    private final int capacity;
+
+    /**
+     * @param readers
+     *            the number of threads reading test suites.
+     * @param extractors
+     *            the number of threads extracting tests from test suites.
+     * @param parsers
+     *            the number of threads parsing the fragments of tests.
+     * @param evaluators
+     *            the number of threads evaluating test expectations.
+     * @param capacity
+     *            the capacity of the queue in front of each stage, which is also the maximum number of test suites that
+     *            are in the pipeline at the same time. A stage that hands work to a full stage waits until the next
+     *            stage has caught up.
+     */
+    public SPTPipelineConfig(int readers, int extractors, int parsers, int evaluators, int capacity) {
+        if(readers < 1 || extractors < 1 || parsers < 1 || evaluators < 1 || capacity < 1) {
+            throw new IllegalArgumentException("The parallelism and capacity of a pipeline stage should be positive");
+        }
+        this.readers = readers;
+        this.extractors = extractors;
+        this.parsers = parsers;
+        this.evaluators = evaluators;
+        this.capacity = capacity;
+    }
+
+    /**
+     * A configuration that runs everything on the calling thread, one test suite and test at a time.
+     */
+    public static SPTPipelineConfig sequential() {
+        return new SPTPipelineConfig(1, 1, 1, 1, 1);
+    }
+
+    /**
+     * A configuration that processes the given number of test suites, and tests of each test suite, concurrently.
+     *
+     * Reading files is cheap, so there is just one reader.
+     */
+    public static SPTPipelineConfig forJobs(int jobs, int testJobs) {
+        final int suites = Math.max(1, jobs);
+        final int tests = suites * Math.max(1, testJobs);
+        return new SPTPipelineConfig(1, suites, tests, tests, 2 * suites);
+    }
+
+    public int readers() {
+        return readers;
+    }
+
+    public int extractors() {
+        return extractors;
+    }
+
+    public int parsers() {
+        return parsers;
+    }
+
+    public int evaluators() {
+        return evaluators;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * If every stage has a single thread, in which case the pipeline runs on the calling thread.
+     */
+    public boolean isSequential() {
+        return readers == 1 && extractors == 1 && parsers == 1 && evaluators == 1;
+    }
+
+    @Override public String toString() {
+        return "read: " + readers + ", extract: " + extractors + ", parse: " + parsers + ", evaluate: " + evaluators
+            + ", capacity: " + capacity;
+    }
+}
@@ -0,0 +1,32 @@
+package org.metaborg.spt.core.pipeline;
+
+import java.util.List;
+
+/**
+ * The outcome of an earlier run of a test suite, as kept by a {@link SuiteResultStore}. Only test suites of which all
+ * tests passed are stored.
+ */
+public class StoredSuite {
+
+    private final String name;
+    private final List<String> tests;
+
+    public StoredSuite(String name, List<String> tests) {
+        this.name = name;
+        this.tests = tests;
+    }
+
+    /**
+     * The name of the test suite.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The descriptions of the tests of the test suite, which all passed, in the order of the test suite.
+     */
+    public List<String> getTests() {
+        return tests;
+    }
+}
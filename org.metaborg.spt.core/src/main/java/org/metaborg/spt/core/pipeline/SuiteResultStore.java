@@ -0,0 +1,116 @@
+package org.metaborg.spt.core.pipeline;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.metaborg.spt.core.run.ISpoofaxTestResult;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+
+/**
+ * Remembers which test suites passed, so they don't have to be run again while they, and the languages they are tested
+ * against, stay the same.
+ *
+ * A test suite is identified by a hash of its text and a fingerprint of the languages. Each passing test suite is
+ * stored in its own file in the store directory, named after that hash. The file holds the name of the test suite on
+ * the first line, followed by the description of each test on its own line. Descriptions can't contain line breaks, so
+ * this needs no escaping.
+ *
+ * Failures to read or write the store are logged and otherwise ignored; at worst a test suite is run again.
+ */
+public class SuiteResultStore {
+    private static final ILogger logger = LoggerUtils.logger(SuiteResultStore.class);
+
+    private final Path directory;
+    private final String languageFingerprint;
+    private final boolean reuse;
+
+
+    /**
+     * @param directory
+     *            the directory that holds the store. Created when something is stored.
+     * @param languageFingerprint
+     *            a string that changes whenever any of the languages used to run the tests change. Stored results of
+     *            a different fingerprint are never used.
+     * @param reuse
+     *            whether stored results may be used instead of running a test suite. If false, all test suites are run,
+     *            but the store is still updated with the ones that pass.
+     */
+    public SuiteResultStore(Path directory, String languageFingerprint, boolean reuse) {
+        this.directory = directory;
+        this.languageFingerprint = languageFingerprint;
+        this.reuse = reuse;
+    }
+
+
+    /**
+     * The key of a test suite with the given text.
+     */
+    public String key(String text) {
+        // @formatter:off
+        return Hashing.sha256().newHasher()
+            .putString(languageFingerprint, StandardCharsets.UTF_8)
+            .putByte((byte) 0)
+            .putString(text, StandardCharsets.UTF_8)
+            .hash().toString();
+        // @formatter:on
+    }
+
+    /**
+     * The stored outcome for the test suite with the given key, or null if it did not pass before or stored results may
+     * not be reused.
+     */
+    public @Nullable StoredSuite get(String key) {
+        if(!reuse) {
+            return null;
+        }
+        final Path file = directory.resolve(key);
+        if(!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if(lines.isEmpty()) {
+                return null;
+            }
+            return new StoredSuite(lines.get(0), Lists.newArrayList(lines.subList(1, lines.size())));
+        } catch(IOException e) {
+            logger.warn("Unable to read stored test results from {}", e, file);
+            return null;
+        }
+    }
+
+    /**
+     * Store the outcome of the test suite with the given key, if all of its tests passed.
+     */
+    public void put(String key, String name, List<ISpoofaxTestResult> results) {
+        final List<String> lines = Lists.newArrayListWithCapacity(results.size() + 1);
+        lines.add(name);
+        for(ISpoofaxTestResult result : results) {
+            if(!result.isSuccessful()) {
+                return;
+            }
+            lines.add(result.getTest().getDescription());
+        }
+
+        final Path file = directory.resolve(key);
+        try {
+            Files.createDirectories(directory);
+            // write to a temporary file first, so a concurrent or interrupted run never sees half a file
+            final Path tmp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            logger.warn("Unable to store test results in {}", e, file);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.metaborg.spt.core.pipeline;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.spt.core.extract.ISpoofaxTestCaseExtractionResult;
+import org.metaborg.spt.core.run.ISpoofaxFragmentParserConfig;
+import org.metaborg.spt.core.run.ISpoofaxTestResult;
+
+/**
+ * The outcome of taking a single test suite through the {@link SPTPipeline}.
+ */
+public class SuiteRun {
+
+    private final FileObject testSuite;
+    private final @Nullable IOException readFailure;
+    private final @Nullable ISpoofaxTestCaseExtractionResult extractionResult;
+    private final @Nullable ISpoofaxFragmentParserConfig fragmentConfig;
+    private final List<ISpoofaxTestResult> results;
+    private final @Nullable StoredSuite storedSuite;
+
+    /**
+     * A run of a test suite that could not be read.
+     */
+    public SuiteRun(FileObject testSuite, IOException readFailure) {
+        this.testSuite = testSuite;
+        this.readFailure = readFailure;
+        this.extractionResult = null;
+        this.fragmentConfig = null;
+        this.results = Collections.emptyList();
+        this.storedSuite = null;
+    }
+
+    /**
+     * A run of a test suite that was not run, because it passed before and nothing changed since.
+     */
+    public SuiteRun(FileObject testSuite, StoredSuite storedSuite) {
+        this.testSuite = testSuite;
+        this.readFailure = null;
+        this.extractionResult = null;
+        this.fragmentConfig = null;
+        this.results = Collections.emptyList();
+        this.storedSuite = storedSuite;
+    }
+
+    /**
+     * A run of a test suite that was extracted.
+     *
+     * @param results
+     *            the results of the tests, in the order of the extracted tests. Empty if the extraction failed.
+     */
+    public SuiteRun(FileObject testSuite, ISpoofaxTestCaseExtractionResult extractionResult,
+        @Nullable ISpoofaxFragmentParserConfig fragmentConfig, List<ISpoofaxTestResult> results) {
+        this.testSuite = testSuite;
+        this.readFailure = null;
+        this.extractionResult = extractionResult;
+        this.fragmentConfig = fragmentConfig;
+        this.results = results;
+        this.storedSuite = null;
+    }
+
+    /**
+     * The file of the test suite.
+     */
+    public FileObject getTestSuite() {
+        return testSuite;
+    }
+
+    /**
+     * The reason why the test suite could not be read, or null if it was read.
+     */
+    public @Nullable IOException getReadFailure() {
+        return readFailure;
+    }
+
+    /**
+     * The result of extracting the tests from the test suite, or null if it could not be read or was not run.
+     */
+    public @Nullable ISpoofaxTestCaseExtractionResult getExtractionResult() {
+        return extractionResult;
+    }
+
+    /**
+     * The fragment parser configuration that was used to run the tests.
+     */
+    public @Nullable ISpoofaxFragmentParserConfig getFragmentConfig() {
+        return fragmentConfig;
+    }
+
+    /**
+     * The stored outcome of an earlier run, if the test suite was not run because it passed before. Null otherwise.
+     */
+    public @Nullable StoredSuite getStoredSuite() {
+        return storedSuite;
+    }
+
+    /**
+     * The results of the tests, in the order in which they appear in the test suite.
+     */
+    public List<ISpoofaxTestResult> getResults() {
+        return results;
+    }
+}
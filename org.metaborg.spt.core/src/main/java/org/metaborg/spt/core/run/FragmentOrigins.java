@@ -0,0 +1,328 @@
+package org.metaborg.spt.core.run;
+
+import java.util.*;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.messages.IMessage;
+import org.metaborg.core.source.ISourceRegion;
+import org.metaborg.mbt.core.model.FragmentOffsetIndex;
+import org.metaborg.mbt.core.model.expectations.MessageUtil;
+import org.metaborg.spoofax.core.unit.*;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+import org.spoofax.interpreter.terms.*;
+import org.spoofax.jsglr.client.imploder.*;
+import org.spoofax.terms.visitor.AStrategoTermVisitor;
+import org.spoofax.terms.visitor.StrategoTermVisitee;
+
+/**
+ * Moves the origins of the parse result of a fragment from the offsets of the parsed text to the offsets of the test
+ * suite, by replacing the tokens of the AST's tokenizer with tokens at the new offsets.
+ */
+final class FragmentOrigins {
+
+    private static final ILogger logger = LoggerUtils.logger(FragmentOrigins.class);
+
+    private FragmentOrigins() {
+    }
+
+    /**
+     * Remap the origins of the given parse result, and the regions of its messages.
+     *
+     * @param offsets
+     *            the translation from offsets in the parsed text to offsets in the test suite.
+     * @param keepUnchangedMessages
+     *            whether to keep the messages of which the region did not change. If false, they are dropped.
+     * @param copyFactory
+     *            if not null, the AST is copied with this factory and only the copy gets the new origins. Needed when
+     *            the parser may share the nodes of the AST with later parse results, as an incremental parser does.
+     * @param resource
+     *            the resource that the new origins refer to, or null for the source of the input.
+     * @return the remapped parse result, or the given one if it has no AST or tokenizer to remap.
+     */
+    static ISpoofaxParseUnit remap(ISpoofaxUnitService unitService, ISpoofaxInputUnit input, ISpoofaxParseUnit p,
+        FragmentOffsetIndex offsets, boolean keepUnchangedMessages, @Nullable ITermFactory copyFactory,
+        @Nullable FileObject resource) {
+        // short circuit if there was no result
+        if(!p.valid()) {
+            return p;
+        }
+        IStrategoTerm ast = p.ast();
+        if(ast == null) {
+            return p;
+        }
+
+        // start changing the offsets by changing the offsets of the tokens
+        ITokens originalTokens = ImploderAttachment.getTokenizer(ast);
+        if(originalTokens == null) {
+            logger.warn("Found a fragment with no tokenizer! Can't update the offsets. \"{}\"", offsets.text());
+            return p;
+        }
+
+        // adjust the tokens for each piece of the fragment
+        // this makes NO assumptions about the order of the startOffsets of the token stream, but it is fastest when
+        // they are ordered, as it then walks the tokens and the pieces in lockstep
+        // it DOES assume that the pieces of text of the fragment are ordered based on the correct order of text
+        final int tokenCount = originalTokens.getTokenCount();
+        int[] startOffsets = new int[tokenCount];
+        int[] endOffsets = new int[tokenCount];
+        boolean anyMapped = false;
+        IToken eof = null;
+        int index = 0;
+        int hint = 0;
+        for(IToken token : originalTokens.allTokens()) {
+            if(index == startOffsets.length) {
+                // the token count was off, which should not happen, but we don't want to fail on it
+                startOffsets = Arrays.copyOf(startOffsets, index * 2 + 1);
+                endOffsets = Arrays.copyOf(endOffsets, index * 2 + 1);
+            }
+            final int startOffset = token.getStartOffset();
+            final int piece = offsets.pieceAtLocal(startOffset, hint);
+            if(piece >= 0) {
+                final int adjustment = offsets.adjustment(piece);
+                startOffsets[index] = startOffset + adjustment;
+                endOffsets[index] = token.getEndOffset() + adjustment;
+                anyMapped = true;
+                hint = piece;
+            } else {
+                startOffsets[index] = startOffset;
+                endOffsets[index] = token.getEndOffset();
+            }
+            if(token.getKind() == IToken.Kind.TK_EOF) {
+                eof = token;
+            }
+            index++;
+        }
+
+        // Only post process tokens when there are tokens, and when there is an end-of-file token.
+        if(anyMapped && eof != null) {
+            // the parse result may be reused for a fragment of another resource, see ParseResultCache
+            final FileObject origin = resource == null ? input.source() : resource;
+            final String filename = origin == null ? originalTokens.getFilename() : origin.getName().getURI();
+            MappingTokenizer newTokenizer = new MappingTokenizer(originalTokens, filename);
+            index = 0;
+            for(IToken token : originalTokens.allTokens()) {
+                if(token.getKind() == IToken.Kind.TK_EOF) {
+                    int lastOffset = newTokenizer.tokens.get(newTokenizer.tokens.size() - 1).getEndOffset();
+                    newTokenizer.addToken(lastOffset + 1, lastOffset, eof);
+                } else {
+                    newTokenizer.addToken(startOffsets[index], endOffsets[index], token);
+                }
+                index++;
+            }
+            ast = newTokenizer.overwriteAttachments(ast, copyFactory);
+        }
+
+        // now the offsets of the tokens are updated
+        // changing the state like this should update the offsets of the ast nodes automatically
+        // but next, we need to update the offsets of the parse messages, using the same table
+        return unitService.parseUnit(input, new ParseContrib(p.valid(), p.success(), p.isAmbiguous(), ast,
+            moveMessages(p, offsets, keepUnchangedMessages), p.duration()));
+    }
+
+    /**
+     * Remap only the regions of the messages of the given parse result, and keep the AST as it is.
+     *
+     * @see #remap(ISpoofaxUnitService, ISpoofaxInputUnit, ISpoofaxParseUnit, FragmentOffsetIndex, boolean,
+     *      ITermFactory, FileObject)
+     */
+    static ISpoofaxParseUnit remapMessages(ISpoofaxUnitService unitService, ISpoofaxInputUnit input,
+        ISpoofaxParseUnit p, FragmentOffsetIndex offsets, boolean keepUnchangedMessages) {
+        if(!p.valid() || p.ast() == null) {
+            return p;
+        }
+        return unitService.parseUnit(input, new ParseContrib(p.valid(), p.success(), p.isAmbiguous(), p.ast(),
+            moveMessages(p, offsets, keepUnchangedMessages), p.duration()));
+    }
+
+    private static List<IMessage> moveMessages(ISpoofaxParseUnit p, FragmentOffsetIndex offsets,
+        boolean keepUnchangedMessages) {
+        List<IMessage> changedMessages = new LinkedList<>();
+        for(IMessage m : p.messages()) {
+            ISourceRegion region = m.region();
+            if(region == null) {
+                continue;
+            }
+            ISourceRegion newRegion = offsets.toGlobal(region);
+            if(newRegion != region) {
+                changedMessages.add(MessageUtil.setRegion(m, newRegion));
+            } else if(keepUnchangedMessages) {
+                changedMessages.add(m);
+            }
+        }
+        return changedMessages;
+    }
+
+    private static class MappingTokenizer implements ITokens {
+
+        private final List<IToken> tokens = new ArrayList<>();
+        private final Map<IToken, IToken> oldToNewTokens = new HashMap<>();
+        private final Map<IToken, IToken> newToOldTokens = new HashMap<>();
+        private final Map<Integer, IToken> byOriginalStart = new HashMap<>();
+        private final String input;
+        private final String filename;
+
+        private MappingTokenizer(ITokens originalTokens, String filename) {
+            this.input = originalTokens.getInput();
+            this.filename = filename;
+        }
+
+        private void addToken(int startOffset, int endOffset, IToken originalToken) {
+            Token newToken = new MappedToken(this, startOffset, endOffset, originalToken);
+            newToken.setAstNode(originalToken.getAstNode());
+            tokens.add(newToken);
+            oldToNewTokens.put(originalToken, newToken);
+            newToOldTokens.put(newToken, originalToken);
+            byOriginalStart.putIfAbsent(originalToken.getStartOffset(), newToken);
+        }
+
+        /**
+         * Give the nodes of the AST attachments with the new tokens, either in place or on a copy of the AST.
+         *
+         * @return the AST with the new attachments.
+         */
+        private IStrategoTerm overwriteAttachments(IStrategoTerm ast, @Nullable ITermFactory copyFactory) {
+            if(copyFactory != null) {
+                final Map<IStrategoTerm, IStrategoTerm> copies = new IdentityHashMap<>();
+                final IStrategoTerm copy = copy(ast, copyFactory, copies);
+                // the tokens should point to the copied nodes, not to the ones that are shared with the parser
+                for(IToken token : tokens) {
+                    final IStrategoTerm node = copies.get(token.getAstNode());
+                    if(node != null) {
+                        ((Token) token).setAstNode(node);
+                    }
+                }
+                return copy;
+            }
+
+            StrategoTermVisitee.topdown(new AStrategoTermVisitor() {
+                @Override public boolean visit(IStrategoTerm term) {
+                    attach(term, ImploderAttachment.get(term), term instanceof ListImploderAttachment);
+                    return true;
+                }
+            }, ast);
+            return ast;
+        }
+
+        private IStrategoTerm copy(IStrategoTerm term, ITermFactory factory, Map<IStrategoTerm, IStrategoTerm> copies) {
+            final IStrategoTerm[] kids = new IStrategoTerm[term.getSubtermCount()];
+            for(int i = 0; i < kids.length; i++) {
+                kids[i] = copy(term.getSubterm(i), factory, copies);
+            }
+            final IStrategoList annos = term.getAnnotations();
+            final IStrategoTerm copy;
+            switch(term.getTermType()) {
+                case IStrategoTerm.APPL:
+                    copy = factory.makeAppl(((IStrategoAppl) term).getConstructor(), kids, annos);
+                    break;
+                case IStrategoTerm.LIST:
+                    copy = factory.makeList(kids, annos);
+                    break;
+                case IStrategoTerm.TUPLE:
+                    copy = factory.makeTuple(kids, annos);
+                    break;
+                case IStrategoTerm.STRING:
+                    copy = annotate(factory, factory.makeString(((IStrategoString) term).stringValue()), annos);
+                    break;
+                case IStrategoTerm.INT:
+                    copy = annotate(factory, factory.makeInt(((IStrategoInt) term).intValue()), annos);
+                    break;
+                case IStrategoTerm.REAL:
+                    copy = annotate(factory, factory.makeReal(((IStrategoReal) term).realValue()), annos);
+                    break;
+                default:
+                    // other terms are not produced by the imploder
+                    copies.put(term, term);
+                    return term;
+            }
+            final ImploderAttachment originalAttachment = ImploderAttachment.get(term);
+            if(originalAttachment != null) {
+                attach(copy, originalAttachment, term instanceof ListImploderAttachment);
+            }
+            copies.put(term, copy);
+            return copy;
+        }
+
+        private static IStrategoTerm annotate(ITermFactory factory, IStrategoTerm term, IStrategoList annos) {
+            return annos.isEmpty() ? term : factory.annotateTerm(term, annos);
+        }
+
+        private void attach(IStrategoTerm term, ImploderAttachment originalAttachment, boolean isList) {
+            ImploderAttachment.putImploderAttachment(term, isList, originalAttachment.getSort(),
+                newToken(originalAttachment.getLeftToken()), newToken(originalAttachment.getRightToken()),
+                originalAttachment.isBracket(), originalAttachment.isCompletion(),
+                originalAttachment.isNestedCompletion(), originalAttachment.isSinglePlaceholderCompletion());
+
+            ImploderAttachment newAttachment = ImploderAttachment.get(term);
+            originalAttachment.getInjections().forEach(newAttachment::pushInjection);
+        }
+
+        /**
+         * The new token for the given token of an AST node.
+         *
+         * For incremental parsing, reused AST nodes may already have updated ImploderAttachments with the MappedTokens
+         * of an earlier version, which may in turn have been mapped from MappedTokens. In this case, we should get the
+         * original token to index the oldToNewTokens Map, because the offsets might be updated since the previous
+         * version. If the original token is not part of this version, we use the token of this version that starts at
+         * the same offset in the parsed text, as that is where the node was reused.
+         */
+        private IToken newToken(IToken token) {
+            IToken original = token;
+            while(original instanceof MappedToken) {
+                original = ((MappedToken) original).originalToken;
+            }
+            IToken newToken = oldToNewTokens.get(original);
+            if(newToken == null && original != null) {
+                newToken = byOriginalStart.get(original.getStartOffset());
+            }
+            return newToken == null ? token : newToken;
+        }
+
+        @Override public String getInput() {
+            return input;
+        }
+
+        @Override public int getTokenCount() {
+            return tokens.size();
+        }
+
+        @Override public IToken getTokenAtOffset(int offset) {
+            for(IToken token : tokens) {
+                if(token.getStartOffset() == offset)
+                    return token;
+            }
+            return null;
+        }
+
+        @Override public String getFilename() {
+            return filename;
+        }
+
+        @Override public String toString(IToken left, IToken right) {
+            return toString(newToOldTokens.get(left).getStartOffset(), newToOldTokens.get(right).getEndOffset());
+        }
+
+        @Override public String toString(int startOffset, int endOffset) {
+            return input.substring(startOffset, endOffset);
+        }
+
+        @Override public Iterator<IToken> iterator() {
+            return new Tokenizer.AmbiguousToNonAmbiguousIterator(allTokens());
+        }
+
+        @Override public Iterable<IToken> allTokens() {
+            return Collections.unmodifiableList(tokens);
+        }
+    }
+
+    private static class MappedToken extends Token {
+        private final IToken originalToken;
+
+        public MappedToken(ITokens tokens, int startOffset, int endOffset, IToken originalToken) {
+            super(tokens, tokens.getFilename(), -1, -1, -1, startOffset, endOffset, originalToken.getKind());
+            this.originalToken = originalToken;
+        }
+    }
+}
@@ -1,16 +1,14 @@
 package org.metaborg.spt.core.run;
 
 import com.google.inject.Inject;
+import org.metaborg.core.MetaborgException;
 import org.metaborg.core.analysis.AnalysisException;
 import org.metaborg.core.context.ContextException;
-import org.metaborg.core.context.IContextService;
 import org.metaborg.core.context.ITemporaryContext;
 import org.metaborg.core.language.ILanguage;
 import org.metaborg.core.language.ILanguageImpl;
-import org.metaborg.core.language.ILanguageService;
 import org.metaborg.core.messages.IMessage;
 import org.metaborg.core.messages.MessageFactory;
-import org.metaborg.core.source.ISourceLocation;
 import org.metaborg.core.source.ISourceRegion;
 import org.metaborg.core.syntax.ParseException;
 import org.metaborg.mbt.core.model.IFragment;
@@ -18,8 +16,8 @@ import org.metaborg.mbt.core.model.ITestCase;
 import org.metaborg.mbt.core.model.expectations.MessageUtil;
 import org.metaborg.mbt.core.run.IFragmentParserConfig;
 import org.metaborg.mbt.core.run.ITestExpectationOutputBuilder;
+import org.metaborg.mbt.core.run.TemporaryContextPool;
 import org.metaborg.spoofax.core.analysis.ISpoofaxAnalysisService;
-import org.metaborg.spoofax.core.tracing.ISpoofaxTracingService;
 import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
 import org.metaborg.spt.core.SPTUtil;
@@ -39,18 +37,16 @@ public class FragmentUtil {
     public static final String TO_PART_CONS = "ToPart";
 
     private final ISpoofaxFragmentParser fragmentParser;
-    private final ILanguageService langService;
-    private final ISpoofaxTracingService traceService;
+    private final LanguageResolver languageResolver;
     private final ISpoofaxAnalysisService analysisService;
-    private final IContextService contextService;
+    private final TemporaryContextPool contextPool;
 
-    @Inject public FragmentUtil(ISpoofaxFragmentParser fragmentParser, ILanguageService langService,
-        ISpoofaxTracingService traceService, ISpoofaxAnalysisService analysisService, IContextService contextService) {
+    @Inject public FragmentUtil(ISpoofaxFragmentParser fragmentParser, LanguageResolver languageResolver,
+        ISpoofaxAnalysisService analysisService, TemporaryContextPool contextPool) {
         this.fragmentParser = fragmentParser;
-        this.langService = langService;
-        this.traceService = traceService;
+        this.languageResolver = languageResolver;
         this.analysisService = analysisService;
-        this.contextService = contextService;
+        this.contextPool = contextPool;
     }
 
     /**
@@ -208,8 +204,7 @@ public class FragmentUtil {
      */
     public @Nullable ISourceRegion toPartLangNameRegion(IStrategoTerm toPart) {
         final IStrategoTerm langNameTerm = getToPartOptLangTerm(toPart);
-        final ISourceLocation loc = traceService.location(langNameTerm);
-        return loc == null ? null : loc.region();
+        return SPTUtil.region(langNameTerm);
     }
 
     /**
@@ -226,7 +221,14 @@ public class FragmentUtil {
      * @return the language, or null if things went wrong.
      */
     public @Nullable ILanguage getLanguage(String langName, Collection<IMessage> messages, ITestCase test) {
-        ILanguage lang = langName == null ? null : langService.getLanguage(langName);
+        final ILanguage lang;
+        try {
+            lang = langName == null ? null : languageResolver.getLanguage(langName);
+        } catch(MetaborgException e) {
+            messages.add(MessageFactory.newAnalysisError(test.getResource(), test.getDescriptionRegion(),
+                "Failed to load the languages while looking for the language " + langName, e));
+            return null;
+        }
         if(lang == null) {
             messages.add(MessageFactory.newAnalysisError(test.getResource(), test.getDescriptionRegion(),
                 "Could not find the language " + langName, null));
@@ -247,7 +249,14 @@ public class FragmentUtil {
      * @return the language, or null if things went wrong.
      */
     public @Nullable ILanguage getLanguage(String langName, ITestExpectationOutputBuilder<?, ?> outputBuilder) {
-        ILanguage lang = langName == null ? null : langService.getLanguage(langName);
+        final ILanguage lang;
+        try {
+            lang = langName == null ? null : languageResolver.getLanguage(langName);
+        } catch(MetaborgException e) {
+            outputBuilder.addAnalysisError("Failed to load the languages while looking for the language " + langName,
+                e);
+            return null;
+        }
         if(lang == null) {
             outputBuilder.addAnalysisError("Could not find the language " + langName);
             return null;
@@ -408,7 +417,9 @@ public class FragmentUtil {
             return null;
         }
 
-        try(ITemporaryContext ctx = contextService.getTemporary(test.getResource(), test.getProject(), lang)) {
+        ITemporaryContext ctx = null;
+        try {
+            ctx = contextPool.acquire(test.getResource(), test.getProject(), lang);
             ISpoofaxAnalyzeUnit a = analysisService.analyze(p, ctx).result();
             if(a.success() && a.hasAst()) {
                 return a;
@@ -426,6 +437,8 @@ public class FragmentUtil {
         } catch(AnalysisException e) {
             messages.add(MessageFactory.newAnalysisError(test.getResource(), fragment.getRegion(),
                 "Analysis of the fragment failed with an unexpected exception.", e));
+        } finally {
+            contextPool.release(ctx);
         }
         return null;
     }
@@ -458,7 +471,9 @@ public class FragmentUtil {
         }
         ITestExpectationOutputBuilder<?, ?> fragmentOutputBuilder = outputBuilder.withRegion(fragment.getRegion());
 
-        try(ITemporaryContext ctx = contextService.getTemporary(test.getResource(), test.getProject(), lang)) {
+        ITemporaryContext ctx = null;
+        try {
+            ctx = contextPool.acquire(test.getResource(), test.getProject(), lang);
             ISpoofaxAnalyzeUnit a = analysisService.analyze(p, ctx).result();
             if(a.success() && a.hasAst()) {
                 return a;
@@ -472,6 +487,8 @@ public class FragmentUtil {
             fragmentOutputBuilder.addAnalysisError("Failed to create a context to analyze the fragment.", e);
         } catch(AnalysisException e) {
             fragmentOutputBuilder.addAnalysisError("Analysis of the fragment failed with an unexpected exception.", e);
+        } finally {
+            contextPool.release(ctx);
         }
         return null;
     }
@@ -1,5 +1,6 @@
 package org.metaborg.spt.core.run;
 
+import org.metaborg.core.language.ILanguageImpl;
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
 import org.metaborg.mbt.core.run.ITestExpectationEvaluator;
 import org.metaborg.mbt.core.run.ITestExpectationInput;
@@ -16,6 +17,19 @@ import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
 public interface ISpoofaxExpectationEvaluator<E extends ITestExpectation>
     extends ITestExpectationEvaluator<ISpoofaxParseUnit, ISpoofaxAnalyzeUnit, E> {
 
+    /**
+     * Whether evaluating the expectation needs the origins of the AST of the input fragment, e.g. to find the nodes of
+     * selections or to compare the nodes within the fragment. Without origins, the input fragment is parsed without
+     * moving the origins of its AST to the offsets of the test suite, which is cheaper. The regions of messages are
+     * always moved.
+     *
+     * Only used for expectations that are evaluated in the {@link org.metaborg.mbt.core.model.TestPhase#PARSING
+     * parsing} phase, as analysis needs the origins anyway. Defaults to true.
+     */
+    default boolean requiresOrigins(ILanguageImpl language, E expectation) {
+        return true;
+    }
+
     @Override ISpoofaxTestExpectationOutput
         evaluate(ITestExpectationInput<ISpoofaxParseUnit, ISpoofaxAnalyzeUnit> input, E expectation);
 }
@@ -28,4 +28,28 @@ public interface ISpoofaxFragmentParser extends IFragmentParser<ISpoofaxParseUni
             ILanguageImpl language,
             @Nullable ILanguageImpl dialect,
             @Nullable ISpoofaxFragmentParserConfig config) throws ParseException;
+
+    /**
+     * Parses the given fragment, but only moves the origins of the AST to the offsets of the fragment when
+     * {@code origins} is true. The regions of the messages are always moved.
+     *
+     * Without origins, the AST has the origins of the parsed text, and may be shared with other parse results, so it
+     * should not be changed. By default, the origins are always moved.
+     *
+     * @param fragment the fragment to parse
+     * @param language the language of the fragment
+     * @param dialect the dialect of the language; or {@code null}
+     * @param config the parser configuration; or {@code null}
+     * @param origins whether the origins of the AST are needed
+     * @return the parse result
+     * @throws ParseException an exception occurred during parsing
+     */
+    default ISpoofaxParseUnit parse(
+            IFragment fragment,
+            ILanguageImpl language,
+            @Nullable ILanguageImpl dialect,
+            @Nullable ISpoofaxFragmentParserConfig config,
+            boolean origins) throws ParseException {
+        return parse(fragment, language, dialect, config);
+    }
 }
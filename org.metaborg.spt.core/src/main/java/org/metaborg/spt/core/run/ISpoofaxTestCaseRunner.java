@@ -1,5 +1,9 @@
 package org.metaborg.spt.core.run;
 
+import java.util.List;
+
+import javax.annotation.Nullable;
+
 import org.metaborg.core.language.ILanguageImpl;
 import org.metaborg.core.project.IProject;
 import org.metaborg.mbt.core.model.ITestCase;
@@ -7,6 +11,7 @@ import org.metaborg.mbt.core.run.IFragmentParserConfig;
 import org.metaborg.mbt.core.run.ITestCaseRunner;
 import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
+import org.metaborg.spt.core.cache.TestResultCache;
 
 /**
  * Type interface for an ITestCaseRunner that runs tests on Spoofax languages.
@@ -15,4 +20,61 @@ public interface ISpoofaxTestCaseRunner extends ITestCaseRunner<ISpoofaxParseUni
 
     @Override ISpoofaxTestResult run(IProject project, ITestCase test, ILanguageImpl languageUnderTest,
         ILanguageImpl dialectUnderTest, IFragmentParserConfig fragmentParseConfig);
+
+    @Override ISpoofaxTestResult run(IProject project, ITestCase test, ISpoofaxParseUnit parseResult,
+        ILanguageImpl languageUnderTest, ILanguageImpl dialectUnderTest, IFragmentParserConfig fragmentParseConfig);
+
+    @Override List<ISpoofaxTestResult> run(IProject project, Iterable<ITestCase> tests,
+        ILanguageImpl languageUnderTest, ILanguageImpl dialectUnderTest, IFragmentParserConfig fragmentParseConfig,
+        int parallelism);
+
+    /**
+     * The result of an earlier run of the given test, if the test and the language under test did not change since.
+     *
+     * Only available when the {@link TestResultCache} is enabled. The {@code run} methods look up and store results
+     * themselves; this is for callers that want to skip parsing as well.
+     *
+     * @return the cached result, or null if the test has to be run.
+     */
+    @Nullable ISpoofaxTestResult cachedResult(ITestCase test, ILanguageImpl languageUnderTest,
+        @Nullable ILanguageImpl dialectUnderTest, @Nullable IFragmentParserConfig fragmentParseConfig);
+
+    /**
+     * Look up the evaluators of the expectations of the given test, and the phase they require, once.
+     *
+     * The planned test can be passed to the {@code run} methods instead of the test itself, as long as it is run on
+     * the same language under test.
+     */
+    PlannedTestCase plan(ITestCase test, ILanguageImpl languageUnderTest);
+
+    /**
+     * Plan all given tests of a test suite.
+     *
+     * @see #plan(ITestCase, ILanguageImpl)
+     */
+    SuiteExecutionPlan plan(Iterable<? extends ITestCase> tests, ILanguageImpl languageUnderTest,
+        @Nullable ISpoofaxFragmentParserConfig fragmentConfig);
+
+    /**
+     * Run the tests of the given plan, on at most {@code parallelism} threads. When prefetching is enabled, the
+     * fragments of all tests are parsed ahead of time, see {@link PrefetchingFragmentParser}.
+     */
+    List<ISpoofaxTestResult> run(IProject project, SuiteExecutionPlan plan, int parallelism);
+
+    /**
+     * Run the given tests, analyzing all fragments that require analysis together in a single context, instead of
+     * each in a temporary context of its own.
+     *
+     * Each fragment is analyzed as a resource of its own, and each test gets the analysis result of its own fragment.
+     * This saves setting up a context for every test, but is only correct for languages whose analysis keeps the
+     * resources apart, so it should only be used for test suites that opt in to it. Tests whose fragment does not
+     * parse, does not get an analysis result of its own, or gets any analysis messages, which may be caused by the
+     * other fragments, are run in a context of their own, as are all tests if analyzing the fragments together fails
+     * or reports messages on one fragment from the analysis of another. Results of tests whose fragments were analyzed
+     * together are cached apart from those of tests run on their own.
+     *
+     * @return the test results, in the same order as the given tests.
+     */
+    List<ISpoofaxTestResult> runShared(IProject project, Iterable<? extends ITestCase> tests,
+        ILanguageImpl languageUnderTest, @Nullable ISpoofaxFragmentParserConfig fragmentConfig);
 }
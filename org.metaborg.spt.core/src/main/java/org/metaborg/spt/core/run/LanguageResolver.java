@@ -0,0 +1,104 @@
+package org.metaborg.spt.core.run;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import org.metaborg.core.MetaborgException;
+import org.metaborg.core.language.ILanguage;
+import org.metaborg.core.language.ILanguageService;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
+
+import com.google.inject.Inject;
+
+/**
+ * Finds the languages that test expectations refer to by name, e.g. the language of the fragment of a ToPart.
+ *
+ * Locations of languages can be {@link #register registered} without loading them. When a name is not known to the
+ * language service, the registered locations are loaded one at a time, in the order in which they were registered,
+ * until one of them provides the language. So languages that no test refers to are never loaded.
+ *
+ * Found languages are remembered until the resolver is {@link #reset}, which should be done before each run.
+ */
+public class LanguageResolver {
+    private static final ILogger logger = LoggerUtils.logger(LanguageResolver.class);
+
+    /**
+     * Loads the languages at a location into the language service.
+     */
+    @FunctionalInterface
+    public interface ILanguageLoader {
+        void load() throws MetaborgException;
+    }
+
+    private final ILanguageService languageService;
+
+    private final Map<String, ILanguage> languages = new ConcurrentHashMap<>();
+    private final Deque<PendingLocation> pending = new ArrayDeque<>();
+
+
+    @Inject public LanguageResolver(ILanguageService languageService) {
+        this.languageService = languageService;
+    }
+
+
+    /**
+     * Forget the found languages and the registered locations that were not loaded yet.
+     */
+    public synchronized void reset() {
+        languages.clear();
+        pending.clear();
+    }
+
+    /**
+     * Register a location of languages, which is only loaded when a language is asked for that is not known yet.
+     *
+     * @param location
+     *            describes the location, for logging.
+     */
+    public synchronized void register(String location, ILanguageLoader loader) {
+        pending.add(new PendingLocation(location, loader));
+    }
+
+    /**
+     * The language with the given name, loading registered locations if needed.
+     *
+     * @return the language, or null if no loaded language nor registered location provides it.
+     * @throws MetaborgException
+     *             when loading a registered location fails. The location is not tried again.
+     */
+    public @Nullable ILanguage getLanguage(String name) throws MetaborgException {
+        final ILanguage found = languages.get(name);
+        if(found != null) {
+            return found;
+        }
+        synchronized(this) {
+            ILanguage language = languageService.getLanguage(name);
+            while(language == null && !pending.isEmpty()) {
+                final PendingLocation location = pending.poll();
+                logger.debug("Loading languages from {} to find {}", location.location, name);
+                location.loader.load();
+                language = languageService.getLanguage(name);
+            }
+            if(language != null) {
+                languages.put(name, language);
+            }
+            return language;
+        }
+    }
+
+
+    private static final class PendingLocation {
+        private final String location;
+        private final ILanguageLoader loader;
+
+        private PendingLocation(String location, ILanguageLoader loader) {
+            this.location = location;
+            this.loader = loader;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.metaborg.spt.core.run;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.core.project.IProject;
+import org.metaborg.core.source.ISourceRegion;
+import org.metaborg.mbt.core.model.IFragment;
+import org.metaborg.mbt.core.model.ITestCase;
+import org.metaborg.mbt.core.model.TestPhase;
+import org.metaborg.mbt.core.model.expectations.ITestExpectation;
+
+/**
+ * A test case together with what is needed to run it on a language under test: the evaluator of each of its
+ * expectations, the phase up to which its fragment has to be processed, and whether the origins of its fragment are
+ * needed.
+ *
+ * Running a planned test with the {@link ISpoofaxTestCaseRunner} does not look up any evaluators. The results of
+ * running it refer to the {@link #getTestCase() test case that was planned}, not to the plan. Obtain one with
+ * {@link ISpoofaxTestCaseRunner#plan(ITestCase, ILanguageImpl)}.
+ */
+public final class PlannedTestCase implements ITestCase {
+
+    private final ITestCase test;
+    private final ILanguageImpl languageUnderTest;
+    // null for expectations without an evaluator
+    private final List<ISpoofaxExpectationEvaluator<ITestExpectation>> evaluators;
+    private final TestPhase phase;
+    private final boolean requiresOrigins;
+
+
+    PlannedTestCase(ITestCase test, ILanguageImpl languageUnderTest,
+        List<ISpoofaxExpectationEvaluator<ITestExpectation>> evaluators, TestPhase phase, boolean requiresOrigins) {
+        this.test = test;
+        this.languageUnderTest = languageUnderTest;
+        this.evaluators = evaluators;
+        this.phase = phase;
+        this.requiresOrigins = requiresOrigins;
+    }
+
+
+    /**
+     * The test case that was planned.
+     */
+    public ITestCase getTestCase() {
+        return test;
+    }
+
+    /**
+     * The language under test for which the test was planned.
+     */
+    public ILanguageImpl getLanguageUnderTest() {
+        return languageUnderTest;
+    }
+
+    /**
+     * The evaluator of each expectation, in the order of the expectations. An entry is null if no evaluator was found
+     * for its expectation.
+     */
+    public List<ISpoofaxExpectationEvaluator<ITestExpectation>> getEvaluators() {
+        return evaluators;
+    }
+
+    /**
+     * The phase up to which the fragment has to be processed to evaluate all expectations.
+     */
+    public TestPhase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Whether the AST of the input fragment needs origins at the offsets of the test suite, see
+     * {@link ISpoofaxExpectationEvaluator#requiresOrigins}.
+     */
+    public boolean requiresOrigins() {
+        return requiresOrigins;
+    }
+
+    /**
+     * Whether this plan can be used to run the test on the given language under test.
+     */
+    public boolean isFor(@Nullable ILanguageImpl languageUnderTest) {
+        return this.languageUnderTest.equals(languageUnderTest);
+    }
+
+    /**
+     * The test case that was planned if the given test is planned, or else the given test itself.
+     */
+    public static ITestCase unwrap(ITestCase test) {
+        return test instanceof PlannedTestCase ? ((PlannedTestCase) test).test : test;
+    }
+
+
+    @Override public String getDescription() {
+        return test.getDescription();
+    }
+
+    @Override public ISourceRegion getDescriptionRegion() {
+        return test.getDescriptionRegion();
+    }
+
+    @Override public IFragment getFragment() {
+        return test.getFragment();
+    }
+
+    @Override public FileObject getResource() {
+        return test.getResource();
+    }
+
+    @Override public IProject getProject() {
+        return test.getProject();
+    }
+
+    @Override public List<ITestExpectation> getExpectations() {
+        return test.getExpectations();
+    }
+
+    @Override public String toString() {
+        return "planned " + test;
+    }
+}
@@ -0,0 +1,256 @@
+package org.metaborg.spt.core.run;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.core.syntax.ParseException;
+import org.metaborg.mbt.core.model.IFragment;
+import org.metaborg.mbt.core.model.ITestCase;
+import org.metaborg.mbt.core.model.expectations.AToPartExpectation;
+import org.metaborg.mbt.core.model.expectations.ITestExpectation;
+import org.metaborg.mbt.core.run.IFragmentParserConfig;
+import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+
+/**
+ * A fragment parser that can parse the fragments of tests ahead of time, on a pool of worker threads.
+ *
+ * The fragments of a test that are {@link #prefetch prefetched} are its input fragment, and the output fragments of its
+ * 'to' parts that are in the language under test. Fragments of other languages are not prefetched, as that could load
+ * languages that are otherwise never needed. When a prefetched fragment is parsed with the same language and
+ * configuration, the parse result of the worker is returned. If no worker started on the fragment yet, it is parsed on
+ * the calling thread instead, so a caller only ever waits for a parse that is already running.
+ *
+ * The input fragment of a {@link PlannedTestCase} whose expectations don't need origins is parsed without them. When it
+ * turns out that origins are needed after all, the fragment is parsed again.
+ *
+ * Each prefetched parse result is handed out once. Call {@link #discard} for tests that were prefetched but that are no
+ * longer going to be run, e.g. because their result was cached.
+ *
+ * Prefetching is disabled until the number of {@link #setThreads threads} is set, in which case this parser simply
+ * delegates to the {@link SpoofaxOriginFragmentParser}.
+ */
+public class PrefetchingFragmentParser implements ISpoofaxFragmentParser {
+
+    private final SpoofaxOriginFragmentParser parser;
+
+    private final ConcurrentMap<Key, Prefetch> prefetched = new ConcurrentHashMap<>();
+    private volatile @Nullable ExecutorService workers;
+    private int threads = 0;
+
+
+    @Inject public PrefetchingFragmentParser(SpoofaxOriginFragmentParser parser) {
+        this.parser = parser;
+    }
+
+
+    /**
+     * Set the number of threads that parse prefetched fragments, or 0 to disable prefetching. Prefetched fragments that
+     * no worker started on yet are then parsed when they are needed.
+     */
+    public synchronized void setThreads(int threads) {
+        if(threads < 0) {
+            throw new IllegalArgumentException("The number of threads for prefetching should not be negative");
+        }
+        if(threads == this.threads) {
+            return;
+        }
+        this.threads = threads;
+        final ExecutorService old = workers;
+        if(old != null) {
+            old.shutdown();
+        }
+        // @formatter:off
+        workers = threads == 0 ? null : Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+            .setNameFormat("spt-prefetch-%d")
+            .setDaemon(true)
+            .build());
+        // @formatter:on
+    }
+
+    public boolean isEnabled() {
+        return workers != null;
+    }
+
+
+    /**
+     * Start parsing the fragments of the given tests with the language under test.
+     */
+    public void prefetch(Iterable<? extends ITestCase> tests, ILanguageImpl languageUnderTest,
+        @Nullable ISpoofaxFragmentParserConfig config) {
+        final ExecutorService pool = workers;
+        if(pool == null) {
+            return;
+        }
+        for(ITestCase test : tests) {
+            // only the input fragment of a planned test may be parsed without origins
+            final boolean inputOrigins = !(test instanceof PlannedTestCase)
+                || !((PlannedTestCase) test).isFor(languageUnderTest) || ((PlannedTestCase) test).requiresOrigins();
+            for(IFragment fragment : fragments(test)) {
+                final Key key = new Key(fragment, languageUnderTest, config);
+                final boolean origins = inputOrigins || fragment != test.getFragment();
+                final Prefetch prefetch = new Prefetch(origins);
+                if(prefetched.putIfAbsent(key, prefetch) != null) {
+                    continue;
+                }
+                pool.execute(() -> {
+                    if(prefetch.claim()) {
+                        prefetch.run(() -> parser.parse(fragment, languageUnderTest, null, config, origins));
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Forget the prefetched fragments of the given tests. Parses that did not start yet are skipped.
+     */
+    public void discard(Iterable<? extends ITestCase> tests) {
+        if(prefetched.isEmpty()) {
+            return;
+        }
+        final Set<IFragment> fragments = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(ITestCase test : tests) {
+            fragments.addAll(fragments(test));
+        }
+        for(Key key : prefetched.keySet()) {
+            if(fragments.contains(key.fragment)) {
+                final Prefetch prefetch = prefetched.remove(key);
+                if(prefetch != null) {
+                    prefetch.claim();
+                }
+            }
+        }
+    }
+
+
+    @Override public ISpoofaxParseUnit parse(IFragment fragment, ILanguageImpl language,
+        @Nullable ILanguageImpl dialect, @Nullable ISpoofaxFragmentParserConfig config) throws ParseException {
+        return parse(fragment, language, dialect, config, true);
+    }
+
+    @Override public ISpoofaxParseUnit parse(IFragment fragment, ILanguageImpl language,
+        @Nullable ILanguageImpl dialect, @Nullable ISpoofaxFragmentParserConfig config, boolean origins)
+        throws ParseException {
+        final Prefetch prefetch = dialect == null ? prefetched.remove(new Key(fragment, language, config)) : null;
+        if(prefetch == null || prefetch.claim() || (origins && !prefetch.origins)) {
+            // not prefetched, no worker started on it yet, or it is parsed without the origins that are needed
+            return parser.parse(fragment, language, dialect, config, origins);
+        }
+        return prefetch.get();
+    }
+
+    @Override public ISpoofaxParseUnit parse(IFragment fragment, ILanguageImpl language, ILanguageImpl dialect,
+        IFragmentParserConfig config) throws ParseException {
+        if(!(config instanceof ISpoofaxFragmentParserConfig)) {
+            return parse(fragment, language, dialect, (ISpoofaxFragmentParserConfig) null);
+        } else {
+            return parse(fragment, language, dialect, (ISpoofaxFragmentParserConfig) config);
+        }
+    }
+
+
+    /**
+     * The input fragment of the test, and the output fragments in the language under test.
+     */
+    private static List<IFragment> fragments(ITestCase test) {
+        final List<IFragment> fragments = new ArrayList<>();
+        fragments.add(test.getFragment());
+        for(ITestExpectation expectation : test.getExpectations()) {
+            if(expectation instanceof AToPartExpectation) {
+                final AToPartExpectation toPart = (AToPartExpectation) expectation;
+                if(toPart.outputFragment() != null && toPart.outputLanguage() == null) {
+                    fragments.add(toPart.outputFragment());
+                }
+            }
+        }
+        return fragments;
+    }
+
+
+    @FunctionalInterface
+    private interface IParse {
+        ISpoofaxParseUnit parse() throws ParseException;
+    }
+
+    private static final class Prefetch {
+        private final boolean origins;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CompletableFuture<ISpoofaxParseUnit> result = new CompletableFuture<>();
+
+        private Prefetch(boolean origins) {
+            this.origins = origins;
+        }
+
+        /**
+         * Whether the caller is the first to claim this parse, and should therefore do it.
+         */
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        private void run(IParse parse) {
+            try {
+                result.complete(parse.parse());
+            } catch(ParseException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private ISpoofaxParseUnit get() throws ParseException {
+            try {
+                return result.get();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for a prefetched fragment", e);
+            } catch(ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if(cause instanceof ParseException) {
+                    throw (ParseException) cause;
+                }
+                throw (RuntimeException) cause;
+            }
+        }
+    }
+
+    private static final class Key {
+        private final IFragment fragment;
+        private final ILanguageImpl language;
+        private final @Nullable ISpoofaxFragmentParserConfig config;
+
+        private Key(IFragment fragment, ILanguageImpl language, @Nullable ISpoofaxFragmentParserConfig config) {
+            this.fragment = fragment;
+            this.language = language;
+            this.config = config;
+        }
+
+        // fragments and configurations are compared by identity, as that is how they are passed around during a run
+        @Override public boolean equals(Object obj) {
+            if(!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return fragment == other.fragment && config == other.config && language.equals(other.language);
+        }
+
+        @Override public int hashCode() {
+            return 31 * (31 * System.identityHashCode(fragment) + language.hashCode())
+                + System.identityHashCode(config);
+        }
+    }
+}
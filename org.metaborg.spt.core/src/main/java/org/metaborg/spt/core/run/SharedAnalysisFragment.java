@@ -0,0 +1,54 @@
+package org.metaborg.spt.core.run;
+
+import java.util.List;
+
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.project.IProject;
+import org.metaborg.core.source.ISourceRegion;
+import org.metaborg.mbt.core.model.FragmentOffsetIndex;
+import org.metaborg.mbt.core.model.IFragment;
+
+/**
+ * A fragment with another resource, so fragments of the same test suite can be analyzed together. The origins of its
+ * parse result still refer to the resource of its test, see {@link SpoofaxOriginFragmentParser}.
+ */
+final class SharedAnalysisFragment implements IFragment {
+    private final IFragment fragment;
+    private final FileObject resource;
+
+    SharedAnalysisFragment(IFragment fragment, FileObject resource) {
+        this.fragment = fragment;
+        this.resource = resource;
+    }
+
+    /**
+     * The resource of the test of this fragment.
+     */
+    FileObject getTestResource() {
+        return fragment.getResource();
+    }
+
+    @Override public ISourceRegion getRegion() {
+        return fragment.getRegion();
+    }
+
+    @Override public List<ISourceRegion> getSelections() {
+        return fragment.getSelections();
+    }
+
+    @Override public FileObject getResource() {
+        return resource;
+    }
+
+    @Override public IProject getProject() {
+        return fragment.getProject();
+    }
+
+    @Override public Iterable<FragmentPiece> getText() {
+        return fragment.getText();
+    }
+
+    @Override public FragmentOffsetIndex getOffsetIndex() {
+        return fragment.getOffsetIndex();
+    }
+}
@@ -1,6 +1,9 @@
 package org.metaborg.spt.core.run;
 
 import java.lang.reflect.ParameterizedType;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
 import org.metaborg.util.log.ILogger;
@@ -12,11 +15,19 @@ import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.util.Types;
 
+/**
+ * Looks up the evaluator of an expectation in the injector, by the class of the expectation.
+ *
+ * The evaluator found for a class, or the lack of one, is remembered, so the injector is only asked once per class of
+ * expectations. The same evaluator is then used for all expectations of that class, also concurrently, which is fine
+ * as evaluators are stateless.
+ */
 public class SpoofaxExpectationEvaluatorService implements ISpoofaxExpectationEvaluatorService {
 
     private static final ILogger logger = LoggerUtils.logger(SpoofaxExpectationEvaluatorService.class);
 
     private final Injector injector;
+    private final Map<Class<?>, Optional<ISpoofaxExpectationEvaluator<?>>> evaluators = new ConcurrentHashMap<>();
 
     @Inject public SpoofaxExpectationEvaluatorService(Injector injector) {
         this.injector = injector;
@@ -24,13 +35,17 @@ public class SpoofaxExpectationEvaluatorService implements ISpoofaxExpectationEv
 
     @SuppressWarnings("unchecked") @Override public <E extends ITestExpectation> ISpoofaxExpectationEvaluator<E>
         lookup(E expectation) {
-        ParameterizedType evaType =
-            Types.newParameterizedType(ISpoofaxExpectationEvaluator.class, expectation.getClass());
+        return (ISpoofaxExpectationEvaluator<E>) evaluators.computeIfAbsent(expectation.getClass(), this::find)
+            .orElse(null);
+    }
+
+    private Optional<ISpoofaxExpectationEvaluator<?>> find(Class<?> expectationClass) {
+        ParameterizedType evaType = Types.newParameterizedType(ISpoofaxExpectationEvaluator.class, expectationClass);
         try {
-            return (ISpoofaxExpectationEvaluator<E>) injector.getInstance(Key.get(evaType));
+            return Optional.of((ISpoofaxExpectationEvaluator<?>) injector.getInstance(Key.get(evaType)));
         } catch(ConfigurationException e) {
-            logger.info("Unable to find an evaluator for expectation of type {}", e, expectation.getClass());
-            return null;
+            logger.info("Unable to find an evaluator for expectation of type {}", e, expectationClass);
+            return Optional.empty();
         }
     }
 
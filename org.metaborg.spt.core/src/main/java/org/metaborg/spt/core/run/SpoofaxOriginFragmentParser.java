@@ -1,27 +1,22 @@
 package org.metaborg.spt.core.run;
 
-import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nullable;
 
+import org.apache.commons.vfs2.FileObject;
 import org.metaborg.core.language.ILanguageImpl;
-import org.metaborg.core.messages.IMessage;
-import org.metaborg.core.source.ISourceRegion;
-import org.metaborg.core.source.SourceRegion;
 import org.metaborg.core.syntax.ParseException;
+import org.metaborg.mbt.core.model.FragmentOffsetIndex;
 import org.metaborg.mbt.core.model.IFragment;
-import org.metaborg.mbt.core.model.IFragment.FragmentPiece;
-import org.metaborg.mbt.core.model.expectations.MessageUtil;
 import org.metaborg.mbt.core.run.IFragmentParserConfig;
 import org.metaborg.spoofax.core.syntax.ISpoofaxSyntaxService;
 import org.metaborg.spoofax.core.syntax.JSGLRParserConfiguration;
 import org.metaborg.spoofax.core.unit.*;
-import org.metaborg.util.log.ILogger;
-import org.metaborg.util.log.LoggerUtils;
-import org.spoofax.interpreter.terms.IStrategoTerm;
-import org.spoofax.jsglr.client.imploder.*;
-import org.spoofax.terms.visitor.AStrategoTermVisitor;
-import org.spoofax.terms.visitor.StrategoTermVisitee;
+import org.metaborg.spt.core.cache.ParseResultCache;
+import org.spoofax.interpreter.terms.ITermFactory;
 
 import com.google.inject.Inject;
 
@@ -30,33 +25,69 @@ import com.google.inject.Inject;
  * 
  * Ensures the correct offsets of the parse result by post processing the parse result and updating origins. Updating
  * origins happens by updating the offsets of the tokens of the AST's tokenizer. This requires quite heavy knowledge of
- * the Spoofax internals, so we could use an API for changing origin locations and not just querying them.
+ * the Spoofax internals, so we could use an API for changing origin locations and not just querying them. See
+ * {@link FragmentOrigins}.
+ * 
+ * Fragments are parsed with the test suite as their source, so a language with an incremental parser can reuse the
+ * parse of the previous fragment of the same test suite. In particular, the fixture, which all tests of a test suite
+ * share, is then only parsed once. To make this safe, enable {@link #setIncrementalFixtures(boolean) incremental
+ * fixtures}: fragments of the same test suite and language are then parsed one at a time, in the order in which they
+ * arrive, and the origins are updated on a copy of the AST, so the nodes that the parser keeps for reuse are never
+ * changed.
+ *
+ * When the {@link ParseResultCache} is enabled, fragments whose text was parsed before are not parsed again. The
+ * origins are then updated on a copy of the cached AST.
+ *
+ * Updating the origins can be skipped when they are not needed, e.g. for tests that only check whether their fragment
+ * parses, see {@link #parse(IFragment, ILanguageImpl, ILanguageImpl, ISpoofaxFragmentParserConfig, boolean)}.
  */
 public class SpoofaxOriginFragmentParser implements ISpoofaxFragmentParser {
 
-    private static final ILogger logger = LoggerUtils.logger(SpoofaxOriginFragmentParser.class);
-
     private final ISpoofaxInputUnitService inputService;
     private final ISpoofaxUnitService unitService;
     private final ISpoofaxSyntaxService parseService;
+    private final ITermFactory termFactory;
+    private final ParseResultCache parseCache;
+
+    // a fair lock per test suite and language, so the fragments of a test suite are parsed in order; a lock is removed
+    // when no fragment holds or waits for it, so there are only locks for the test suites that are being parsed
+    private final ConcurrentMap<String, SuiteLock> suiteLocks = new ConcurrentHashMap<>();
+    private volatile boolean incrementalFixtures = false;
 
     @Inject public SpoofaxOriginFragmentParser(ISpoofaxInputUnitService inputService, ISpoofaxUnitService unitService,
-        ISpoofaxSyntaxService parseService) {
+        ISpoofaxSyntaxService parseService, ITermFactory termFactory, ParseResultCache parseCache) {
         this.inputService = inputService;
         this.unitService = unitService;
         this.parseService = parseService;
+        this.termFactory = termFactory;
+        this.parseCache = parseCache;
+    }
+
+    /**
+     * Whether the fragments of a test suite should be parsed such that an incremental parser can safely reuse the
+     * parse of the previous fragment, e.g. of a shared fixture. Disabled by default, as it serializes the parsing of
+     * the fragments of a test suite and copies each AST.
+     */
+    public void setIncrementalFixtures(boolean incrementalFixtures) {
+        this.incrementalFixtures = incrementalFixtures;
+    }
+
+    public boolean isIncrementalFixtures() {
+        return incrementalFixtures;
     }
 
     @Override public ISpoofaxParseUnit parse(IFragment fragment, ILanguageImpl language,
         @Nullable ILanguageImpl dialect, @Nullable ISpoofaxFragmentParserConfig config) throws ParseException {
+        return parse(fragment, language, dialect, config, true);
+    }
+
+    @Override public ISpoofaxParseUnit parse(IFragment fragment, ILanguageImpl language,
+        @Nullable ILanguageImpl dialect, @Nullable ISpoofaxFragmentParserConfig config, boolean origins)
+        throws ParseException {
 
         // record the text of the fragment
-        final Iterable<FragmentPiece> fragmentPieces = fragment.getText();
-        StringBuilder textBuilder = new StringBuilder();
-        for(FragmentPiece piece : fragmentPieces) {
-            textBuilder.append(piece.text);
-        }
-        final String textStr = textBuilder.toString();
+        final FragmentOffsetIndex offsets = fragment.getOffsetIndex();
+        final String textStr = offsets.text();
 
 
         // now we can parse the fragment
@@ -72,96 +103,63 @@ public class SpoofaxOriginFragmentParser implements ISpoofaxFragmentParser {
             input = inputService.inputUnit(fragment.getResource(), textStr, language, dialect, pConfig);
         }
 
-        ISpoofaxParseUnit p = parseService.parse(input);
-
-        // short circuit if there was no result
-        if(!p.valid()) {
-            return p;
-        }
-        IStrategoTerm ast = p.ast();
-        if(ast == null) {
-            return p;
+        // a fragment with the same text was parsed before, so only its origins have to be moved, on a copy
+        final String startSymbol = pConfig == null ? null : pConfig.overridingStartSymbol;
+        final ISpoofaxParseUnit cached = parseCache.get(language, dialect, startSymbol, textStr);
+        if(cached != null) {
+            return remap(fragment, input, cached, offsets, origins, true);
         }
 
-        // start changing the offsets by changing the offsets of the tokens
-        ITokens originalTokens = ImploderAttachment.getTokenizer(ast);
-        if(originalTokens == null) {
-            logger.warn("Found a fragment with no tokenizer! Can't update the offsets. \"{}\"", textStr);
-            return p;
+        if(!incrementalFixtures) {
+            ISpoofaxParseUnit p = parseService.parse(input);
+            parseCache.put(language, dialect, startSymbol, textStr, p);
+            return remap(fragment, input, p, offsets, origins, parseCache.isEnabled());
         }
 
-        // adjust the tokens for each piece of the fragment
-        // this makes NO assumptions about the order of the startOffsets of the token stream
-        // it DOES assume that the pieces of text of the fragment are ordered based on the correct order of text
-        Map<IToken, Integer> startOffsets = new HashMap<>(originalTokens.getTokenCount());
-        Map<IToken, Integer> endOffsets = new HashMap<>(originalTokens.getTokenCount());
-        IToken eof = null;
-        int currStartOffsetOfPiece = 0;
-        int currEndOffsetOfPiece = 0;
-        for(FragmentPiece piece : fragmentPieces) {
-            int pieceLength = piece.text.length();
-            currEndOffsetOfPiece = currStartOffsetOfPiece + pieceLength - 1;
-            int adjustment = piece.startOffset - currStartOffsetOfPiece;
-            for(IToken token : originalTokens.allTokens()) {
-                int startOffset = token.getStartOffset();
-                if(startOffset >= currStartOffsetOfPiece && startOffset <= currEndOffsetOfPiece) {
-                    startOffsets.put(token, startOffset + adjustment);
-                    endOffsets.put(token, token.getEndOffset() + adjustment);
-                }
-                if(token.getKind() == IToken.Kind.TK_EOF) {
-                    eof = token;
-                }
-            }
-            currStartOffsetOfPiece += pieceLength;
+        final String suiteKey = fragment.getResource() == null ? "" : fragment.getResource().getName().getURI();
+        final String lockKey = suiteKey + '\0' + language.id();
+        final SuiteLock lock = suiteLocks.compute(lockKey, (k, l) -> {
+            final SuiteLock suiteLock = l == null ? new SuiteLock() : l;
+            suiteLock.users++;
+            return suiteLock;
+        });
+        lock.lock.lock();
+        try {
+            ISpoofaxParseUnit p = parseService.parse(input);
+            parseCache.put(language, dialect, startSymbol, textStr, p);
+            return remap(fragment, input, p, offsets, origins, true);
+        } finally {
+            lock.lock.unlock();
+            suiteLocks.computeIfPresent(lockKey, (k, l) -> --l.users == 0 ? null : l);
         }
+    }
 
-        // Only post process tokens when there are tokens, and when there is an end-of-file token.
-        if(!startOffsets.isEmpty() && eof != null) {
-            MappingTokenizer newTokenizer = new MappingTokenizer(originalTokens);
-            for(IToken token : originalTokens.allTokens()) {
-                if(token.getKind() == IToken.Kind.TK_EOF) {
-                    int lastOffset = newTokenizer.tokens.get(newTokenizer.tokens.size() - 1).getEndOffset();
-                    newTokenizer.addToken(lastOffset + 1, lastOffset, eof);
-                } else {
-                    newTokenizer.addToken(
-                        startOffsets.containsKey(token) ? startOffsets.get(token) : token.getStartOffset(),
-                        endOffsets.containsKey(token) ? endOffsets.get(token) : token.getEndOffset(), token);
-                }
-            }
-            newTokenizer.overwriteAttachments(ast);
-        }
+    /**
+     * The lock of a test suite and language, with the number of fragments that hold or wait for it. The number is only
+     * changed while the entry of the lock in {@link #suiteLocks} is being computed.
+     */
+    private static class SuiteLock {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private int users = 0;
+    }
 
-        // now the offsets of the tokens are updated
-        // changing the state like this should update the offsets of the ast nodes automatically
-        // but next, we need to update the offsets of the parse messages
-        List<IMessage> changedMessages = new LinkedList<>();
-        for(IMessage m : p.messages()) {
-            ISourceRegion region = m.region();
-            if(region == null) {
-                continue;
-            }
-            int newStart = region.startOffset();
-            int newEnd = region.endOffset();
-            int offset = 0;
-            for(FragmentPiece piece : fragmentPieces) {
-                int startOffset = region.startOffset();
-                int pieceEndExclusive = offset + piece.text.length();
-                if(startOffset >= offset && startOffset < pieceEndExclusive) {
-                    newStart = piece.startOffset + (startOffset - offset);
-                }
-                int endOffset = region.endOffset();
-                if(endOffset >= offset && endOffset < pieceEndExclusive) {
-                    newEnd = piece.startOffset + (endOffset - offset);
-                }
-                offset += piece.text.length();
-            }
-            if(newStart != region.startOffset() || newEnd != region.endOffset()) {
-                ISourceRegion newRegion = new SourceRegion(newStart, newEnd);
-                changedMessages.add(MessageUtil.setRegion(m, newRegion));
-            }
-        }
-        return unitService.parseUnit(input,
-            new ParseContrib(p.valid(), p.success(), p.isAmbiguous(), p.ast(), changedMessages, p.duration()));
+    /**
+     * Move the origins of the AST and the regions of the messages of the parse result to the offsets of the fragment,
+     * or only the regions of the messages if no origins are needed. The origins refer to the resource of the test, also
+     * when the fragment is parsed as another resource to analyze it together with other fragments.
+     *
+     * @param copy
+     *            whether to move the origins on a copy of the AST, as the AST is shared with the parser or the cache.
+     */
+    private ISpoofaxParseUnit remap(IFragment fragment, ISpoofaxInputUnit input, ISpoofaxParseUnit p,
+        FragmentOffsetIndex offsets, boolean origins, boolean copy) {
+        // only parse messages whose region changed are kept, which is how this parser has always behaved
+        if(!origins) {
+            return FragmentOrigins.remapMessages(unitService, input, p, offsets, false);
+        }
+        final FileObject resource =
+            fragment instanceof SharedAnalysisFragment ? ((SharedAnalysisFragment) fragment).getTestResource() : null;
+        return FragmentOrigins.remap(unitService, input, p, offsets, false, copy ? termFactory : null, resource);
     }
 
     @Override public ISpoofaxParseUnit parse(IFragment fragment, ILanguageImpl language, ILanguageImpl dialect,
@@ -172,100 +170,4 @@ public class SpoofaxOriginFragmentParser implements ISpoofaxFragmentParser {
             return parse(fragment, language, dialect, (ISpoofaxFragmentParserConfig) config);
         }
     }
-
-    private static class MappingTokenizer implements ITokens {
-
-        private final List<IToken> tokens = new ArrayList<>();
-        private final Map<IToken, IToken> oldToNewTokens = new HashMap<>();
-        private final Map<IToken, IToken> newToOldTokens = new HashMap<>();
-        private final String input;
-        private final String filename;
-
-        private MappingTokenizer(ITokens originalTokens) {
-            this.input = originalTokens.getInput();
-            this.filename = originalTokens.getFilename();
-        }
-
-        private void addToken(int startOffset, int endOffset, IToken originalToken) {
-            Token newToken = new MappedToken(this, startOffset, endOffset, originalToken);
-            newToken.setAstNode(originalToken.getAstNode());
-            tokens.add(newToken);
-            oldToNewTokens.put(originalToken, newToken);
-            newToOldTokens.put(newToken, originalToken);
-        }
-
-        private void overwriteAttachments(IStrategoTerm ast) {
-            StrategoTermVisitee.topdown(new AStrategoTermVisitor() {
-                @Override public boolean visit(IStrategoTerm term) {
-                    ImploderAttachment originalAttachment = ImploderAttachment.get(term);
-
-                    // For incremental parsing, the reused AST nodes already have updated ImploderAttachments with new
-                    // MappedTokens. In this case, we should get the original token to index the oldToNewTokens Map,
-                    // because the offsets might be updated since the previous version.
-                    IToken leftToken = oldToNewTokens.get(originalAttachment.getLeftToken() instanceof MappedToken
-                        ? ((MappedToken) originalAttachment.getLeftToken()).originalToken
-                        : originalAttachment.getLeftToken());
-                    IToken rightToken = oldToNewTokens.get(originalAttachment.getRightToken() instanceof MappedToken
-                        ? ((MappedToken) originalAttachment.getRightToken()).originalToken
-                        : originalAttachment.getRightToken());
-
-                    ImploderAttachment.putImploderAttachment(term, term instanceof ListImploderAttachment,
-                        originalAttachment.getSort(), leftToken, rightToken, originalAttachment.isBracket(),
-                        originalAttachment.isCompletion(), originalAttachment.isNestedCompletion(),
-                        originalAttachment.isSinglePlaceholderCompletion());
-
-                    ImploderAttachment newAttachment = ImploderAttachment.get(term);
-                    originalAttachment.getInjections().forEach(newAttachment::pushInjection);
-
-                    return true;
-                }
-            }, ast);
-        }
-
-        @Override public String getInput() {
-            return input;
-        }
-
-        @Override public int getTokenCount() {
-            return tokens.size();
-        }
-
-        @Override public IToken getTokenAtOffset(int offset) {
-            for(IToken token : tokens) {
-                if(token.getStartOffset() == offset)
-                    return token;
-            }
-            return null;
-        }
-
-        @Override public String getFilename() {
-            return filename;
-        }
-
-        @Override public String toString(IToken left, IToken right) {
-            return toString(newToOldTokens.get(left).getStartOffset(), newToOldTokens.get(right).getEndOffset());
-        }
-
-        @Override public String toString(int startOffset, int endOffset) {
-            return input.substring(startOffset, endOffset);
-        }
-
-        @Override public Iterator<IToken> iterator() {
-            return new Tokenizer.AmbiguousToNonAmbiguousIterator(allTokens());
-        }
-
-        @Override public Iterable<IToken> allTokens() {
-            return Collections.unmodifiableList(tokens);
-        }
-    }
-
-    private static class MappedToken extends Token {
-        private final IToken originalToken;
-
-        public MappedToken(ITokens tokens, int startOffset, int endOffset, IToken originalToken) {
-            super(tokens, tokens.getFilename(), -1, -1, -1, startOffset, endOffset, originalToken.getKind());
-            this.originalToken = originalToken;
-        }
-    }
-
 }
@@ -1,50 +1,401 @@
 package org.metaborg.spt.core.run;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.MetaborgException;
+import org.metaborg.core.analysis.AnalysisException;
+import org.metaborg.core.context.ContextException;
 import org.metaborg.core.context.IContext;
 import org.metaborg.core.context.IContextService;
+import org.metaborg.core.context.ITemporaryContext;
+import org.metaborg.core.language.ILanguage;
 import org.metaborg.core.language.ILanguageImpl;
 import org.metaborg.core.messages.IMessage;
 import org.metaborg.core.messages.MessageFactory;
 import org.metaborg.core.messages.MessageSeverity;
 import org.metaborg.core.project.IProject;
+import org.metaborg.core.resource.IResourceService;
+import org.metaborg.core.syntax.ParseException;
 import org.metaborg.mbt.core.model.ITestCase;
 import org.metaborg.mbt.core.model.TestPhase;
+import org.metaborg.mbt.core.model.expectations.AToPartExpectation;
 import org.metaborg.mbt.core.model.expectations.ITestExpectation;
+import org.metaborg.mbt.core.model.expectations.MessageUtil;
 import org.metaborg.mbt.core.run.IFragmentParserConfig;
 import org.metaborg.mbt.core.run.ITestResult;
+import org.metaborg.mbt.core.run.TemporaryContextPool;
 import org.metaborg.mbt.core.run.TestCaseRunner;
+import org.metaborg.mbt.core.run.TestExecutor;
 import org.metaborg.spoofax.core.analysis.ISpoofaxAnalysisService;
+import org.metaborg.spoofax.core.syntax.JSGLRParserConfiguration;
+import org.metaborg.spoofax.core.unit.AnalyzeContrib;
 import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnitUpdate;
+import org.metaborg.spoofax.core.unit.ISpoofaxInputUnit;
+import org.metaborg.spoofax.core.unit.ISpoofaxInputUnitService;
 import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
+import org.metaborg.spoofax.core.unit.ISpoofaxUnitService;
+import org.metaborg.spoofax.core.unit.ParseContrib;
+import org.metaborg.spt.core.cache.TestResultCache;
+import org.metaborg.spt.core.run.expectations.ParseExpectationEvaluator;
+import org.metaborg.util.concurrent.IClosableLock;
+import org.metaborg.util.log.ILogger;
+import org.metaborg.util.log.LoggerUtils;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
 public class SpoofaxTestCaseRunner
     extends TestCaseRunner<ISpoofaxParseUnit, ISpoofaxAnalyzeUnit, ISpoofaxAnalyzeUnitUpdate>
     implements ISpoofaxTestCaseRunner {
+    private static final ILogger logger = LoggerUtils.logger(SpoofaxTestCaseRunner.class);
 
+    // the fragments analyzed together get resources below this location, one directory per batch
+    private static final String SHARED_ANALYSIS_LOCATION = "ram:///spt/shared-analysis/";
+
+    private final ISpoofaxAnalysisService analysisService;
+    private final IContextService contextService;
+    private final ISpoofaxFragmentParser fragmentParser;
+    private final PrefetchingFragmentParser prefetcher;
+    private final IResourceService resourceService;
+    private final ISpoofaxInputUnitService inputService;
+    private final ISpoofaxUnitService unitService;
     private final ISpoofaxExpectationEvaluatorService evaluatorService;
+    private final TestResultCache resultCache;
+    private final LanguageResolver languageResolver;
+
+    private final AtomicLong batches = new AtomicLong();
 
     @Inject public SpoofaxTestCaseRunner(ISpoofaxAnalysisService analysisService, IContextService contextService,
-        ISpoofaxFragmentParser fragmentParser, ISpoofaxExpectationEvaluatorService evaluatorService) {
-        super(analysisService, contextService, fragmentParser);
+        TemporaryContextPool contextPool, ISpoofaxFragmentParser fragmentParser, PrefetchingFragmentParser prefetcher,
+        IResourceService resourceService, ISpoofaxInputUnitService inputService, ISpoofaxUnitService unitService,
+        ISpoofaxExpectationEvaluatorService evaluatorService, TestResultCache resultCache,
+        LanguageResolver languageResolver, TestExecutor executor) {
+        super(analysisService, contextPool, fragmentParser, executor);
+        this.analysisService = analysisService;
+        this.contextService = contextService;
+        this.fragmentParser = fragmentParser;
+        this.prefetcher = prefetcher;
+        this.resourceService = resourceService;
+        this.inputService = inputService;
+        this.unitService = unitService;
         this.evaluatorService = evaluatorService;
+        this.resultCache = resultCache;
+        this.languageResolver = languageResolver;
+    }
+
+    /**
+     * Parses the fragment of the test, without moving the origins of its AST if the test is planned and none of its
+     * expectations need them.
+     */
+    @Override public ISpoofaxParseUnit parse(ITestCase test, ILanguageImpl languageUnderTest,
+        @Nullable ILanguageImpl dialectUnderTest, @Nullable IFragmentParserConfig fragmentParseConfig) {
+        if(!(test instanceof PlannedTestCase) || !((PlannedTestCase) test).isFor(languageUnderTest)
+            || ((PlannedTestCase) test).requiresOrigins()) {
+            return super.parse(test, languageUnderTest, dialectUnderTest, fragmentParseConfig);
+        }
+        final ISpoofaxFragmentParserConfig config = fragmentParseConfig instanceof ISpoofaxFragmentParserConfig
+            ? (ISpoofaxFragmentParserConfig) fragmentParseConfig : null;
+        try {
+            return fragmentParser.parse(test.getFragment(), languageUnderTest, dialectUnderTest, config, false);
+        } catch(ParseException e) {
+            // just like the parse of the test case runner
+            throw new RuntimeException(e);
+        }
     }
 
     @Override public ISpoofaxTestResult run(IProject project, ITestCase test, ILanguageImpl languageUnderTest,
         ILanguageImpl dialectUnderTest, IFragmentParserConfig fragmentParseConfig) {
+        final ISpoofaxTestResult cached =
+            cachedResult(test, languageUnderTest, dialectUnderTest, fragmentParseConfig);
+        if(cached != null) {
+            return cached;
+        }
         ITestResult<ISpoofaxParseUnit, ISpoofaxAnalyzeUnit> res =
             super.run(project, test, languageUnderTest, dialectUnderTest, fragmentParseConfig);
         // safe as long as the guarantee of TestCaseRunner.run holds (see the JavaDoc of that method)
         return (ISpoofaxTestResult) res;
     }
 
+    @Override public ISpoofaxTestResult run(IProject project, ITestCase test, ISpoofaxParseUnit parseResult,
+        ILanguageImpl languageUnderTest, ILanguageImpl dialectUnderTest, IFragmentParserConfig fragmentParseConfig) {
+        ITestResult<ISpoofaxParseUnit, ISpoofaxAnalyzeUnit> res =
+            super.run(project, test, parseResult, languageUnderTest, dialectUnderTest, fragmentParseConfig);
+        // safe as long as the guarantee of TestCaseRunner.run holds (see the JavaDoc of that method)
+        final ISpoofaxTestResult result = (ISpoofaxTestResult) res;
+        remember(test, languageUnderTest, dialectUnderTest, fragmentParseConfig, false, result);
+        return result;
+    }
+
+    @Override public List<ISpoofaxTestResult> runShared(IProject project, Iterable<? extends ITestCase> tests,
+        ILanguageImpl languageUnderTest, @Nullable ISpoofaxFragmentParserConfig fragmentConfig) {
+        final List<PlannedTestCase> planned = plan(tests, languageUnderTest, fragmentConfig).getTests();
+        final ISpoofaxTestResult[] results = new ISpoofaxTestResult[planned.size()];
+        final ISpoofaxParseUnit[] parseResults = new ISpoofaxParseUnit[planned.size()];
+        final ISpoofaxAnalyzeUnit[] analysisResults = new ISpoofaxAnalyzeUnit[planned.size()];
+
+        // parse the fragments that have to be analyzed, each as a resource of its own so the analysis keeps them apart
+        final String location = SHARED_ANALYSIS_LOCATION + batches.incrementAndGet() + "/";
+        final Map<String, Integer> indices = new HashMap<>();
+        final List<ISpoofaxParseUnit> inputs = new ArrayList<>();
+        for(int i = 0; i < planned.size(); i++) {
+            final PlannedTestCase test = planned.get(i);
+            results[i] = cachedResult(test, languageUnderTest, null, fragmentConfig, true);
+            if(results[i] != null || test.getPhase().ordinal() <= TestPhase.PARSING.ordinal()) {
+                continue;
+            }
+            final FileObject resource =
+                resourceService.resolve(location + i + "/" + test.getResource().getName().getBaseName());
+            final ISpoofaxParseUnit parsed;
+            try {
+                parsed = fragmentParser.parse(new SharedAnalysisFragment(test.getFragment(), resource),
+                    languageUnderTest, null, fragmentConfig);
+            } catch(ParseException e) {
+                // running the test on its own reports the failure
+                continue;
+            }
+            if(parsed.success()) {
+                parseResults[i] = parsed;
+                indices.put(resource.getName().getURI(), i);
+                inputs.add(parsed);
+            }
+        }
+
+        ITemporaryContext context = null;
+        try {
+            if(!inputs.isEmpty()) {
+                try {
+                    context = contextService.getTemporary(inputs.get(0).source(), project, languageUnderTest);
+                    try(IClosableLock lock = context.read()) {
+                        for(ISpoofaxAnalyzeUnit result : analysisService.analyzeAll(inputs, context).results()) {
+                            final Integer i = result.source() == null ? null
+                                : indices.get(result.source().getName().getURI());
+                            if(i != null) {
+                                analysisResults[i] = result;
+                            }
+                        }
+                    }
+                } catch(ContextException | AnalysisException e) {
+                    logger.warn("Analyzing {} fragments together failed, analyzing them one at a time", e,
+                        inputs.size());
+                }
+                if(crossesFragments(analysisResults, indices)) {
+                    logger.info("Analyzing {} fragments together reported messages on other fragments, "
+                        + "analyzing them one at a time", inputs.size());
+                    Arrays.fill(analysisResults, null);
+                }
+            }
+
+            // tests that did not need analysis, or whose fragment was not analyzed together, are run on their own, and
+            // so are tests whose fragment got messages, as those may be caused by the other fragments, e.g. when they
+            // declare the same name
+            for(int i = 0; i < planned.size(); i++) {
+                if(results[i] != null) {
+                    continue;
+                }
+                final PlannedTestCase test = planned.get(i);
+                if(analysisResults[i] == null || !Iterables.isEmpty(analysisResults[i].messages())) {
+                    results[i] = run(project, test, languageUnderTest, null, fragmentConfig);
+                } else {
+                    // the messages should be on the test suite, like when the fragment is analyzed on its own
+                    final ISpoofaxParseUnit parseResult = relocate(parseResults[i], test.getResource());
+                    final ISpoofaxAnalyzeUnit analysisResult =
+                        relocate(analysisResults[i], parseResult, test.getResource());
+                    final List<IMessage> messages = Lists.newLinkedList();
+                    results[i] = evaluateExpectations(test, parseResult, analysisResult, languageUnderTest, messages,
+                        fragmentConfig);
+                    remember(test, languageUnderTest, null, fragmentConfig, true, results[i]);
+                }
+            }
+        } finally {
+            if(context != null) {
+                context.close();
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Whether the analysis of a fragment reported messages on another fragment it was analyzed together with, e.g.
+     * because the fragments declare the same name. The analysis then does not keep the fragments apart, so their
+     * results may differ from those of analyzing each fragment on its own.
+     *
+     * @param indices
+     *            the indices of the analysis results, by the URI of the resource of their fragment.
+     */
+    private static boolean crossesFragments(ISpoofaxAnalyzeUnit[] analysisResults, Map<String, Integer> indices) {
+        for(int i = 0; i < analysisResults.length; i++) {
+            if(analysisResults[i] == null) {
+                continue;
+            }
+            for(IMessage message : analysisResults[i].messages()) {
+                final Integer j = message.source() == null ? null : indices.get(message.source().getName().getURI());
+                if(j != null && j != i) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The given parse result of a fragment that was analyzed together with others, as the parse result of the given
+     * resource. Its origins already refer to the resource, see {@link SharedAnalysisFragment}.
+     */
+    private ISpoofaxParseUnit relocate(ISpoofaxParseUnit p, FileObject resource) {
+        final ISpoofaxInputUnit input = p.input();
+        final ISpoofaxInputUnit relocated = input.config() == null
+            ? inputService.inputUnit(resource, input.text(), input.langImpl(), input.dialect())
+            : inputService.inputUnit(resource, input.text(), input.langImpl(), input.dialect(), input.config());
+        return unitService.parseUnit(relocated, new ParseContrib(p.valid(), p.success(), p.isAmbiguous(), p.ast(),
+            relocate(p.messages(), p.source(), resource), p.duration()));
+    }
+
+    /**
+     * The given analysis result of a fragment that was analyzed together with others, as the analysis result of the
+     * given parse result.
+     */
+    private ISpoofaxAnalyzeUnit relocate(ISpoofaxAnalyzeUnit a, ISpoofaxParseUnit p, FileObject resource) {
+        return unitService.analyzeUnit(p, new AnalyzeContrib(a.valid(), a.success(), a.hasAst(), a.ast(),
+            relocate(a.messages(), a.source(), resource), a.duration()), a.context());
+    }
+
+    /**
+     * The given messages, with the ones on the resource of the shared analysis moved to the given resource.
+     */
+    private static List<IMessage> relocate(Iterable<IMessage> messages, @Nullable FileObject from, FileObject to) {
+        final List<IMessage> relocated = new ArrayList<>();
+        for(IMessage message : messages) {
+            if(from != null && message.source() != null && from.getName().equals(message.source().getName())) {
+                relocated.add(MessageUtil.setSource(message, to));
+            } else {
+                relocated.add(message);
+            }
+        }
+        return relocated;
+    }
+
+    /**
+     * @param sharedAnalysis
+     *            whether the fragment of the test was analyzed together with the fragments of other tests.
+     */
+    private void remember(ITestCase test, ILanguageImpl languageUnderTest, @Nullable ILanguageImpl dialectUnderTest,
+        @Nullable IFragmentParserConfig fragmentParseConfig, boolean sharedAnalysis, ISpoofaxTestResult result) {
+        final String key = cacheKey(test, languageUnderTest, dialectUnderTest, fragmentParseConfig, sharedAnalysis);
+        if(key != null) {
+            resultCache.put(key, result);
+        }
+    }
+
+    @Override public @Nullable ISpoofaxTestResult cachedResult(ITestCase test, ILanguageImpl languageUnderTest,
+        @Nullable ILanguageImpl dialectUnderTest, @Nullable IFragmentParserConfig fragmentParseConfig) {
+        return cachedResult(test, languageUnderTest, dialectUnderTest, fragmentParseConfig, false);
+    }
+
+    /**
+     * The cached result of the test, if its fragment was analyzed on its own or, if {@code sharedAnalysis} is set,
+     * together with the fragments of other tests. A test that fell back to analyzing its fragment on its own is cached
+     * as such, and is looked up again when it runs on its own.
+     */
+    private @Nullable ISpoofaxTestResult cachedResult(ITestCase test, ILanguageImpl languageUnderTest,
+        @Nullable ILanguageImpl dialectUnderTest, @Nullable IFragmentParserConfig fragmentParseConfig,
+        boolean sharedAnalysis) {
+        final String key = cacheKey(test, languageUnderTest, dialectUnderTest, fragmentParseConfig, sharedAnalysis);
+        if(key == null) {
+            return null;
+        }
+        final ISpoofaxTestResult result = resultCache.get(key, PlannedTestCase.unwrap(test));
+        if(result != null) {
+            logger.debug("Reusing the cached result of test case '{}'", test.getDescription());
+        }
+        return result;
+    }
+
+    private @Nullable String cacheKey(ITestCase test, ILanguageImpl languageUnderTest,
+        @Nullable ILanguageImpl dialectUnderTest, @Nullable IFragmentParserConfig fragmentParseConfig,
+        boolean sharedAnalysis) {
+        if(!resultCache.isEnabled()) {
+            return null;
+        }
+        String startSymbol = null;
+        if(fragmentParseConfig instanceof ISpoofaxFragmentParserConfig) {
+            final JSGLRParserConfiguration parserConfig = ((ISpoofaxFragmentParserConfig) fragmentParseConfig)
+                .getParserConfigForLanguage(dialectUnderTest == null ? languageUnderTest : dialectUnderTest);
+            startSymbol = parserConfig == null ? null : parserConfig.overridingStartSymbol;
+        }
+        final List<ILanguageImpl> otherLanguages = otherLanguages(test);
+        if(otherLanguages == null) {
+            return null;
+        }
+        return resultCache.key(PlannedTestCase.unwrap(test), languageUnderTest, dialectUnderTest, otherLanguages,
+            startSymbol, requiredPhase(test, languageUnderTest), syntaxOnly(test, languageUnderTest), sharedAnalysis);
+    }
+
+    /**
+     * The languages that the expectations of the test refer to by name, e.g. with 'parse to Lang2 [[...]]'. These are
+     * loaded if needed, just like when the test runs.
+     *
+     * @return the languages, or null if one of them can't be found, in which case the test is not cached.
+     */
+    private @Nullable List<ILanguageImpl> otherLanguages(ITestCase test) {
+        final List<ILanguageImpl> languages = new ArrayList<>();
+        for(ITestExpectation expectation : test.getExpectations()) {
+            if(!(expectation instanceof AToPartExpectation)) {
+                continue;
+            }
+            final String name = ((AToPartExpectation) expectation).outputLanguage();
+            if(name == null) {
+                continue;
+            }
+            final ILanguage language;
+            try {
+                language = languageResolver.getLanguage(name);
+            } catch(MetaborgException e) {
+                return null;
+            }
+            if(language == null || language.activeImpl() == null) {
+                return null;
+            }
+            languages.add(language.activeImpl());
+        }
+        return languages;
+    }
+
+    /**
+     * Whether the result of the test only depends on the syntax of the language under test. Other expectations that
+     * only need the parse result, e.g. transformations without analysis, still run code of the other components.
+     */
+    private boolean syntaxOnly(ITestCase test, ILanguageImpl languageUnderTest) {
+        for(ISpoofaxExpectationEvaluator<ITestExpectation> evaluator : evaluators(test, languageUnderTest)) {
+            if(!(evaluator instanceof ParseExpectationEvaluator)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override public List<ISpoofaxTestResult> run(IProject project, Iterable<ITestCase> tests,
+        ILanguageImpl languageUnderTest, ILanguageImpl dialectUnderTest, IFragmentParserConfig fragmentParseConfig,
+        int parallelism) {
+        final List<ISpoofaxTestResult> results = new ArrayList<>();
+        for(ITestResult<ISpoofaxParseUnit, ISpoofaxAnalyzeUnit> res : super.run(project, tests, languageUnderTest,
+            dialectUnderTest, fragmentParseConfig, parallelism)) {
+            // safe, as the results are produced by our own run method
+            results.add((ISpoofaxTestResult) res);
+        }
+        return results;
+    }
+
     @Override protected ISpoofaxTestResult evaluateExpectations(ITestCase test, ISpoofaxParseUnit parseRes,
         ISpoofaxAnalyzeUnit analysisRes, ILanguageImpl languageUnderTest, List<IMessage> messages,
         @Nullable IFragmentParserConfig fragmentParseConfig) {
@@ -55,8 +406,11 @@ public class SpoofaxTestCaseRunner
             // handle the 'no expectation means parsing must succeed' thing
             success = parseRes.success();
         } else {
-            for(ITestExpectation expectation : test.getExpectations()) {
-                ISpoofaxExpectationEvaluator<ITestExpectation> evaluator = evaluatorService.lookup(expectation);
+            final List<ISpoofaxExpectationEvaluator<ITestExpectation>> evaluators =
+                evaluators(test, languageUnderTest);
+            for(int i = 0; i < evaluators.size(); i++) {
+                final ITestExpectation expectation = test.getExpectations().get(i);
+                final ISpoofaxExpectationEvaluator<ITestExpectation> evaluator = evaluators.get(i);
                 if(evaluator == null) {
                     messages.add(MessageFactory.newAnalysisError(test.getResource(), expectation.region(),
                         "Could not evaluate this expectation. No suitable evaluator was found.", null));
@@ -97,18 +451,31 @@ public class SpoofaxTestCaseRunner
             }
         }
 
-        return new SpoofaxTestResult(test, success, messages,
+        return new SpoofaxTestResult(PlannedTestCase.unwrap(test), success, messages,
             new SpoofaxFragmentResult(test.getFragment(), parseRes, analysisRes, null), expectationOutputs);
     }
 
     @Override protected TestPhase requiredPhase(ITestCase test, IContext languageUnderTestCtx) {
-        for(ITestExpectation expectation : test.getExpectations()) {
-            ISpoofaxExpectationEvaluator<ITestExpectation> evaluator = evaluatorService.lookup(expectation);
+        return requiredPhase(test, languageUnderTestCtx.language());
+    }
+
+    private TestPhase requiredPhase(ITestCase test, ILanguageImpl languageUnderTest) {
+        if(test instanceof PlannedTestCase && ((PlannedTestCase) test).isFor(languageUnderTest)) {
+            return ((PlannedTestCase) test).getPhase();
+        }
+        return requiredPhase(test, languageUnderTest, lookup(test));
+    }
+
+    private static TestPhase requiredPhase(ITestCase test, ILanguageImpl languageUnderTest,
+        List<ISpoofaxExpectationEvaluator<ITestExpectation>> evaluators) {
+        for(int i = 0; i < evaluators.size(); i++) {
+            final ITestExpectation expectation = test.getExpectations().get(i);
+            final ISpoofaxExpectationEvaluator<ITestExpectation> evaluator = evaluators.get(i);
             if(evaluator == null) {
                 // the error will be generated during evaluation, so we just ignore it here
             } else {
                 // TODO: if we get more parse phases, we can't shortcut like this
-                TestPhase phase = evaluator.getPhase(languageUnderTestCtx.language(), expectation);
+                TestPhase phase = evaluator.getPhase(languageUnderTest, expectation);
                 if(TestPhase.PARSING.ordinal() < phase.ordinal()) {
                     return phase;
                 }
@@ -117,4 +484,68 @@ public class SpoofaxTestCaseRunner
         return TestPhase.PARSING;
     }
 
+    @Override public PlannedTestCase plan(ITestCase test, ILanguageImpl languageUnderTest) {
+        if(test instanceof PlannedTestCase && ((PlannedTestCase) test).isFor(languageUnderTest)) {
+            return (PlannedTestCase) test;
+        }
+        final ITestCase planned = PlannedTestCase.unwrap(test);
+        final List<ISpoofaxExpectationEvaluator<ITestExpectation>> evaluators = lookup(planned);
+        final TestPhase phase = requiredPhase(planned, languageUnderTest, evaluators);
+        return new PlannedTestCase(planned, languageUnderTest, evaluators, phase,
+            requiresOrigins(planned, languageUnderTest, evaluators, phase));
+    }
+
+    private static boolean requiresOrigins(ITestCase test, ILanguageImpl languageUnderTest,
+        List<ISpoofaxExpectationEvaluator<ITestExpectation>> evaluators, TestPhase phase) {
+        // analysis works on the origins of the AST
+        if(phase.ordinal() > TestPhase.PARSING.ordinal()) {
+            return true;
+        }
+        for(int i = 0; i < evaluators.size(); i++) {
+            final ISpoofaxExpectationEvaluator<ITestExpectation> evaluator = evaluators.get(i);
+            if(evaluator != null && evaluator.requiresOrigins(languageUnderTest, test.getExpectations().get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override public SuiteExecutionPlan plan(Iterable<? extends ITestCase> tests, ILanguageImpl languageUnderTest,
+        @Nullable ISpoofaxFragmentParserConfig fragmentConfig) {
+        final List<PlannedTestCase> planned = new ArrayList<>();
+        for(ITestCase test : tests) {
+            planned.add(plan(test, languageUnderTest));
+        }
+        return new SuiteExecutionPlan(languageUnderTest, fragmentConfig, planned);
+    }
+
+    @Override public List<ISpoofaxTestResult> run(IProject project, SuiteExecutionPlan plan, int parallelism) {
+        prefetcher.prefetch(plan.getTests(), plan.getLanguageUnderTest(), plan.getFragmentConfig());
+        try {
+            return run(project, Collections.<ITestCase>unmodifiableList(plan.getTests()),
+                plan.getLanguageUnderTest(), null, plan.getFragmentConfig(), parallelism);
+        } finally {
+            prefetcher.discard(plan.getTests());
+        }
+    }
+
+    /**
+     * The evaluators of the expectations of the test, from its plan if it has one for the language under test.
+     */
+    private List<ISpoofaxExpectationEvaluator<ITestExpectation>> evaluators(ITestCase test,
+        ILanguageImpl languageUnderTest) {
+        if(test instanceof PlannedTestCase && ((PlannedTestCase) test).isFor(languageUnderTest)) {
+            return ((PlannedTestCase) test).getEvaluators();
+        }
+        return lookup(test);
+    }
+
+    private List<ISpoofaxExpectationEvaluator<ITestExpectation>> lookup(ITestCase test) {
+        final List<ISpoofaxExpectationEvaluator<ITestExpectation>> evaluators =
+            new ArrayList<>(test.getExpectations().size());
+        for(ITestExpectation expectation : test.getExpectations()) {
+            evaluators.add(evaluatorService.lookup(expectation));
+        }
+        return Collections.unmodifiableList(evaluators);
+    }
 }
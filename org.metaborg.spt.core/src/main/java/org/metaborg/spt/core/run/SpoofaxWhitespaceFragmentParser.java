@@ -1,8 +1,12 @@
 package org.metaborg.spt.core.run;
 
+import java.util.Collections;
+
 import org.metaborg.core.language.ILanguageImpl;
 import org.metaborg.core.syntax.ParseException;
+import org.metaborg.mbt.core.model.FragmentOffsetIndex;
 import org.metaborg.mbt.core.model.IFragment;
+import org.metaborg.mbt.core.model.IFragment.FragmentPiece;
 import org.metaborg.mbt.core.run.IFragmentParserConfig;
 import org.metaborg.mbt.core.run.WhitespaceFragmentParser;
 import org.metaborg.spoofax.core.syntax.ISpoofaxSyntaxService;
@@ -10,6 +14,7 @@ import org.metaborg.spoofax.core.syntax.JSGLRParserConfiguration;
 import org.metaborg.spoofax.core.unit.ISpoofaxInputUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxInputUnitService;
 import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
+import org.metaborg.spoofax.core.unit.ISpoofaxUnitService;
 
 import com.google.inject.Inject;
 
@@ -24,17 +29,19 @@ public class SpoofaxWhitespaceFragmentParser extends WhitespaceFragmentParser<IS
     implements ISpoofaxFragmentParser {
 
     private final ISpoofaxInputUnitService inputService;
+    private final ISpoofaxUnitService unitService;
 
     @Inject public SpoofaxWhitespaceFragmentParser(ISpoofaxInputUnitService inputService,
-        ISpoofaxSyntaxService parseService) {
+        ISpoofaxUnitService unitService, ISpoofaxSyntaxService parseService) {
         super(inputService, parseService);
         this.inputService = inputService;
+        this.unitService = unitService;
     }
 
     @Override public ISpoofaxParseUnit parse(IFragment fragment, ILanguageImpl language, @Nullable ILanguageImpl dialect,
                                              @Nullable IFragmentParserConfig config) throws ParseException {
         if(!(config instanceof ISpoofaxFragmentParserConfig)) {
-            return super.parse(fragment, language, dialect, config);
+            return parse(fragment, language, dialect, (ISpoofaxFragmentParserConfig) null);
         } else {
             return parse(fragment, language, dialect, (ISpoofaxFragmentParserConfig) config);
         }
@@ -43,13 +50,26 @@ public class SpoofaxWhitespaceFragmentParser extends WhitespaceFragmentParser<IS
     @Override public ISpoofaxParseUnit parse(IFragment fragment, ILanguageImpl language, @Nullable ILanguageImpl dialect,
                                              @Nullable ISpoofaxFragmentParserConfig config) throws ParseException {
         JSGLRParserConfiguration parseConfig = config == null ? null : config.getParserConfigForLanguage(language);
+
+        // only pad the text from the start of the fragment, and move the parse result to the right offsets afterwards,
+        // so we don't build a string as large as the test suite for each fragment
+        final FragmentOffsetIndex offsets = fragment.getOffsetIndex();
+        final int baseOffset = offsets.pieceCount() == 0 ? 0 : offsets.globalStart(0);
+        final String text = super.getWhitespacedFragmentText(fragment, baseOffset);
+
+        final ISpoofaxInputUnit input;
         if (parseConfig == null) {
-            return super.parse(fragment, language, dialect, config);
+            input = inputService.inputUnit(fragment.getResource(), text, language, dialect);
         } else {
-            String text = super.getWhitespacedFragmentText(fragment);
-            ISpoofaxInputUnit input = inputService.inputUnit(text, language, dialect, parseConfig);
-            return super.parse(input);
+            input = inputService.inputUnit(fragment.getResource(), text, language, dialect, parseConfig);
+        }
+        final ISpoofaxParseUnit p = super.parse(input);
+        if (baseOffset == 0) {
+            return p;
         }
+        final FragmentOffsetIndex shift =
+            new FragmentOffsetIndex(Collections.singletonList(new FragmentPiece(baseOffset, text)));
+        return FragmentOrigins.remap(unitService, input, p, shift, true, null, null);
     }
 
 }
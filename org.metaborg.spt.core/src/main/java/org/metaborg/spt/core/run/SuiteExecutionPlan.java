@@ -0,0 +1,51 @@
+package org.metaborg.spt.core.run;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.metaborg.core.language.ILanguageImpl;
+
+/**
+ * The tests of a test suite, {@link PlannedTestCase planned} for a language under test, with the configuration for
+ * parsing their fragments.
+ *
+ * A plan is immutable, so it can be run any number of times, e.g. when rerunning a test suite that did not change.
+ * Obtain one with {@link ISpoofaxTestCaseRunner#plan(Iterable, ILanguageImpl, ISpoofaxFragmentParserConfig)}, and run
+ * it with {@link ISpoofaxTestCaseRunner#run(org.metaborg.core.project.IProject, SuiteExecutionPlan, int)}.
+ */
+public final class SuiteExecutionPlan {
+
+    private final ILanguageImpl languageUnderTest;
+    private final @Nullable ISpoofaxFragmentParserConfig fragmentConfig;
+    private final List<PlannedTestCase> tests;
+
+
+    SuiteExecutionPlan(ILanguageImpl languageUnderTest, @Nullable ISpoofaxFragmentParserConfig fragmentConfig,
+        List<PlannedTestCase> tests) {
+        this.languageUnderTest = languageUnderTest;
+        this.fragmentConfig = fragmentConfig;
+        this.tests = Collections.unmodifiableList(Arrays.asList(tests.toArray(new PlannedTestCase[tests.size()])));
+    }
+
+
+    public ILanguageImpl getLanguageUnderTest() {
+        return languageUnderTest;
+    }
+
+    /**
+     * The configuration for parsing the fragments, or null to use the default configuration.
+     */
+    public @Nullable ISpoofaxFragmentParserConfig getFragmentConfig() {
+        return fragmentConfig;
+    }
+
+    /**
+     * The planned tests, in the order of the tests from which the plan was made.
+     */
+    public List<PlannedTestCase> getTests() {
+        return tests;
+    }
+}
@@ -39,6 +39,11 @@ public class ParseExpectationEvaluator implements ISpoofaxExpectationEvaluator<P
         return TestPhase.PARSING;
     }
 
+    @Override public boolean requiresOrigins(ILanguageImpl language, ParseExpectation expectation) {
+        // only the success, ambiguity, and messages of the parse, or the AST as a whole, are checked
+        return false;
+    }
+
     @Override public ISpoofaxTestExpectationOutput
         evaluate(ITestExpectationInput<ISpoofaxParseUnit, ISpoofaxAnalyzeUnit> input, ParseExpectation expectation) {
         final ISpoofaxParseUnit parseUnit = input.getFragmentResult().getParseResult();
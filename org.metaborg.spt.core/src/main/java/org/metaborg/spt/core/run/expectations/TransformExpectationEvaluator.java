@@ -8,7 +8,6 @@ import javax.annotation.Nullable;
 import org.metaborg.core.action.ITransformGoal;
 import org.metaborg.core.context.ContextException;
 import org.metaborg.core.context.IContext;
-import org.metaborg.core.context.IContextService;
 import org.metaborg.core.context.ITemporaryContext;
 import org.metaborg.core.language.ILanguageImpl;
 import org.metaborg.core.messages.IMessage;
@@ -23,6 +22,7 @@ import org.metaborg.mbt.core.model.expectations.MessageUtil;
 import org.metaborg.mbt.core.model.expectations.TransformExpectation;
 import org.metaborg.mbt.core.run.IFragmentParserConfig;
 import org.metaborg.mbt.core.run.ITestExpectationInput;
+import org.metaborg.mbt.core.run.TemporaryContextPool;
 import org.metaborg.spoofax.core.action.ActionFacet;
 import org.metaborg.spoofax.core.transform.ISpoofaxTransformService;
 import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
@@ -54,15 +54,15 @@ public class TransformExpectationEvaluator implements ISpoofaxExpectationEvaluat
     private static final ILogger logger = LoggerUtils.logger(TransformExpectationEvaluator.class);
 
     private final ISpoofaxTransformService transformService;
-    private final IContextService contextService;
+    private final TemporaryContextPool contextPool;
     private final ITermFactory termFactory;
 
     private final FragmentUtil fragmentUtil;
 
     @Inject public TransformExpectationEvaluator(ISpoofaxTransformService transformService,
-        IContextService contextService, ITermFactory termFactory, FragmentUtil fragmentUtil) {
+        TemporaryContextPool contextPool, ITermFactory termFactory, FragmentUtil fragmentUtil) {
         this.transformService = transformService;
-        this.contextService = contextService;
+        this.contextPool = contextPool;
         this.termFactory = termFactory;
 
         this.fragmentUtil = fragmentUtil;
@@ -91,7 +91,7 @@ public class TransformExpectationEvaluator implements ISpoofaxExpectationEvaluat
         if(ctx == null) {
             // we have to create a new context
             try {
-                tempCtx = contextService.getTemporary(test.getResource(), test.getProject(), lut);
+                tempCtx = contextPool.acquire(test.getResource(), test.getProject(), lut);
                 ctx = tempCtx;
             } catch(ContextException e) {
                 messages.add(MessageFactory.newAnalysisError(test.getResource(), test.getDescriptionRegion(),
@@ -114,9 +114,7 @@ public class TransformExpectationEvaluator implements ISpoofaxExpectationEvaluat
                 String.format("The transformation %1$s is unavailable for the language %2$s.", expectation.goal(),
                     input.getLanguageUnderTest().id()),
                 null));
-            if(tempCtx != null) {
-                tempCtx.close();
-            }
+            contextPool.release(tempCtx);
             return new SpoofaxTestExpectationOutput(success, messages, fragmentResults);
         }
 
@@ -164,9 +162,7 @@ public class TransformExpectationEvaluator implements ISpoofaxExpectationEvaluat
                 "An exception occurred while trying to transform %s: %s", expectation.goal(), e.getMessage()), e));
         }
 
-        if(tempCtx != null) {
-            tempCtx.close();
-        }
+        contextPool.release(tempCtx);
         return new SpoofaxTestExpectationOutput(success, messages, fragmentResults);
     }
 
@@ -7,7 +7,6 @@ import java.util.List;
 import org.metaborg.core.action.ITransformGoal;
 import org.metaborg.core.context.ContextException;
 import org.metaborg.core.context.IContext;
-import org.metaborg.core.context.IContextService;
 import org.metaborg.core.context.ITemporaryContext;
 import org.metaborg.core.language.ILanguageImpl;
 import org.metaborg.core.messages.IMessage;
@@ -17,6 +16,7 @@ import org.metaborg.mbt.core.model.IFragment;
 import org.metaborg.mbt.core.model.ITestCase;
 import org.metaborg.mbt.core.model.TestPhase;
 import org.metaborg.mbt.core.run.ITestExpectationInput;
+import org.metaborg.mbt.core.run.TemporaryContextPool;
 import org.metaborg.spoofax.core.action.ActionFacet;
 import org.metaborg.spoofax.core.transform.ISpoofaxTransformService;
 import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
@@ -45,13 +45,13 @@ public class TransformToAtermExpectationEvaluator implements ISpoofaxExpectation
     private static final ILogger logger = LoggerUtils.logger(TransformToAtermExpectationEvaluator.class);
 
     private final ISpoofaxTransformService transformService;
-    private final IContextService contextService;
+    private final TemporaryContextPool contextPool;
     private final ITermFactory termFactory;
 
     @Inject public TransformToAtermExpectationEvaluator(ISpoofaxTransformService transformService,
-        IContextService contextService, ITermFactory termFactory) {
+        TemporaryContextPool contextPool, ITermFactory termFactory) {
         this.transformService = transformService;
-        this.contextService = contextService;
+        this.contextPool = contextPool;
         this.termFactory = termFactory;
     }
 
@@ -77,7 +77,7 @@ public class TransformToAtermExpectationEvaluator implements ISpoofaxExpectation
         if(ctx == null) {
             // we have to create a new context
             try {
-                tempCtx = contextService.getTemporary(test.getResource(), test.getProject(), lut);
+                tempCtx = contextPool.acquire(test.getResource(), test.getProject(), lut);
                 ctx = tempCtx;
             } catch(ContextException e) {
                 messages.add(MessageFactory.newAnalysisError(test.getResource(), test.getDescriptionRegion(),
@@ -100,9 +100,7 @@ public class TransformToAtermExpectationEvaluator implements ISpoofaxExpectation
                 String.format("The transformation %1$s is unavailable for the language %2$s.", expectation.goal(),
                     input.getLanguageUnderTest().id()),
                 null));
-            if(tempCtx != null) {
-                tempCtx.close();
-            }
+            contextPool.release(tempCtx);
             return new SpoofaxTestExpectationOutput(success, messages, Collections.emptyList());
         }
 
@@ -135,9 +133,7 @@ public class TransformToAtermExpectationEvaluator implements ISpoofaxExpectation
                 "An exception occured while trying to transform %s: %s.", expectation.goal(), e.getMessage()), e));
         }
 
-        if(tempCtx != null) {
-            tempCtx.close();
-        }
+        contextPool.release(tempCtx);
         return new SpoofaxTestExpectationOutput(success, messages, Collections.emptyList());
     }
 
@@ -0,0 +1,100 @@
+#!/usr/bin/env bash
+#
+# Runs the test suites in a directory with the SPT command line runner, once without any of its optional features, and
+# then with the caches, shared analysis, and parallelism turned on in different combinations. Each of these runs has
+# to report the same results as the first one, including the same failures with the same messages and regions, and so
+# does a run on a copy of the test suites in which every test moved down a line, which reuses the cached results.
+#
+# The test suites in modes/ are written for this: they contain tests that fail on purpose, marked (fails), whose
+# messages are then compared as well. The other directories hold test suites of SPT-Interactive, which run the test
+# suites in their fragments with MiniSQL. For example, with the languages built:
+#
+#   ./compare-modes.sh org.metaborg.spt.cmd.jar ../org.metaborg.meta.lang.spt ../org.metaborg.lang.minisql modes
+#   ./compare-modes.sh org.metaborg.spt.cmd.jar ../org.metaborg.meta.lang.spt \
+#     ../org.metaborg.meta.lang.spt.interactive origins ../org.metaborg.lang.minisql
+#
+# Exits with 1 if any run reported other results.
+
+set -eu
+
+if [ $# -lt 4 ]; then
+  echo "usage: $0 <spt-cmd-jar> <spt-language> <language-under-test> <tests> [<other-language>...]" >&2
+  exit 2
+fi
+jar=$1
+spt=$2
+lut=$3
+tests=$4
+shift 4
+langs=()
+for lang in "$@"; do
+  langs+=(--lang "$lang")
+done
+
+work=$(mktemp -d)
+failed=0
+# keep the output when the results differ
+trap 'if [ "$failed" -eq 0 ]; then rm -rf "$work"; fi' EXIT
+
+# Runs the test suites at the given location with the given options, and writes the results to the given file. Only
+# the TeamCity service messages are kept, without the attributes that depend on timing.
+run() {
+  local out=$1
+  local location=$2
+  shift 2
+  java -jar "$jar" --spt "$spt" --lut "$lut" --tests "$location" ${langs[@]+"${langs[@]}"} \
+    --reporter org.metaborg.core.testing.TeamCityTestReporterService "$@" > "$out.log" 2>&1 || true
+  grep '^##teamcity\[' "$out.log" | sed -E "s/ (timestamp|duration|flowId)='[^']*'//g" > "$out" || true
+}
+
+# Runs the test suites with the given options, and compares the results to those of the given earlier run.
+check() {
+  local expected=$1
+  local name=$2
+  local location=$3
+  shift 3
+  run "$work/$name" "$location" "$@"
+  if diff -u "$work/$expected" "$work/$name"; then
+    echo "$name: same results"
+  else
+    echo "$name: other results, see the differences above and the output in $work/$name.log"
+    failed=1
+  fi
+}
+
+run "$work/plain" "$tests"
+if [ ! -s "$work/plain" ]; then
+  echo "No results, see the output:" >&2
+  cat "$work/plain.log" >&2
+  exit 1
+fi
+
+caches=(--test-cache "$work/caches/tests" --extraction-cache "$work/caches/extraction" --index "$work/caches/index"
+  --parse-cache 1000000 --filter '.*')
+parallel=(--jobs 4 --test-jobs 4 --prefetch 2 --context-pool 4)
+all=(--test-cache "$work/all/tests" --extraction-cache "$work/all/extraction" --index "$work/all/index"
+  --parse-cache 1000000 --result-store "$work/all/store" --shared-analysis '.*' --incremental-fixtures
+  --jobs 4 --test-jobs 4 --prefetch 2 --context-pool 4)
+
+check plain caches-cold "$tests" "${caches[@]}"
+check plain caches-warm "$tests" "${caches[@]}"
+check plain shared-analysis "$tests" --shared-analysis '.*'
+check plain incremental-fixtures "$tests" --incremental-fixtures --parse-cache 1000000
+check plain parallel "$tests" "${parallel[@]}"
+check plain stages "$tests" --stages 1,2,2,4,8
+check plain all-cold "$tests" "${all[@]}"
+check plain all-warm "$tests" "${all[@]}"
+
+# every test moves down a line, so cached results are only found if their key does not depend on where the test is,
+# and their messages have to be moved along
+mkdir "$work/moved"
+cp -R "$tests/." "$work/moved"
+find "$work/moved" -name '*.spt' | while read -r suite; do
+  awk 'NR == 1 { print; print ""; next } { print }' "$suite" > "$suite.tmp"
+  mv "$suite.tmp" "$suite"
+done
+run "$work/moved-plain" "$work/moved"
+check moved-plain moved-caches-warm "$work/moved" "${caches[@]}"
+check moved-plain moved-shared-analysis-warm "$work/moved" --test-cache "$work/all/tests" --shared-analysis '.*'
+
+exit $failed
@@ -2,8 +2,10 @@ package org.metaborg.spt.testrunner.eclipse;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.vfs2.FileObject;
@@ -20,17 +22,20 @@ import org.metaborg.core.messages.IMessage;
 import org.metaborg.core.project.IProject;
 import org.metaborg.core.project.IProjectService;
 import org.metaborg.mbt.core.model.ITestCase;
+import org.metaborg.mbt.core.run.TestExecutor;
 import org.metaborg.spoofax.core.Spoofax;
 import org.metaborg.spoofax.core.syntax.JSGLRParserConfiguration;
 import org.metaborg.spoofax.core.unit.ISpoofaxInputUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxInputUnitService;
 import org.metaborg.spoofax.eclipse.SpoofaxPlugin;
 import org.metaborg.spt.core.SPTModule;
+import org.metaborg.spt.core.cache.ExtractionCache;
 import org.metaborg.spt.core.extract.ISpoofaxTestCaseExtractionResult;
 import org.metaborg.spt.core.extract.ISpoofaxTestCaseExtractor;
 import org.metaborg.spt.core.run.ISpoofaxFragmentParserConfig;
 import org.metaborg.spt.core.run.ISpoofaxTestCaseRunner;
 import org.metaborg.spt.core.run.ISpoofaxTestResult;
+import org.metaborg.spt.core.run.PlannedTestCase;
 import org.metaborg.spt.core.run.SpoofaxFragmentParserConfig;
 import org.metaborg.spt.testrunner.eclipse.model.MultiTestSuiteRun;
 import org.metaborg.spt.testrunner.eclipse.model.TestCaseRun;
@@ -50,6 +55,22 @@ public class TestRunner {
 
     private static final ILogger logger = LoggerUtils.logger(TestRunner.class);
 
+    /**
+     * The maximum number of tests of a single test suite that are run concurrently.
+     * 
+     * Can be set with the {@code spt.testrunner.jobs} system property (e.g. in eclipse.ini). With the default of 1,
+     * tests are run one after the other and the view is updated after each test.
+     */
+    private static final int TEST_JOBS = Integer.getInteger("spt.testrunner.jobs", 1);
+
+    /**
+     * The directory in which to cache the tests extracted from test suites, so test suites that did not change don't
+     * have to be parsed and analyzed again.
+     * 
+     * Can be set with the {@code spt.testrunner.extractionCache} system property. Disabled if not set.
+     */
+    private static final String EXTRACTION_CACHE = System.getProperty("spt.testrunner.extractionCache");
+
     /**
      * Runs all tests collected for the given FileObjects.
      * 
@@ -65,6 +86,10 @@ public class TestRunner {
         final Injector injector = spoofax.injector.createChildInjector(new SPTModule());
         final ISpoofaxTestCaseExtractor extractor = injector.getInstance(ISpoofaxTestCaseExtractor.class);
         final ISpoofaxTestCaseRunner runner = injector.getInstance(ISpoofaxTestCaseRunner.class);
+        final TestExecutor executor = injector.getInstance(TestExecutor.class);
+        if(EXTRACTION_CACHE != null) {
+            injector.getInstance(ExtractionCache.class).enable(Paths.get(EXTRACTION_CACHE).toAbsolutePath());
+        }
 
         // get the SPT language
         final ILanguage sptLang = langService.getLanguage("SPT");
@@ -193,13 +218,43 @@ public class TestRunner {
 
                 // run the test cases
                 final IProject project = tsr.project;
-                for(TestCaseRun tcr : tsr.tests) {
+                if(TEST_JOBS > 1) {
                     if(monitor.isCanceled()) {
                         throw new InterruptedException();
                     }
-                    tcr.start();
-                    final ISpoofaxTestResult result = runner.run(project, tcr.test, lut, null, cfg);
-                    setTestResult(tcr, result);
+                    // each test is marked as started when its task starts, and updates the view when it is done
+                    final List<ITestCase> tests = new ArrayList<>(tsr.tests.size());
+                    for(TestCaseRun tcr : tsr.tests) {
+                        tests.add(tcr.test);
+                    }
+                    final List<PlannedTestCase> planned = runner.plan(tests, lut, cfg).getTests();
+                    final List<Callable<Void>> tasks = new ArrayList<>(planned.size());
+                    for(int i = 0; i < planned.size(); i++) {
+                        final TestCaseRun tcr = tsr.tests.get(i);
+                        final PlannedTestCase test = planned.get(i);
+                        tasks.add(() -> {
+                            if(monitor.isCanceled()) {
+                                return null;
+                            }
+                            tcr.start();
+                            setTestResult(tcr, runner.run(project, test, lut, null, cfg));
+                            return null;
+                        });
+                    }
+                    executor.invokeAll(tasks, TEST_JOBS);
+                    if(monitor.isCanceled()) {
+                        throw new InterruptedException();
+                    }
+                } else {
+                    for(TestCaseRun tcr : tsr.tests) {
+                        if(monitor.isCanceled()) {
+                            throw new InterruptedException();
+                        }
+                        tcr.start();
+                        final ISpoofaxTestResult result =
+                            runner.run(project, runner.plan(tcr.test, lut), lut, null, cfg);
+                        setTestResult(tcr, result);
+                    }
                 }
             }
         }
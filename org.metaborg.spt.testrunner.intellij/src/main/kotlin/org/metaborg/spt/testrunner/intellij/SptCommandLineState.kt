@@ -38,6 +38,7 @@ open class SptCommandLineState(environment: ExecutionEnvironment,
     private val SPT_CMD_MAIN  = "org.metaborg.spt.cmd.Main"
     private val SPT_CMD_PATH  = File(SptPlugin.libPath, "org.metaborg.spt.cmd-${SptPlugin.metaborgVersion}.jar").absolutePath
     private val SPT_LANG_PATH = File(SptPlugin.libPath, "org.metaborg.meta.lang.spt-${SptPlugin.metaborgVersion}.spoofax-language").absolutePath
+    private val SPT_DAEMON_PORT_PROPERTY = "spt.daemon.port"
 
     override fun createJavaParameters(): JavaParameters? {
         val languageUnderTest = LanguageUtils.getLanguageRoot(this.module) ?: return null
@@ -58,6 +59,11 @@ open class SptCommandLineState(environment: ExecutionEnvironment,
             }
             // The test reporter to use (so IntelliJ can display the results)
             programParametersList.add("--reporter", TeamCityTestReporterService::class.java.name)
+            // Run the tests on an SPT daemon if one was configured, which avoids loading Spoofax and the languages
+            val daemonPort = System.getProperty(SPT_DAEMON_PORT_PROPERTY)
+            if (daemonPort != null) {
+                programParametersList.add("--connect", daemonPort)
+            }
         }
 
         return params